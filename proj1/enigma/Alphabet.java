@@ -1,7 +1,15 @@
 package enigma;
 
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  The index of each character is
+ *  kept in a table covering the characters from the smallest in the
+ *  alphabet to the largest, so that looking one up takes constant time
+ *  whatever the size of the alphabet.  Since characters have 16 bits, the
+ *  table never has more than 2^16 entries.
  *  @author Mengmeng (Sylvia) Yang
  */
 class Alphabet {
@@ -12,6 +20,22 @@ class Alphabet {
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
         _chars = chars;
+        int min = Character.MAX_VALUE, max = 0;
+        for (int i = 0; i < chars.length(); i++) {
+            min = Math.min(min, chars.charAt(i));
+            max = Math.max(max, chars.charAt(i));
+        }
+        _first = Math.min(min, max);
+        _index = new int[max - _first + 1];
+        Arrays.fill(_index, -1);
+        for (int i = 0; i < chars.length(); i++) {
+            char ch = chars.charAt(i);
+            if (_index[ch - _first] >= 0) {
+                throw error("character '%c' appears twice in the alphabet",
+                            ch);
+            }
+            _index[ch - _first] = i;
+        }
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -26,12 +50,8 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        for (int i = 0; i < size(); i++) {
-            if (_chars.charAt(i) == ch) {
-                return true;
-            }
-        }
-        return false;
+        int k = ch - _first;
+        return k >= 0 && k < _index.length && _index[k] >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -43,12 +63,17 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        for (int i = 0; i < size(); i++) {
-            if (_chars.charAt(i) == ch) {
-                return i;
-            }
+        int k = ch - _first;
+        if (k < 0 || k >= _index.length || _index[k] < 0) {
+            throw error("character '%c' is not in the alphabet", ch);
         }
-        return 0;
+        return _index[k];
     }
 
+    /** The smallest character of the alphabet. */
+    private final int _first;
+    /** The index of each character from _first on, or -1 for those not
+     *  in the alphabet. */
+    private final int[] _index;
+
 }
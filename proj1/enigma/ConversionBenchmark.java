@@ -0,0 +1,265 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+
+/** Measures the cost per character of the conversions on the encryption
+ *  path: Permutation.permute and invert, Rotor.convertForward and
+ *  convertBackward, and Machine.convert of single characters and of
+ *  strings.  Invoke as
+ *      java enigma.ConversionBenchmark [SIZES [ROTORS]]
+ *  where SIZES is a comma-separated list of alphabet sizes (default
+ *  26,256,1024,4096) and ROTORS one of numbers of rotor slots (default
+ *  3,5,10,12).  The permutations, with one notch for each moving rotor,
+ *  are random but the same from run to run; each machine has a
+ *  reflector, one fixed rotor, and moving rotors in its other slots.
+ *
+ *  Each conversion is run WARMUP times untimed and ROUNDS times timed on
+ *  CHARS characters, drawn from a random message of MESSAGE characters,
+ *  with its results folded into a checksum so that none can be skipped.
+ *  The report gives the mean time and the bytes allocated by the
+ *  benchmark's thread per character converted.  Alphabets of at most
+ *  Rotor.TABLE_MAX characters take the rotors' table path, and larger
+ *  ones the arithmetic path.
+ *  @author Mengmeng Yang
+ */
+public class ConversionBenchmark {
+
+    /** Number of untimed runs of each conversion. */
+    static final int WARMUP = 5;
+    /** Number of timed runs of each conversion. */
+    static final int ROUNDS = 10;
+    /** Number of characters converted in each run. */
+    static final int CHARS = 1 << 20;
+    /** Length of the message the characters are drawn from, a power of
+     *  two. */
+    static final int MESSAGE = 1 << 12;
+
+    /** Run the benchmark with the sizes given in ARGS. */
+    public static void main(String... args) {
+        int[] sizes = list(args.length > 0 ? args[0] : "26,256,1024,4096");
+        int[] slots = list(args.length > 1 ? args[1] : "3,5,10,12");
+        for (int size : sizes) {
+            if (size < 2 || size % 2 != 0 || size > Character.MAX_VALUE) {
+                throw new IllegalArgumentException("alphabet sizes must be"
+                                                   + " even, from 2 on");
+            }
+        }
+        for (int n : slots) {
+            if (n < 3) {
+                throw new IllegalArgumentException("need at least 3 rotor"
+                                                   + " slots");
+            }
+        }
+        System.out.printf("%-24s %6s %6s %12s %14s%n", "conversion", "size",
+                          "slots", "ns/char", "alloc B/char");
+        for (int size : sizes) {
+            new ConversionBenchmark(size).run(slots);
+        }
+        System.out.printf("(checksum %d)%n", _checksum);
+    }
+
+    /**
+     * A benchmark over an alphabet of SIZE characters.
+     * @param size The size of the alphabet
+     */
+    ConversionBenchmark(int size) {
+        _size = size;
+        _random = new Random(61);
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < size; i += 1) {
+            chars.append((char) (size <= 26 ? 'A' + i : 0x4e00 + i));
+        }
+        _alphabet = new Alphabet(chars.toString());
+        _input = new int[MESSAGE];
+        char[] message = new char[MESSAGE];
+        for (int i = 0; i < MESSAGE; i += 1) {
+            _input[i] = _random.nextInt(size);
+            message[i] = _alphabet.toChar(_input[i]);
+        }
+        _message = new String(message);
+    }
+
+    /** Time the permutation and rotor conversions, and those of machines
+     *  with each number of rotor slots in SLOTS, printing a line of the
+     *  report for each. */
+    void run(int[] slots) {
+        int[] input = _input;
+        int mask = MESSAGE - 1;
+        Permutation perm = new Permutation(cycles(), _alphabet);
+        measure("Permutation.permute", 0, n -> {
+            int sum = 0;
+            for (int i = 0; i < n; i += 1) {
+                sum += perm.permute(input[i & mask]);
+            }
+            return sum;
+        });
+        measure("Permutation.invert", 0, n -> {
+            int sum = 0;
+            for (int i = 0; i < n; i += 1) {
+                sum += perm.invert(input[i & mask]);
+            }
+            return sum;
+        });
+        Rotor rotor = new MovingRotor("R", perm, notch());
+        rotor.set(_size / 3);
+        rotor.setR(_size / 5);
+        measure("Rotor.convertForward", 0, n -> {
+            int sum = 0;
+            for (int i = 0; i < n; i += 1) {
+                sum += rotor.convertForward(input[i & mask]);
+            }
+            return sum;
+        });
+        measure("Rotor.convertBackward", 0, n -> {
+            int sum = 0;
+            for (int i = 0; i < n; i += 1) {
+                sum += rotor.convertBackward(input[i & mask]);
+            }
+            return sum;
+        });
+        for (int n : slots) {
+            Machine machine = machine(n);
+            measure("Machine.convert(int)", n, k -> {
+                int sum = 0;
+                for (int i = 0; i < k; i += 1) {
+                    sum += machine.convert(input[i & mask]);
+                }
+                return sum;
+            });
+            measure("Machine.convert(String)", n, k -> {
+                int sum = 0;
+                for (int i = 0; i < k; i += MESSAGE) {
+                    sum += machine.convert(_message).charAt(0);
+                }
+                return sum;
+            });
+        }
+    }
+
+    /** Run CONVERT on CHARS characters WARMUP + ROUNDS times and print the
+     *  measurements of the timed runs as those of conversion NAME on a
+     *  machine with SLOTS rotor slots, or on no machine if SLOTS is 0. */
+    private void measure(String name, int slots, IntUnaryOperator convert) {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        long nanos = 0, allocated = 0;
+        for (int i = 0; i < WARMUP + ROUNDS; i += 1) {
+            long bytes = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            _checksum += convert.applyAsInt(CHARS);
+            long end = System.nanoTime();
+            bytes = threads.getCurrentThreadAllocatedBytes() - bytes;
+            if (i >= WARMUP) {
+                nanos += end - start;
+                allocated += bytes;
+            }
+        }
+        double chars = (double) CHARS * ROUNDS;
+        System.out.printf("%-24s %6d %6s %12.2f %14.3f%n", name, _size,
+                          slots == 0 ? "-" : Integer.toString(slots),
+                          nanos / chars, allocated / chars);
+    }
+
+    /** Return a machine with SLOTS rotor slots: a reflector, one fixed
+     *  rotor and SLOTS - 2 moving rotors, at random settings. */
+    private Machine machine(int slots) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[slots];
+        for (int i = 0; i < slots; i += 1) {
+            names[i] = "R" + i;
+            if (i == 0) {
+                rotors.add(new Reflector(names[i],
+                                         new Permutation(pairs(), _alphabet)));
+            } else if (i == 1) {
+                rotors.add(new FixedRotor(names[i],
+                                          new Permutation(cycles(),
+                                                          _alphabet)));
+            } else {
+                rotors.add(new MovingRotor(names[i],
+                                           new Permutation(cycles(),
+                                                           _alphabet),
+                                           notch()));
+            }
+        }
+        Machine machine = new Machine(_alphabet, slots, slots - 2, rotors);
+        machine.insertRotors(names);
+        StringBuilder setting = new StringBuilder();
+        for (int i = 1; i < slots; i += 1) {
+            setting.append(_alphabet.toChar(_random.nextInt(_size)));
+        }
+        machine.setRotors(setting.toString());
+        machine.setPlugboard(new Permutation(pairs(), _alphabet));
+        return machine;
+    }
+
+    /** Return a random permutation of the alphabet in cycle notation. */
+    private String cycles() {
+        List<Character> chars = shuffled();
+        StringBuilder result = new StringBuilder("(");
+        for (int i = 0; i < chars.size(); i += 1) {
+            if (i > 0 && _random.nextInt(8) == 0) {
+                result.append(")(");
+            }
+            result.append(chars.get(i));
+        }
+        return result.append(')').toString();
+    }
+
+    /** Return a random pairing of the characters of the alphabet in cycle
+     *  notation, as for a reflector. */
+    private String pairs() {
+        List<Character> chars = shuffled();
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < chars.size(); i += 2) {
+            result.append('(').append(chars.get(i)).append(chars.get(i + 1))
+                .append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return the characters of the alphabet in a random order. */
+    private List<Character> shuffled() {
+        ArrayList<Character> result = new ArrayList<>();
+        for (int i = 0; i < _size; i += 1) {
+            result.add(_alphabet.toChar(i));
+        }
+        Collections.shuffle(result, _random);
+        return result;
+    }
+
+    /** Return a random notch. */
+    private String notch() {
+        return String.valueOf(_alphabet.toChar(_random.nextInt(_size)));
+    }
+
+    /** Return the numbers in the comma-separated list LIST. */
+    private static int[] list(String list) {
+        String[] words = list.split(",");
+        int[] result = new int[words.length];
+        for (int i = 0; i < words.length; i += 1) {
+            result[i] = Integer.parseInt(words[i].trim());
+        }
+        return result;
+    }
+
+    /** Sum of the results of all conversions, printed so that none can
+     *  be optimized away. */
+    private static long _checksum;
+
+    /** Number of characters in the alphabet. */
+    private final int _size;
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+    /** Source of the permutations, notches and settings. */
+    private final Random _random;
+    /** The indices of the characters of the message. */
+    private final int[] _input;
+    /** The message. */
+    private final String _message;
+}
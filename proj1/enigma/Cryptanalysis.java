@@ -0,0 +1,610 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** Recovers the rotors, rotor settings and ring settings of an Enigma
+ *  machine without a plugboard from a ciphertext, optionally with a crib:
+ *  plaintext known to begin the message.
+ *
+ *  The search goes in two rounds.  Since a rotor's mapping depends only on
+ *  its setting less its ring setting, and the ring settings otherwise
+ *  matter only when a rotor steps the one to its left, the first round
+ *  tries every choice of rotors from those available and every setting of
+ *  them with all rings at 0, keeping the KEEP best.  The second round
+ *  tries, for each of those, every ring setting of the two rightmost
+ *  rotors with their offsets unchanged, which fixes when the rotors to
+ *  their left step.  Settings that differ only in the rings of the other
+ *  rotors give the same plaintext.
+ *
+ *  A candidate is scored by the log-likelihood of its plaintext under
+ *  n-gram statistics: English letter frequencies for the usual alphabet,
+ *  or unigrams and bigrams counted in a text given by setStatistics.
+ *  Without statistics, the index of coincidence of the plaintext is the
+ *  score; it barely changes when a rotor steps a few letters early or
+ *  late, so the rings it picks may leave a few letters wrong.  A
+ *  candidate whose plaintext does not begin with the crib is dropped at
+ *  the first letter that differs, and a log-likelihood is abandoned once
+ *  even the likeliest remaining letters could not lift it above the
+ *  KEEP-th best score yet found by any thread.
+ *
+ *  Each round numbers its candidates and splits the range of numbers
+ *  across the common fork-join pool.  A task of at most GRAIN candidates
+ *  runs them all on one Trial, a stripped copy of the machine whose state
+ *  is a few arrays, set for each candidate without allocating.
+ *  @author Mengmeng Yang
+ */
+class Cryptanalysis {
+
+    /** Number of candidates kept from the first round. */
+    static final int KEEP = 32;
+    /** Largest number of candidates tried by one task. */
+    static final int GRAIN = 1 << 10;
+    /** Largest alphabet for which bigram statistics are kept. */
+    static final int BIGRAM_MAX = 256;
+    /** Frequencies of the letters A to Z in English text, in percent. */
+    static final double[] ENGLISH = {
+        8.2, 1.5, 2.8, 4.3, 12.7, 2.2, 2.0, 6.1, 7.0, 0.15, 0.77, 4.0, 2.4,
+        6.7, 7.5, 1.9, 0.095, 6.0, 6.3, 9.1, 2.8, 0.98, 2.4, 0.15, 2.0, 0.074
+    };
+
+    /**
+     * A search for the settings of a machine with alphabet ALPHA,
+     * NUMROTORS rotor slots and PAWLS pawls whose rotors are chosen from
+     * ALLROTORS.
+     * @param alpha The alphabet
+     * @param numRotors The number of rotor slots
+     * @param pawls The number of pawls
+     * @param allRotors The rotors available
+     */
+    Cryptanalysis(Alphabet alpha, int numRotors, int pawls,
+                  Collection<Rotor> allRotors) {
+        _alphabet = alpha;
+        _size = alpha.size();
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _rotors = new ArrayList<>(allRotors);
+        int count = _rotors.size();
+        _forward = new int[count][];
+        _inverse = new int[count][];
+        _notch = new boolean[count][];
+        _moves = new boolean[count];
+        for (int r = 0; r < count; r += 1) {
+            Rotor rotor = _rotors.get(r);
+            _moves[r] = rotor.rotates();
+            _forward[r] = rotor.permutation().forward();
+            _inverse[r] = rotor.permutation().inverse();
+            _notch[r] = new boolean[_size];
+            if (rotor.rotates()) {
+                Rotor probe = rotor.copy();
+                for (int s = 0; s < _size; s += 1) {
+                    probe.set(s);
+                    _notch[r][s] = probe.atNotch();
+                }
+            }
+        }
+        _orders = orders();
+        _crib = new int[0];
+        if (_size == ENGLISH.length) {
+            boolean english = true;
+            for (int i = 0; i < _size; i += 1) {
+                english &= alpha.toChar(i) == 'A' + i;
+            }
+            if (english) {
+                _unigrams = new float[_size];
+                for (int i = 0; i < _size; i += 1) {
+                    _unigrams[i] = (float) Math.log(ENGLISH[i] / 100);
+                }
+                _maxLog = max(_unigrams);
+            }
+        }
+    }
+
+    /** Require the plaintext to begin with CRIB, whose characters must be
+     *  in my alphabet. */
+    void setCrib(String crib) {
+        _crib = new int[crib.length()];
+        for (int i = 0; i < crib.length(); i += 1) {
+            _crib[i] = _alphabet.toInt(crib.charAt(i));
+        }
+    }
+
+    /** Score plaintexts by the unigrams, and for alphabets of at most
+     *  BIGRAM_MAX characters the bigrams, of the characters of TEXT that
+     *  are in my alphabet, after conversion to upper case if they are not
+     *  in it as they are. */
+    void setStatistics(String text) {
+        int n = _size;
+        long[] unigrams = new long[n];
+        long[] bigrams = n <= BIGRAM_MAX ? new long[n * n] : null;
+        long total = 0;
+        int prev = -1;
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (!_alphabet.contains(c)) {
+                c = Character.toUpperCase(c);
+            }
+            if (!_alphabet.contains(c)) {
+                prev = -1;
+                continue;
+            }
+            int k = _alphabet.toInt(c);
+            unigrams[k] += 1;
+            total += 1;
+            if (bigrams != null && prev >= 0) {
+                bigrams[prev * n + k] += 1;
+            }
+            prev = k;
+        }
+        _unigrams = new float[n];
+        for (int k = 0; k < n; k += 1) {
+            _unigrams[k] = (float) Math.log((unigrams[k] + 0.5)
+                                            / (total + 0.5 * n));
+        }
+        _maxLog = max(_unigrams);
+        _bigrams = null;
+        if (bigrams != null) {
+            long[] rows = new long[n];
+            for (int k = 0; k < n * n; k += 1) {
+                rows[k / n] += bigrams[k];
+            }
+            _bigrams = new float[n * n];
+            for (int k = 0; k < n * n; k += 1) {
+                _bigrams[k] = (float) Math.log((bigrams[k] + 0.5)
+                                               / (rows[k / n] + 0.5 * n));
+            }
+            _maxLog = Math.max(_maxLog, max(_bigrams));
+        }
+    }
+
+    /** Return the best settings found for CIPHERTEXT, whose characters
+     *  must be in my alphabet, or null if no settings yield a plaintext
+     *  beginning with the crib. */
+    Result search(String ciphertext) {
+        _cipher = new int[ciphertext.length()];
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            _cipher[i] = _alphabet.toInt(ciphertext.charAt(i));
+        }
+        long perOrder = 1, total;
+        try {
+            for (int i = 1; i < _numRotors; i += 1) {
+                perOrder = Math.multiplyExact(perOrder, _size);
+            }
+            total = Math.multiplyExact(perOrder, _orders.size());
+        } catch (ArithmeticException excp) {
+            throw error("too many settings to search");
+        }
+        _perOrder = perOrder;
+        _bound = new AtomicLong(Double.doubleToLongBits(NO_SCORE));
+        Best first = ForkJoinPool.commonPool().invoke(
+            new Search(false, 0, total));
+        if (first.size() == 0) {
+            return null;
+        }
+        _first = first;
+        _refined = Math.min(2, _pawls);
+        long rings = 1;
+        for (int i = 0; i < _refined; i += 1) {
+            rings *= _size;
+        }
+        _rings = rings;
+        _bound.set(Double.doubleToLongBits(NO_SCORE));
+        Best second = ForkJoinPool.commonPool().invoke(
+            new Search(true, 0, first.size() * rings));
+        Trial trial = new Trial();
+        trial.set(true, second.index(0));
+        return new Result(trial.settings(), second.score(0));
+    }
+
+    /** The best settings found by a search. */
+    static class Result {
+
+        /** Settings SETTINGS, scoring SCORE. */
+        Result(String settings, double score) {
+            _settings = settings;
+            _score = score;
+        }
+
+        /** Return the settings as a settings line of an input file. */
+        String settings() {
+            return _settings;
+        }
+
+        /** Return the score of the plaintext they give. */
+        double score() {
+            return _score;
+        }
+
+        /** The settings line. */
+        private final String _settings;
+        /** The score. */
+        private final double _score;
+    }
+
+    /** Score given to candidates that are dropped. */
+    private static final double NO_SCORE = Double.NEGATIVE_INFINITY;
+
+    /** Return the score of the plaintext TRIAL makes of _cipher, or
+     *  NO_SCORE if it does not begin with the crib or could not score
+     *  more than BOUND. */
+    private double score(Trial trial, double bound) {
+        int[] cipher = _cipher, crib = _crib;
+        int len = cipher.length;
+        if (_unigrams == null) {
+            int[] counts = trial._counts;
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < len; i += 1) {
+                int c = trial.convert(cipher[i]);
+                if (i < crib.length && c != crib[i]) {
+                    return NO_SCORE;
+                }
+                counts[c] += 1;
+            }
+            long coincidences = 0;
+            for (int k = 0; k < counts.length; k += 1) {
+                coincidences += (long) counts[k] * (counts[k] - 1);
+            }
+            return len < 2 ? 0 : (double) coincidences / len / (len - 1);
+        }
+        float[] unigrams = _unigrams, bigrams = _bigrams;
+        double maxLog = _maxLog;
+        int n = _size;
+        double score = 0;
+        int prev = -1;
+        for (int i = 0; i < len; i += 1) {
+            int c = trial.convert(cipher[i]);
+            if (i < crib.length && c != crib[i]) {
+                return NO_SCORE;
+            }
+            score += bigrams == null || prev < 0 ? unigrams[c]
+                : bigrams[prev * n + c];
+            prev = c;
+            if ((i & 15) == 15 && score + maxLog * (len - 1 - i) <= bound) {
+                return NO_SCORE;
+            }
+        }
+        return score;
+    }
+
+    /** Return the rotor choices for the slots: for each, the index in
+     *  _rotors of the rotor in each slot. */
+    private ArrayList<int[]> orders() {
+        ArrayList<int[]> result = new ArrayList<>();
+        for (int r = 0; r < _rotors.size(); r += 1) {
+            if (_rotors.get(r).reflecting()) {
+                int[] order = new int[_numRotors];
+                order[0] = r;
+                fill(order, 1, result);
+            }
+        }
+        return result;
+    }
+
+    /** Add to RESULT each choice of rotors that fills the slots of ORDER
+     *  from SLOT on, with its earlier slots as they are. */
+    private void fill(int[] order, int slot, ArrayList<int[]> result) {
+        if (slot == _numRotors) {
+            result.add(order.clone());
+            return;
+        }
+        boolean moving = slot >= _numRotors - _pawls;
+        for (int r = 0; r < _rotors.size(); r += 1) {
+            Rotor rotor = _rotors.get(r);
+            boolean used = false;
+            for (int i = 0; i < slot; i += 1) {
+                used |= order[i] == r;
+            }
+            if (!used && !rotor.reflecting() && rotor.rotates() == moving) {
+                order[slot] = r;
+                fill(order, slot + 1, result);
+            }
+        }
+    }
+
+    /** Return the largest of VALUES. */
+    private static float max(float[] values) {
+        float result = Float.NEGATIVE_INFINITY;
+        for (float value : values) {
+            result = Math.max(result, value);
+        }
+        return result;
+    }
+
+    /** Return the KEEP-th best score found so far by any task. */
+    private double bound() {
+        return Double.longBitsToDouble(_bound.get());
+    }
+
+    /** Make the KEEP-th best score found so far at least SCORE. */
+    private void raise(double score) {
+        long old = _bound.get();
+        while (Double.longBitsToDouble(old) < score
+               && !_bound.compareAndSet(old, Double.doubleToLongBits(score))) {
+            old = _bound.get();
+        }
+    }
+
+    /** A task trying the candidates numbered from START to END of the
+     *  first round or, if SECOND, of the second. */
+    private class Search extends RecursiveTask<Best> {
+
+        /** Tasks are never serialized; declared as ForkJoinTask is
+         *  Serializable. */
+        private static final long serialVersionUID = 1L;
+
+        /** Candidates START to END of the first round, or of the second if
+         *  SECOND. */
+        Search(boolean second, long start, long end) {
+            _second = second;
+            _start = start;
+            _end = end;
+        }
+
+        @Override
+        protected Best compute() {
+            if (_end - _start > GRAIN) {
+                long mid = _start + (_end - _start) / 2;
+                Search left = new Search(_second, _start, mid);
+                left.fork();
+                Best result = new Search(_second, mid, _end).compute();
+                result.addAll(left.join());
+                return result;
+            }
+            Best result = new Best();
+            Trial trial = new Trial();
+            for (long k = _start; k < _end; k += 1) {
+                trial.set(_second, k);
+                double score = score(trial, bound());
+                if (score > NO_SCORE && result.add(score, k)) {
+                    raise(result.last());
+                }
+            }
+            return result;
+        }
+
+        /** True iff the candidates are those of the second round. */
+        private final boolean _second;
+        /** The first candidate. */
+        private final long _start;
+        /** The candidate after the last. */
+        private final long _end;
+    }
+
+    /** The KEEP best-scoring candidates of a set, in decreasing order of
+     *  score. */
+    private static class Best {
+
+        /** Add candidate INDEX with SCORE if it is among the best.  Return
+         *  true iff there are now KEEP candidates. */
+        boolean add(double score, long index) {
+            if (_size == KEEP && score <= _scores[KEEP - 1]) {
+                return true;
+            }
+            int k = _size == KEEP ? KEEP - 1 : _size;
+            while (k > 0 && _scores[k - 1] < score) {
+                _scores[k] = _scores[k - 1];
+                _indices[k] = _indices[k - 1];
+                k -= 1;
+            }
+            _scores[k] = score;
+            _indices[k] = index;
+            _size = Math.min(KEEP, _size + 1);
+            return _size == KEEP;
+        }
+
+        /** Add the candidates of OTHER. */
+        void addAll(Best other) {
+            for (int k = 0; k < other._size; k += 1) {
+                add(other._scores[k], other._indices[k]);
+            }
+        }
+
+        /** Return the number of candidates. */
+        int size() {
+            return _size;
+        }
+
+        /** Return the score of the K-th best candidate. */
+        double score(int k) {
+            return _scores[k];
+        }
+
+        /** Return the number of the K-th best candidate. */
+        long index(int k) {
+            return _indices[k];
+        }
+
+        /** Return the lowest score kept. */
+        double last() {
+            return _scores[_size - 1];
+        }
+
+        /** The scores, best first. */
+        private final double[] _scores = new double[KEEP];
+        /** The candidate numbers, in the same order. */
+        private final long[] _indices = new long[KEEP];
+        /** The number of candidates. */
+        private int _size;
+    }
+
+    /** A copy of the machine without a plugboard, reduced to the tables of
+     *  its rotors and their settings, which converts characters just as
+     *  Machine.convert does. */
+    private class Trial {
+
+        /** A machine with no rotors in place. */
+        Trial() {
+            _order = new int[_numRotors];
+            _setting = new int[_numRotors];
+            _ring = new int[_numRotors];
+            _offset = new int[_numRotors];
+            _counts = new int[_size];
+        }
+
+        /** Put the rotors of candidate K of the first round, or if SECOND
+         *  the second, in place at its settings. */
+        void set(boolean second, long k) {
+            long key = k;
+            if (second) {
+                key = _first.index((int) (k / _rings));
+            }
+            int[] order = _orders.get((int) (key / _perOrder));
+            long positions = key % _perOrder;
+            for (int i = _numRotors - 1; i >= 0; i -= 1) {
+                _order[i] = order[i];
+                _setting[i] = i == 0 ? 0 : (int) (positions % _size);
+                _ring[i] = 0;
+                positions /= _size;
+            }
+            if (second) {
+                long rings = k % _rings;
+                for (int i = _numRotors - 1; i >= _numRotors - _refined;
+                     i -= 1) {
+                    _ring[i] = (int) (rings % _size);
+                    _setting[i] = (_setting[i] + _ring[i]) % _size;
+                    rings /= _size;
+                }
+            }
+            for (int i = 0; i < _numRotors; i += 1) {
+                offsetChanged(i);
+            }
+        }
+
+        /** Return the conversion of C after advancing the rotors. */
+        int convert(int c) {
+            advance();
+            int n = _size;
+            int[] order = _order, offset = _offset;
+            for (int i = _numRotors - 1; i >= 0; i -= 1) {
+                int enter = c + offset[i];
+                c = _forward[order[i]][enter >= n ? enter - n : enter]
+                    - offset[i];
+                c = c < 0 ? c + n : c;
+            }
+            for (int i = 1; i < _numRotors; i += 1) {
+                int enter = c + offset[i];
+                c = _inverse[order[i]][enter >= n ? enter - n : enter]
+                    - offset[i];
+                c = c < 0 ? c + n : c;
+            }
+            return c;
+        }
+
+        /** Advance the rotors as Machine does before each character. */
+        private void advance() {
+            int last = _numRotors - 1;
+            for (int i = 0; i < _numRotors; i += 1) {
+                if (i == last || (rotates(i)
+                                  && _notch[_order[i + 1]][_setting[i + 1]])) {
+                    step(i);
+                    if (i < last) {
+                        step(i + 1);
+                        i += 1;
+                    }
+                }
+            }
+        }
+
+        /** Return true iff the rotor in SLOT moves. */
+        private boolean rotates(int slot) {
+            return _moves[_order[slot]];
+        }
+
+        /** Advance the rotor in SLOT, if it moves. */
+        private void step(int slot) {
+            if (rotates(slot)) {
+                _setting[slot] = _setting[slot] + 1 == _size ? 0
+                    : _setting[slot] + 1;
+                offsetChanged(slot);
+            }
+        }
+
+        /** Recompute the offset of the rotor in SLOT. */
+        private void offsetChanged(int slot) {
+            int offset = _setting[slot] - _ring[slot];
+            _offset[slot] = offset < 0 ? offset + _size : offset;
+        }
+
+        /** Return my rotors and their current settings as a settings
+         *  line. */
+        String settings() {
+            StringBuilder line = new StringBuilder("*");
+            for (int i = 0; i < _numRotors; i += 1) {
+                line.append(' ').append(_rotors.get(_order[i]).name());
+            }
+            line.append(' ');
+            for (int i = 1; i < _numRotors; i += 1) {
+                line.append(_alphabet.toChar(_setting[i]));
+            }
+            line.append(' ');
+            for (int i = 1; i < _numRotors; i += 1) {
+                line.append(_alphabet.toChar(_ring[i]));
+            }
+            return line.toString();
+        }
+
+        /** The index in _rotors of the rotor in each slot. */
+        private final int[] _order;
+        /** The setting of each slot. */
+        private final int[] _setting;
+        /** The ring setting of each slot. */
+        private final int[] _ring;
+        /** The setting less the ring setting of each slot. */
+        private final int[] _offset;
+        /** Counts of the characters of a plaintext, for its index of
+         *  coincidence. */
+        private final int[] _counts;
+    }
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+    /** The size of the alphabet. */
+    private final int _size;
+    /** The number of rotor slots. */
+    private final int _numRotors;
+    /** The number of pawls. */
+    private final int _pawls;
+    /** The rotors available. */
+    private final ArrayList<Rotor> _rotors;
+    /** The image of each index under the permutation of each rotor. */
+    private final int[][] _forward;
+    /** The image of each index under the inverse of each permutation. */
+    private final int[][] _inverse;
+    /** Whether each rotor moves. */
+    private final boolean[] _moves;
+    /** Whether each rotor is at a notch at each setting. */
+    private final boolean[][] _notch;
+    /** The choices of rotors for the slots. */
+    private final ArrayList<int[]> _orders;
+    /** The indices of the characters of the crib. */
+    private int[] _crib;
+    /** The log-probability of each character, or null to score by the
+     *  index of coincidence. */
+    private float[] _unigrams;
+    /** The log-probability of each character after each other, or null
+     *  if only unigrams are kept. */
+    private float[] _bigrams;
+    /** The largest log-probability of a character. */
+    private double _maxLog;
+    /** The indices of the characters of the ciphertext searched. */
+    private int[] _cipher;
+    /** The number of candidates of the first round for each choice of
+     *  rotors. */
+    private long _perOrder;
+    /** The best candidates of the first round. */
+    private Best _first;
+    /** The number of slots whose rings the second round tries. */
+    private int _refined;
+    /** The number of ring settings the second round tries for each
+     *  candidate of the first. */
+    private long _rings;
+    /** The bits of the KEEP-th best score found so far in the current
+     *  round. */
+    private AtomicLong _bound;
+}
@@ -0,0 +1,109 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Cryptanalysis class.
+ *  @author Mengmeng Yang
+ */
+public class CryptanalysisTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the rotors of a small machine: reflectors B and C and the
+     *  moving rotors I, II and III, over alphabet ALPHA. */
+    private ArrayList<Rotor> rotors(Alphabet alpha) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      alpha)));
+        rotors.add(new Reflector("C", new Permutation(NAVALA.get("C"),
+                                                      alpha)));
+        String[] names = {"I", "II", "III"};
+        String[] notches = {"Q", "E", "V"};
+        for (int i = 0; i < names.length; i += 1) {
+            rotors.add(new MovingRotor(names[i],
+                                       new Permutation(NAVALA.get(names[i]),
+                                                       alpha), notches[i]));
+        }
+        return rotors;
+    }
+
+    /** Return the conversion of MSG by a machine over ALPHA with three
+     *  slots set up by SETTINGS, a settings line naming the rotors, their
+     *  settings and their rings. */
+    private String convert(Alphabet alpha, String settings, String msg) {
+        Machine machine = new Machine(alpha, 3, 2, rotors(alpha));
+        String[] words = settings.split(" ");
+        machine.insertRotors(new String[] {words[1], words[2], words[3]});
+        machine.setRotors(words[4]);
+        machine.setRing(words[5]);
+        return machine.convert(msg);
+    }
+
+    /** A plaintext long enough to be recognized. */
+    private static final String PLAIN =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOODMADEOFSLIDING"
+        + "FOLDINGROSEWOODNEATLYPUTITALLTOGETHERINITSCASEITLAYCOMPACTLY"
+        + "FOLDEDINTONEARLYNOTHINGBUTHEOPENEDOUTTHEHINGES";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCrackWithStatistics() {
+        String cipher = convert(UPPER, "* C III I QE KD", PLAIN);
+        Cryptanalysis analysis = new Cryptanalysis(UPPER, 3, 2,
+                                                   rotors(UPPER));
+        Cryptanalysis.Result result = analysis.search(cipher);
+        assertNotNull(result);
+        assertTrue(result.settings().startsWith("* C III I "));
+        assertEquals(PLAIN, convert(UPPER, result.settings(), cipher));
+    }
+
+    @Test
+    public void testCrackWithCrib() {
+        String cipher = convert(UPPER, "* B II III AZ XB", PLAIN);
+        Cryptanalysis analysis = new Cryptanalysis(UPPER, 3, 2,
+                                                   rotors(UPPER));
+        analysis.setCrib("FROMHIS");
+        Cryptanalysis.Result result = analysis.search(cipher);
+        assertNotNull(result);
+        assertEquals(PLAIN, convert(UPPER, result.settings(), cipher));
+
+        analysis.setCrib("XXXXXXXXXX");
+        assertNull(analysis.search(cipher));
+    }
+
+    /** The index of coincidence cannot tell ring settings that move the
+     *  middle rotor a few letters early or late apart, so only most of
+     *  the plaintext is sure to be right. */
+    @Test
+    public void testCrackByCoincidence() {
+        Alphabet backwards = new Alphabet("ZYXWVUTSRQPONMLKJIHGFEDCBA");
+        String cipher = convert(backwards, "* B I II MR CT", PLAIN);
+        Cryptanalysis analysis = new Cryptanalysis(backwards, 3, 2,
+                                                   rotors(backwards));
+        Cryptanalysis.Result result = analysis.search(cipher);
+        assertNotNull(result);
+        assertTrue(result.settings().startsWith("* B I II "));
+        String plain = convert(backwards, result.settings(), cipher);
+        int same = 0;
+        for (int i = 0; i < PLAIN.length(); i += 1) {
+            if (plain.charAt(i) == PLAIN.charAt(i)) {
+                same += 1;
+            }
+        }
+        assertTrue("only " + same + " letters right",
+                   same >= PLAIN.length() * 9 / 10);
+    }
+
+}
@@ -12,4 +12,15 @@ class FixedRotor extends Rotor {
     FixedRotor(String name, Permutation perm) {
         super(name, perm);
     }
+
+    /** A rotor in the same state as ROTOR that moves independently of
+     *  it. */
+    FixedRotor(FixedRotor rotor) {
+        super(rotor);
+    }
+
+    @Override
+    FixedRotor copy() {
+        return new FixedRotor(this);
+    }
 }
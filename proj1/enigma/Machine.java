@@ -1,5 +1,6 @@
 package enigma;
 
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 
@@ -22,6 +23,31 @@ class Machine {
         for (Rotor r: allRotors) {
             _allRotors.add(r);
         }
+        boolean bytes = true;
+        for (int i = 0; i < alpha.size(); i += 1) {
+            bytes &= alpha.toChar(i) <= 0xff;
+        }
+        _bytes = bytes;
+    }
+
+    /** Return a machine in my current state, with the same rotors in its
+     *  slots at the same settings and the same plugboard, whose rotors
+     *  move independently of mine. */
+    Machine copy() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (Rotor rotor : _allRotors) {
+            rotors.add(rotor.copy());
+        }
+        Machine result = new Machine(_alphabet, _numRotors, _pawls, rotors);
+        if (_setRotors != null) {
+            result._setRotors = new ArrayList<>();
+            for (Rotor rotor : _setRotors) {
+                result._setRotors.add(rotors.get(_allRotors.indexOf(rotor)));
+            }
+            result._rotors = result._setRotors.toArray(new Rotor[0]);
+        }
+        result._plugboard = _plugboard;
+        return result;
     }
 
     /** Return the number of rotor slots I have. */
@@ -57,6 +83,7 @@ class Machine {
         if (rotors.length != _setRotors.size()) {
             throw new EnigmaException("Rotor name does not exist.");
         }
+        _rotors = _setRotors.toArray(new Rotor[0]);
     }
 
     /** Set my rotors according to SETTING, which must be a string of
@@ -112,11 +139,12 @@ class Machine {
         if (_plugboard != null) {
             ch = _plugboard.permute(ch);
         }
+        Rotor[] rotors = _rotors;
         for (int i = _numRotors - 1; i >= 0; i--) {
-            ch = _setRotors.get(i).convertForward(ch);
+            ch = rotors[i].convertForward(ch);
         }
         for (int i = 1; i < _numRotors; i++) {
-            ch = _setRotors.get(i).convertBackward(ch);
+            ch = rotors[i].convertBackward(ch);
         }
         if (_plugboard != null) {
             ch = _plugboard.invert(ch);
@@ -128,27 +156,134 @@ class Machine {
      * and advance the corresponding rotor(s).
      */
     private void advanceHelper() {
+        Rotor[] rotors = _rotors;
         for (int i = 0; i < _numRotors; i += 1) {
             if ((i == _numRotors - 1)
-                    || (_setRotors.get(i).rotates()
-                    && _setRotors.get(i + 1).atNotch())) {
-                _setRotors.get(i).advance();
+                    || (rotors[i].rotates()
+                    && rotors[i + 1].atNotch())) {
+                rotors[i].advance();
                 if (i < _numRotors - 1) {
-                    _setRotors.get(i + 1).advance();
+                    rotors[i + 1].advance();
                     i += 1;
                 }
             }
         }
     }
 
+    /** Advance my rotors to the settings they would have after converting
+     *  N more characters, without converting any.  Between the steps in
+     *  which a rotor other than the rightmost one moves, the rightmost
+     *  rotor simply advances, so each such run of steps is taken at once
+     *  by advancing it to its next notch; the cost thus grows with the
+     *  number of times the other rotors move rather than with N. */
+    void seek(long n) {
+        if (n < 0) {
+            throw error("cannot seek back %d characters", -n);
+        }
+        Rotor[] rotors = _rotors;
+        Rotor fast = rotors[_numRotors - 1];
+        while (n > 0) {
+            if (onlyFastMoves()) {
+                if (!fast.rotates()) {
+                    return;
+                }
+                int toNotch = rotors[_numRotors - 2].rotates()
+                    ? fast.toNotch() : -1;
+                if (toNotch < 0 || toNotch >= n) {
+                    fast.set(fast.setting() + (int) (n % fast.size()));
+                    return;
+                }
+                fast.set(fast.setting() + toNotch);
+                n -= toNotch;
+            }
+            advanceHelper();
+            n -= 1;
+        }
+    }
+
+    /** Return true iff advancing now would move no rotor but the
+     *  rightmost one, unless that one is at a notch. */
+    private boolean onlyFastMoves() {
+        Rotor[] rotors = _rotors;
+        for (int i = 0; i < _numRotors - 2; i += 1) {
+            if (rotors[i].rotates() && rotors[i + 1].atNotch()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String result = "";
-        for (int i = 0; i < msg.length(); i++) {
-            result += _alphabet.toChar(convert(_alphabet.toInt(msg.charAt(i))));
+        char[] buf = msg.toCharArray();
+        convert(buf, 0, buf.length);
+        return new String(buf);
+    }
+
+    /** Replace the LEN characters of BUF starting at OFF by their
+     *  encoding/decoding, updating the state of the rotors
+     *  accordingly. */
+    void convert(char[] buf, int off, int len) {
+        convert(buf, off, buf, off, len);
+    }
+
+    /** Store the encoding/decoding of the LEN characters of SRC starting
+     *  at SRCOFF into DST starting at DSTOFF, updating the state of the
+     *  rotors accordingly.  SRC and DST may be the same array. */
+    void convert(char[] src, int srcOff, char[] dst, int dstOff, int len) {
+        checkRange(src.length, srcOff, len);
+        checkRange(dst.length, dstOff, len);
+        Alphabet alphabet = _alphabet;
+        for (int i = 0; i < len; i += 1) {
+            dst[dstOff + i] =
+                alphabet.toChar(convert(alphabet.toInt(src[srcOff + i])));
+        }
+    }
+
+    /** Encode/decode the characters remaining in IN into OUT, as many as
+     *  both have room for, advancing the positions of both and updating
+     *  the state of the rotors accordingly.  Return the number of
+     *  characters converted. */
+    int convert(CharBuffer in, CharBuffer out) {
+        int len = Math.min(in.remaining(), out.remaining());
+        if (in.hasArray() && out.hasArray() && !out.isReadOnly()) {
+            convert(in.array(), in.arrayOffset() + in.position(),
+                    out.array(), out.arrayOffset() + out.position(), len);
+            in.position(in.position() + len);
+            out.position(out.position() + len);
+        } else {
+            for (int i = 0; i < len; i += 1) {
+                out.put(_alphabet.toChar(convert(_alphabet.toInt(in.get()))));
+            }
+        }
+        return len;
+    }
+
+    /** Replace the LEN bytes of BUF starting at OFF, each a character in
+     *  ISO-8859-1, by their encoding/decoding, updating the state of the
+     *  rotors accordingly.  My alphabet must consist of such
+     *  characters. */
+    void convert(byte[] buf, int off, int len) {
+        checkRange(buf.length, off, len);
+        if (!_bytes) {
+            throw error("alphabet has characters that are not bytes");
+        }
+        Alphabet alphabet = _alphabet;
+        for (int i = off; i < off + len; i += 1) {
+            buf[i] = (byte) alphabet.toChar(
+                convert(alphabet.toInt((char) (buf[i] & 0xff))));
+        }
+    }
+
+    /** Check that OFF and LEN describe a range of an array of length
+     *  LENGTH. */
+    private static void checkRange(int length, int off, int len) {
+        if (off < 0 || len < 0 || off > length - len) {
+            throw new IndexOutOfBoundsException(
+                String.format("range [%d, %d) of %d", off, off + len,
+                              length));
         }
-        return result;
     }
 
     /** Set the rings according to RINGSETTING, which must be a string of
@@ -170,6 +305,8 @@ class Machine {
 
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
+    /** True iff every character of _alphabet is in ISO-8859-1. */
+    private final boolean _bytes;
 
     /** The number of rotors. */
     private int _numRotors;
@@ -179,6 +316,8 @@ class Machine {
     private ArrayList<Rotor> _allRotors;
     /** The ArrayList of all the rotors in the input file. */
     private ArrayList<Rotor> _setRotors;
+    /** The rotors in the input file, in their slots. */
+    private Rotor[] _rotors;
     /** The plugboard. */
     private Permutation _plugboard;
 }
@@ -0,0 +1,133 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Mengmeng Yang
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine with the naval rotors, set up as
+     *  B Beta III IV I at AXLE with plugboard (HQ) (EX) (IP) (TR) (BY). */
+    private Machine machine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("BETA", new Permutation(NAVALA.get("Beta"),
+                                                          UPPER)));
+        rotors.add(new MovingRotor("III", new Permutation(NAVALA.get("III"),
+                                                          UPPER), "V"));
+        rotors.add(new MovingRotor("IV", new Permutation(NAVALA.get("IV"),
+                                                         UPPER), "J"));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                        UPPER), "Q"));
+        Machine machine = new Machine(UPPER, 5, 3, rotors);
+        machine.insertRotors(new String[] {"B", "BETA", "III", "IV", "I"});
+        machine.setRotors("AXLE");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                             UPPER));
+        return machine;
+    }
+
+    /** Return a machine whose five rotors all move, several with two
+     *  notches, so that rotors often step twice in a row. */
+    private Machine allMoving() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        String[] names = {"VI", "VII", "III", "VIII", "I"};
+        String[] notches = {"ZM", "ZM", "V", "ZM", "Q"};
+        for (int i = 0; i < names.length; i += 1) {
+            rotors.add(new MovingRotor(names[i],
+                                       new Permutation(NAVALA.get(names[i]),
+                                                       UPPER), notches[i]));
+        }
+        Machine machine = new Machine(UPPER, 6, 5, rotors);
+        machine.insertRotors(new String[] {"B", "VI", "VII", "III", "VIII",
+                                           "I"});
+        machine.setRotors("LYVKP");
+        machine.setRing("BCDEF");
+        return machine;
+    }
+
+    /** A message long enough to move the middle rotors. */
+    private static final String MESSAGE =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD".repeat(20);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConvertString() {
+        String cipher = machine().convert(MESSAGE);
+        assertEquals(MESSAGE.length(), cipher.length());
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     machine().convert("FROMHISSHOULDERHIAWATHA"));
+        assertEquals(MESSAGE, machine().convert(cipher));
+    }
+
+    @Test
+    public void testConvertBuffers() {
+        String cipher = machine().convert(MESSAGE);
+        char[] chars = ("**" + MESSAGE).toCharArray();
+        machine().convert(chars, 2, MESSAGE.length());
+        assertEquals("**" + cipher, new String(chars));
+
+        char[] out = new char[MESSAGE.length()];
+        Machine m = machine();
+        m.convert(MESSAGE.toCharArray(), 0, out, 0, 100);
+        m.convert(MESSAGE.toCharArray(), 100, out, 100,
+                  MESSAGE.length() - 100);
+        assertEquals(cipher, new String(out));
+
+        CharBuffer in = CharBuffer.wrap(MESSAGE);
+        CharBuffer dst = CharBuffer.allocate(MESSAGE.length());
+        m = machine();
+        assertEquals(MESSAGE.length(), m.convert(in, dst));
+        assertFalse(in.hasRemaining());
+        assertEquals(cipher, dst.flip().toString());
+
+        byte[] bytes = MESSAGE.getBytes(StandardCharsets.ISO_8859_1);
+        machine().convert(bytes, 0, bytes.length);
+        assertEquals(cipher, new String(bytes, StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void testSeek() {
+        for (int n : new int[] {0, 1, 16, 17, 26, 27, 650, 677, 17576,
+                                123457}) {
+            for (Machine start : new Machine[] {machine(), allMoving()}) {
+                Machine sought = start.copy();
+                start.convert("A".repeat(n));
+                sought.seek(n);
+                assertEquals("after " + n, start.convert(MESSAGE),
+                             sought.convert(MESSAGE));
+            }
+        }
+    }
+
+    @Test
+    public void testCopy() {
+        Machine machine = machine();
+        machine.convert("AAAAA");
+        Machine copy = machine.copy();
+        String cipher = machine.convert(MESSAGE);
+        assertEquals(cipher, copy.convert(MESSAGE));
+        assertEquals(machine.convert(MESSAGE), copy.convert(MESSAGE));
+    }
+
+}
@@ -3,10 +3,18 @@ package enigma;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static enigma.EnigmaException.*;
 
@@ -15,8 +23,28 @@ import static enigma.EnigmaException.*;
  */
 public final class Main {
 
+    /** Number of message characters after which the lines following a
+     *  setting are split into a new block, so that even a single long
+     *  message is converted in parallel. */
+    static final int BLOCK_CHARS = 1 << 16;
+    /** Number of blocks per worker thread that may be waiting to be
+     *  written. */
+    static final int PENDING = 4;
+
     /** Process a sequence of encryptions and decryptions, as
-     *  specified by ARGS, where 1 <= ARGS.length <= 3.
+     *  specified by ARGS, where 1 <= ARGS.length <= 3 after any options.
+     *  The option --jobs=N converts the messages on N worker threads, and
+     *  the option --stream converts them through a StreamConverter; either
+     *  way the output is the same as without the option.  Once --stream
+     *  has converted the whole input without error, it also prints one
+     *  line giving the throughput on the standard error, which is
+     *  otherwise the same as without it.  The option --crack
+     *  instead takes the message lines of the input as ciphertext from a
+     *  machine without a plugboard, finds settings for it with a
+     *  Cryptanalysis, and prints them as a settings line followed by the
+     *  messages converted with them.  With it, --crib=TEXT gives the start
+     *  of the plaintext and --ngrams=FILE a text whose n-gram statistics
+     *  score the candidate plaintexts.
      *  ARGS[0] is the name of a configuration file.
      *  ARGS[1] is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
@@ -36,25 +64,63 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
-        if (args.length < 1 || args.length > 3) {
+        int first;
+        for (first = 0; first < args.length && args[first].startsWith("--");
+             first += 1) {
+            option(args[first]);
+        }
+        int nargs = args.length - first;
+        if (nargs < 1 || nargs > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _config = getInput(args[first]);
 
-        if (args.length > 1) {
-            _input = getInput(args[1]);
+        if (nargs > 1) {
+            _inputFile = new File(args[first + 1]);
+            _input = getInput(args[first + 1]);
         } else {
             _input = new Scanner(System.in);
         }
 
-        if (args.length > 2) {
-            _output = getOutput(args[2]);
+        if (nargs > 2) {
+            _output = getOutput(args[first + 2]);
         } else {
             _output = System.out;
         }
     }
 
+    /** Record the command-line option OPTION. */
+    private void option(String option) {
+        if (option.equals("--stream")) {
+            _stream = true;
+            return;
+        }
+        if (option.equals("--crack")) {
+            _crack = true;
+            return;
+        }
+        if (option.startsWith("--crib=")) {
+            _crib = option.substring("--crib=".length());
+            return;
+        }
+        if (option.startsWith("--ngrams=")) {
+            _ngrams = new File(option.substring("--ngrams=".length()));
+            return;
+        }
+        if (!option.startsWith("--jobs=")) {
+            throw error("unknown option %s", option);
+        }
+        try {
+            _jobs = Integer.parseInt(option.substring("--jobs=".length()));
+        } catch (NumberFormatException excp) {
+            _jobs = 0;
+        }
+        if (_jobs <= 0) {
+            throw error("bad number of jobs in %s", option);
+        }
+    }
+
     /** Return a Scanner reading from the file named NAME. */
     private Scanner getInput(String name) {
         try {
@@ -76,7 +142,25 @@ public final class Main {
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
-    private void process() {
+    void process() {
+        if (_jobs > 0 && _stream) {
+            throw error("--jobs and --stream cannot be used together");
+        }
+        if ((_crib != null || _ngrams != null) && !_crack) {
+            throw error("--crib and --ngrams need --crack");
+        }
+        if (_crack) {
+            processCrack();
+            return;
+        }
+        if (_jobs > 0) {
+            processInParallel();
+            return;
+        }
+        if (_stream) {
+            processStream();
+            return;
+        }
         Machine machine = readConfig();
         String setting = "";
         String line = "";
@@ -103,6 +187,156 @@ public final class Main {
         }
     }
 
+    /** As for process, but converting the messages on _jobs worker
+     *  threads.  The settings lines are applied in order to one machine,
+     *  as by process, and after each the lines up to the next are
+     *  converted as a block by a copy of the machine in a worker.  Blocks
+     *  of more than BLOCK_CHARS characters are split, the copy for the
+     *  second part being sought past the first.  The output of each block
+     *  is written in input order as soon as it and those before it are
+     *  done; an error stops the output where process would have. */
+    private void processInParallel() {
+        Machine machine = readConfig();
+        if (!_input.hasNext("(\\*).*")) {
+            throw new EnigmaException("Input file doesn't start with *");
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(_jobs);
+        ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+        try {
+            setUp(machine, _input.nextLine());
+            Block block = new Block(machine.copy());
+            while (_input.hasNextLine()) {
+                String line = _input.nextLine();
+                if (!line.isBlank() && line.contains("*")) {
+                    submit(block, pool, pending);
+                    try {
+                        setUp(machine, line);
+                    } catch (RuntimeException excp) {
+                        while (!pending.isEmpty()) {
+                            write(pending.remove());
+                        }
+                        throw excp;
+                    }
+                    block = new Block(machine.copy());
+                } else {
+                    block.add(line);
+                    if (block.length() >= BLOCK_CHARS) {
+                        Machine next = block.machine().copy();
+                        next.seek(block.length());
+                        submit(block, pool, pending);
+                        block = new Block(next);
+                    }
+                }
+            }
+            submit(block, pool, pending);
+            while (!pending.isEmpty()) {
+                write(pending.remove());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** As for process, but converting the messages through a
+     *  StreamConverter, which maps an input file into memory, and then
+     *  reporting the megabytes of input converted per second on the
+     *  standard error.  Nothing is reported if the conversion stops with
+     *  an error. */
+    private void processStream() {
+        Machine machine = readConfig();
+        StreamConverter converter =
+            new StreamConverter(machine, line -> setUp(machine, line),
+                                _output);
+        long start = System.nanoTime();
+        try {
+            long bytes;
+            if (_inputFile != null) {
+                bytes = converter.convert(_inputFile);
+            } else {
+                bytes = converter.convert(Channels.newChannel(System.in));
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.err.printf("%.1f MB in %.3f s: %.1f MB/s%n", bytes / 1e6,
+                              seconds, bytes / 1e6 / seconds);
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Find settings for the messages in _input with a Cryptanalysis and
+     *  print them as a settings line, followed by the messages converted
+     *  with them as by process. */
+    private void processCrack() {
+        Machine machine = readConfig();
+        ArrayList<String> lines = new ArrayList<>();
+        StringBuilder ciphertext = new StringBuilder();
+        while (_input.hasNextLine()) {
+            String line = _input.nextLine();
+            if (!line.contains("*")) {
+                lines.add(line);
+                ciphertext.append(line.replace(" ", ""));
+            }
+        }
+        Cryptanalysis analysis =
+            new Cryptanalysis(_alphabet, _numRotors, _numPawls, _allRotors);
+        if (_crib != null) {
+            analysis.setCrib(_crib.replace(" ", ""));
+        }
+        if (_ngrams != null) {
+            try {
+                analysis.setStatistics(Files.readString(_ngrams.toPath()));
+            } catch (IOException excp) {
+                throw error("could not read %s", _ngrams);
+            }
+        }
+        Cryptanalysis.Result result =
+            analysis.search(ciphertext.toString());
+        if (result == null) {
+            throw error("no settings fit the ciphertext");
+        }
+        _output.println(result.settings());
+        setUp(machine, result.settings());
+        for (String line : lines) {
+            if (line.isBlank()) {
+                _output.println();
+            } else {
+                printMessageLine(machine.convert(line.replace(" ", "")));
+            }
+        }
+    }
+
+    /** Start converting BLOCK in POOL, adding it to the end of PENDING,
+     *  and first write blocks from the start of PENDING while there are
+     *  too many. */
+    private void submit(Block block, ExecutorService pool,
+                        ArrayDeque<Future<Block>> pending) {
+        while (pending.size() >= PENDING * _jobs) {
+            write(pending.remove());
+        }
+        pending.add(pool.submit(block));
+    }
+
+    /** Wait for the block DONE to be converted and write its output,
+     *  throwing the error that stopped it, if any. */
+    private void write(Future<Block> done) {
+        Block block;
+        try {
+            block = done.get();
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            throw cause instanceof RuntimeException
+                ? (RuntimeException) cause
+                : error("%s", cause.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+        _output.print(block.output());
+        if (block.error() != null) {
+            throw block.error();
+        }
+    }
+
     /** Return an Enigma machine configured from the contents of configuration
      *  file _config. */
     private Machine readConfig() {
@@ -210,13 +444,91 @@ public final class Main {
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters). */
     private void printMessageLine(String msg) {
+        StringBuilder line = new StringBuilder();
+        appendMessageLine(msg, line);
+        _output.print(line);
+    }
+
+    /** Append MSG to OUT in groups of five, as for printMessageLine,
+     *  followed by a line separator. */
+    static void appendMessageLine(String msg, StringBuilder out) {
         for (int i = 0; i < msg.length(); i++) {
-            _output.print(msg.charAt(i));
+            out.append(msg.charAt(i));
             if (i != msg.length() - 1 && ((i + 1) % 5 == 0)) {
-                _output.print(" ");
+                out.append(' ');
             }
         }
-        _output.println();
+        out.append(System.lineSeparator());
+    }
+
+    /** Lines of input following a setting, converted in order by a
+     *  machine of their own. */
+    private static class Block implements Callable<Block> {
+
+        /** An empty block to be converted by MACHINE. */
+        Block(Machine machine) {
+            _machine = machine;
+            _lines = new ArrayList<>();
+        }
+
+        /** Add LINE, which is blank or a message, to the block. */
+        void add(String line) {
+            String message = line.replace(" ", "");
+            _lines.add(line.isBlank() ? null : message);
+            if (!line.isBlank()) {
+                _length += message.length();
+            }
+        }
+
+        /** Return the number of message characters in the block. */
+        long length() {
+            return _length;
+        }
+
+        /** Return the machine converting the block. */
+        Machine machine() {
+            return _machine;
+        }
+
+        /** Return the output of the block, up to any error. */
+        String output() {
+            return _output;
+        }
+
+        /** Return the error that stopped the conversion, or null. */
+        RuntimeException error() {
+            return _error;
+        }
+
+        @Override
+        public Block call() {
+            StringBuilder out = new StringBuilder();
+            try {
+                for (String message : _lines) {
+                    if (message == null) {
+                        out.append(System.lineSeparator());
+                    } else {
+                        appendMessageLine(_machine.convert(message), out);
+                    }
+                }
+            } catch (RuntimeException excp) {
+                _error = excp;
+            }
+            _output = out.toString();
+            return this;
+        }
+
+        /** The machine converting the block. */
+        private final Machine _machine;
+        /** The messages of the block with spaces removed, null standing
+         *  for a blank line. */
+        private final ArrayList<String> _lines;
+        /** The number of message characters. */
+        private long _length;
+        /** The output, once converted. */
+        private String _output;
+        /** The error that stopped the conversion, or null. */
+        private RuntimeException _error;
     }
 
     /** Alphabet used in this machine. */
@@ -237,4 +549,20 @@ public final class Main {
     private int _numPawls;
     /** ArrayList of all the rotors. */
     private ArrayList<Rotor> _allRotors;
+    /** Number of worker threads converting messages, or 0 to convert
+     *  them on this thread. */
+    private int _jobs;
+    /** True iff the input is ciphertext whose settings are to be
+     *  found. */
+    private boolean _crack;
+    /** The known start of the plaintext when cracking, or null. */
+    private String _crib;
+    /** A text whose statistics score plaintexts when cracking, or
+     *  null. */
+    private File _ngrams;
+    /** True iff messages are converted through a StreamConverter. */
+    private boolean _stream;
+    /** The input file, or null if input comes from the standard
+     *  input. */
+    private File _inputFile;
 }
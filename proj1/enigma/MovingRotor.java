@@ -16,6 +16,36 @@ class MovingRotor extends Rotor {
         super(name, perm);
         _notches = notches;
         _setting = 0;
+        _atNotch = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); i++) {
+            _atNotch[perm.alphabet().toInt(notches.charAt(i))] = true;
+        }
+        _toNotch = new int[perm.size()];
+        int distance = -1;
+        for (int pass = 0; pass < 2; pass += 1) {
+            for (int s = perm.size() - 1; s >= 0; s -= 1) {
+                if (_atNotch[s]) {
+                    distance = 0;
+                } else if (distance >= 0) {
+                    distance += 1;
+                }
+                _toNotch[s] = distance;
+            }
+        }
+    }
+
+    /** A rotor in the same state as ROTOR that moves independently of
+     *  it. */
+    MovingRotor(MovingRotor rotor) {
+        super(rotor);
+        _notches = rotor._notches;
+        _atNotch = rotor._atNotch;
+        _toNotch = rotor._toNotch;
+    }
+
+    @Override
+    MovingRotor copy() {
+        return new MovingRotor(this);
     }
 
     @Override
@@ -30,17 +60,21 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
-        for (int i = 0; i < _notches.length(); i++) {
-            if (alphabet().toInt(_notches.charAt(i))
-                    == permutation().wrap(setting())) {
-                return true;
-            }
-        }
-        return false;
+        return _atNotch[setting()];
+    }
+
+    @Override
+    int toNotch() {
+        return _toNotch[setting()];
     }
 
     /** The String of notches for the moving rotor. */
     private String _notches;
     /** The setting of this rotor. */
     private int _setting;
+    /** Whether there is a notch at each setting. */
+    private boolean[] _atNotch;
+    /** The number of advances from each setting to the next notch, or -1
+     *  if there are no notches. */
+    private int[] _toNotch;
 }
@@ -71,4 +71,35 @@ public class MovingRotorTest {
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
+    @Test
+    public void checkRotorRing() {
+        setRotor("I", NAVALA, "");
+        rotor.set(3);
+        rotor.setR(2);
+        checkRotor("Rotor I at D, ring C", UPPER_STRING,
+                   NAVALB_MAP.get("I"));
+    }
+
+    @Test
+    public void checkLargeAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (char c = 0x100; c < 0x100 + 300; c += 1) {
+            chars.append(c);
+        }
+        Alphabet alphabet = new Alphabet(chars.toString());
+        StringBuilder cycle = new StringBuilder("(");
+        for (int i = 0; i < 300; i += 7) {
+            cycle.append(chars.charAt(i));
+        }
+        Permutation perm = new Permutation(cycle + ")", alphabet);
+        rotor = new MovingRotor("big", perm, "");
+        rotor.set(290);
+        rotor.setR(5);
+        for (int p = 0; p < 300; p += 1) {
+            int expected = perm.wrap(perm.permute(perm.wrap(p + 285)) - 285);
+            assertEquals(expected, rotor.convertForward(p));
+            assertEquals(p, rotor.convertBackward(expected));
+        }
+    }
+
 }
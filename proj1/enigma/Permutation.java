@@ -5,7 +5,9 @@ import java.util.ArrayList;
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  The cycles are compiled when the
+ *  permutation is made into two arrays giving the image and the inverse
+ *  image of each index, so that applying it is a single array load.
  *  @author Mengmeng Yang
  */
 class Permutation {
@@ -29,6 +31,41 @@ class Permutation {
                 }
             }
         }
+        compile();
+    }
+
+    /** Fill in _forward and _inverse from _cyclesList.  Where a character
+     *  occurs more than once, its first occurrence counts. */
+    private void compile() {
+        int n = size();
+        _forward = new int[n];
+        _inverse = new int[n];
+        boolean[] mapped = new boolean[n];
+        boolean[] inverted = new boolean[n];
+        for (ArrayList<Character> cycle : _cyclesList) {
+            int m = Math.max(1, cycle.size() - 1);
+            for (int i = 0; i < m; i += 1) {
+                int k = _alphabet.toInt(cycle.get(i));
+                if (!mapped[k]) {
+                    mapped[k] = true;
+                    _forward[k] = _alphabet.toInt(cycle.get(i + 1 < m
+                                                            ? i + 1 : 0));
+                }
+                if (!inverted[k]) {
+                    inverted[k] = true;
+                    _inverse[k] = _alphabet.toInt(cycle.get(i > 0
+                                                            ? i - 1 : m - 1));
+                }
+            }
+        }
+        for (int k = 0; k < n; k += 1) {
+            if (!mapped[k]) {
+                _forward[k] = k;
+            }
+            if (!inverted[k]) {
+                _inverse[k] = k;
+            }
+        }
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
@@ -48,6 +85,9 @@ class Permutation {
 
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
+        if (p >= 0 && p < _forward.length) {
+            return p;
+        }
         int r = p % size();
         if (r < 0) {
             r += size();
@@ -63,54 +103,25 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char inputChar = _alphabet.toChar(wrap(p));
-        for (ArrayList cycle: _cyclesList) {
-            if (cycle.contains(inputChar)) {
-                char outputChar =
-                        (char) cycle.get
-                                ((cycle.indexOf(inputChar) + 1) % cycle.size());
-                return _alphabet.toInt(outputChar);
-            }
-        }
-        return wrap(p);
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char inputChar = _alphabet.toChar(wrap(c));
-        char outputChar = '0';
-        for (ArrayList cycle: _cyclesList) {
-            if (cycle.contains(inputChar)) {
-                int indexOfInvert =
-                        mod((cycle.indexOf(inputChar) - 1), cycle.size());
-                if (indexOfInvert == cycle.size() - 1) {
-                    outputChar = (char) cycle.get
-                            (mod((cycle.indexOf(inputChar) - 2), cycle.size()));
-                } else {
-                    outputChar = (char) cycle.get(indexOfInvert);
-                }
+        return _inverse[wrap(c)];
+    }
 
-                return _alphabet.toInt(outputChar);
-            }
-        }
-        return c;
+    /** Return the image of each index under this permutation.  The array
+     *  must not be modified. */
+    int[] forward() {
+        return _forward;
     }
 
-    /**
-     * A helper function that performs the same as the wrap function
-     * provided, except that this function is taking in an extra parameter
-     * size.
-     * @param p The integer that should be modded
-     * @param size The size that we want to mod by
-     * @return The mod result
-     */
-    private int mod(int p, int size) {
-        int r = p % size;
-        if (r < 0) {
-            r += size;
-        }
-        return r;
+    /** Return the image of each index under the inverse of this
+     *  permutation.  The array must not be modified. */
+    int[] inverse() {
+        return _inverse;
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -134,19 +145,23 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        int count = 0;
-        for (ArrayList cycle: _cyclesList) {
-            count += (cycle.size() - 1);
-            if (cycle.size() == 1) {
+        for (int k = 0; k < _forward.length; k += 1) {
+            if (_forward[k] == k) {
                 return false;
             }
         }
-        return (count == alphabet().size());
+        return true;
     }
 
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
     /** An ArrayList to store all the cycles. */
-    private ArrayList<ArrayList> _cyclesList;
+    private ArrayList<ArrayList<Character>> _cyclesList;
+
+    /** The image of each index. */
+    private int[] _forward;
+
+    /** The inverse image of each index. */
+    private int[] _inverse;
 }
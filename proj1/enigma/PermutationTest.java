@@ -100,4 +100,39 @@ public class PermutationTest {
         Permutation p2 = new Permutation("(BAC)", new Alphabet("ABCD"));
         assertEquals(false, p2.derangement());
     }
+
+    @Test
+    public void testUnknownCharacter() {
+        Alphabet abcd = new Alphabet("ABCD");
+        assertFalse(abcd.contains('E'));
+        try {
+            abcd.toInt('E');
+            fail("toInt accepted a character not in the alphabet");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        try {
+            new Permutation("(AE)", abcd);
+            fail("a cycle used a character not in the alphabet");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testLargeAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (char c = '\u4e00'; c < '\u4e00' + 5000; c += 1) {
+            chars.append(c);
+        }
+        chars.append('A');
+        Alphabet big = new Alphabet(chars.toString());
+        assertEquals(5001, big.size());
+        assertEquals(4999, big.toInt((char) ('\u4e00' + 4999)));
+        assertEquals(5000, big.toInt('A'));
+        assertFalse(big.contains('B'));
+        Permutation p = new Permutation("(A\u4e00)", big);
+        assertEquals(0, p.permute(5000));
+        assertEquals(5000, p.invert(0));
+    }
 }
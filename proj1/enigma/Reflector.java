@@ -13,6 +13,16 @@ class Reflector extends FixedRotor {
         super(name, perm);
     }
 
+    /** A reflector in the same state as REFLECTOR. */
+    Reflector(Reflector reflector) {
+        super(reflector);
+    }
+
+    @Override
+    Reflector copy() {
+        return new Reflector(this);
+    }
+
     @Override
     boolean reflecting() {
         return true;
@@ -3,15 +3,63 @@ package enigma;
 import static enigma.EnigmaException.*;
 
 /** Superclass that represents a rotor in the enigma machine.
+ *
+ *  A rotor at setting S with ring setting R maps P to
+ *  perm(P + S - R) - S + R, all modulo the alphabet size N.  The rotor
+ *  keeps the offset S - R up to date as it moves, so that a conversion
+ *  costs one lookup in its permutation's array and two comparisons.  For
+ *  alphabets of at most TABLE_MAX characters it goes further and keeps,
+ *  for each of the N offsets, the whole mapping as a row of a table, so
+ *  that a conversion is a single array load.
  *  @author Mengmeng Yang
  */
 class Rotor {
 
+    /** Largest alphabet for which a rotor keeps the table of its mapping
+     *  at every offset, which takes 8 N^2 bytes. */
+    static final int TABLE_MAX = 64;
+
     /** A rotor named NAME whose permutation is given by PERM. */
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
         _setting = 0;
+        _forward = perm.forward();
+        _inverse = perm.inverse();
+        int n = perm.size();
+        if (n <= TABLE_MAX) {
+            _forwardTable = new int[n * n];
+            _inverseTable = new int[n * n];
+            for (int offset = 0; offset < n; offset += 1) {
+                for (int p = 0; p < n; p += 1) {
+                    _forwardTable[offset * n + p] =
+                        perm.wrap(_forward[(p + offset) % n] - offset);
+                    _inverseTable[offset * n + p] =
+                        perm.wrap(_inverse[(p + offset) % n] - offset);
+                }
+            }
+        }
+    }
+
+    /** A rotor in the same state as ROTOR that moves independently of it,
+     *  sharing its tables. */
+    Rotor(Rotor rotor) {
+        _name = rotor._name;
+        _permutation = rotor._permutation;
+        _setting = rotor._setting;
+        _ringSetting = rotor._ringSetting;
+        _forward = rotor._forward;
+        _inverse = rotor._inverse;
+        _forwardTable = rotor._forwardTable;
+        _inverseTable = rotor._inverseTable;
+        _offset = rotor._offset;
+        _row = rotor._row;
+    }
+
+    /** Return a rotor in my current state that moves independently of
+     *  me. */
+    Rotor copy() {
+        return new Rotor(this);
     }
 
     /** Return my name. */
@@ -57,37 +105,54 @@ class Rotor {
     /** Set setting() to POSN.  */
     void set(int posn) {
         _setting = _permutation.wrap(posn);
+        offsetChanged();
     }
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
         _setting = _permutation.wrap(alphabet().toInt(cposn));
+        offsetChanged();
     }
 
     /** Set the ring setting to POSN.  */
     void setR(int posn) {
         _ringSetting = posn;
+        offsetChanged();
     }
 
     /** Set the ring setting to CPOSN.  */
     void setR(char cposn) {
-        _ringSetting = alphabet().toInt(cposn);
+        setR(alphabet().toInt(cposn));
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int enter = permutation().permute(
-                permutation().wrap(p + _setting - _ringSetting));
-        return permutation().wrap(enter - _setting + _ringSetting);
+        if (_forwardTable != null) {
+            return _forwardTable[_row + p];
+        }
+        int n = _forward.length;
+        int enter = p + _offset;
+        int result = _forward[enter >= n ? enter - n : enter] - _offset;
+        return result < 0 ? result + n : result;
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int enter = permutation().invert(
-                permutation().wrap(e + _setting - _ringSetting));
-        return permutation().wrap(enter - _setting + _ringSetting);
+        if (_inverseTable != null) {
+            return _inverseTable[_row + e];
+        }
+        int n = _inverse.length;
+        int enter = e + _offset;
+        int result = _inverse[enter >= n ? enter - n : enter] - _offset;
+        return result < 0 ? result + n : result;
+    }
+
+    /** Recompute _offset and _row after a change of setting. */
+    private void offsetChanged() {
+        _offset = _permutation.wrap(_setting - _ringSetting);
+        _row = _offset * _forward.length;
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
@@ -96,6 +161,12 @@ class Rotor {
         return false;
     }
 
+    /** Return the number of times I must advance to be at a notch (0 if
+     *  I am at one now), or -1 if I never will be.  By default, -1. */
+    int toNotch() {
+        return -1;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
@@ -116,4 +187,24 @@ class Rotor {
 
     /** The setting of the ring. */
     private int _ringSetting;
+
+    /** The image of each index under my permutation. */
+    private final int[] _forward;
+
+    /** The image of each index under the inverse of my permutation. */
+    private final int[] _inverse;
+
+    /** My mapping at each offset, row by row, or null if my alphabet has
+     *  more than TABLE_MAX characters. */
+    private int[] _forwardTable;
+
+    /** My inverse mapping at each offset, as for _forwardTable. */
+    private int[] _inverseTable;
+
+    /** The setting less the ring setting, modulo the alphabet size. */
+    private int _offset;
+
+    /** The start of the row of _forwardTable and _inverseTable for
+     *  _offset. */
+    private int _row;
 }
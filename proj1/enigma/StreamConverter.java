@@ -0,0 +1,382 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Converts the messages of an input in the same way as Main.process,
+ *  but reading and writing bytes in bulk, for large inputs.
+ *
+ *  An input file is mapped into memory a window of WINDOW bytes at a
+ *  time; other input is read through a channel into a buffer.  Lines are
+ *  found by scanning the bytes for line ends ('\n', "\r\n" or '\r', as
+ *  for Scanner.nextLine) and sorted by their bytes into blank, settings
+ *  and message lines.  The letters of an ASCII message line are copied
+ *  into a reusable array and converted there by the machine, and the
+ *  result is written in groups of five into an output buffer of
+ *  OUTPUT_BYTES bytes that goes to the output whenever it fills.  Lines
+ *  with other characters are decoded into strings in the default
+ *  charset, as Scanner does, and so are settings lines, which are rare
+ *  and are handed to the settings procedure given.  Bytes that are not
+ *  valid in that charset are decoded as replacement characters, where a
+ *  Scanner would instead take its input to end.
+ *  @author Mengmeng Yang
+ */
+class StreamConverter {
+
+    /** Number of bytes of an input file mapped at a time, unless a line
+     *  is longer. */
+    static final int WINDOW = 1 << 26;
+    /** Initial size of the buffer for input that is not a file. */
+    static final int READ_BYTES = 1 << 20;
+    /** Size of the output buffer. */
+    static final int OUTPUT_BYTES = 1 << 20;
+
+    /**
+     * A converter of the messages of an input with MACHINE, which SETUP
+     * sets up from each settings line, writing the result to OUTPUT.
+     * @param machine The machine
+     * @param setUp Applies a settings line to the machine
+     * @param output The output
+     */
+    StreamConverter(Machine machine, Consumer<String> setUp,
+                    PrintStream output) {
+        _machine = machine;
+        _setUp = setUp;
+        _output = output;
+        _out = new byte[OUTPUT_BYTES];
+        _chars = new char[1 << 10];
+        _newline = System.lineSeparator().getBytes(Charset.defaultCharset());
+    }
+
+    /** Convert the messages in FILE, returning the number of bytes
+     *  read. */
+    long convert(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            return convert(new MappedInput(channel));
+        }
+    }
+
+    /** Convert the messages read from IN, returning the number of bytes
+     *  read. */
+    long convert(ReadableByteChannel in) throws IOException {
+        return convert(new ChannelInput(in));
+    }
+
+    /** Convert the messages of IN, returning the number of bytes read.
+     *  The output converted so far is written even if there is an
+     *  error. */
+    private long convert(Input in) throws IOException {
+        try {
+            checkStart(in);
+            boolean first = true;
+            while (true) {
+                ByteBuffer window = in.window();
+                int limit = window.limit();
+                int start = 0;
+                while (true) {
+                    int end = start;
+                    while (end < limit && window.get(end) != '\n'
+                           && window.get(end) != '\r') {
+                        end += 1;
+                    }
+                    if (end == limit
+                        || (end == limit - 1 && window.get(end) == '\r'
+                            && !in.atEnd())) {
+                        break;
+                    }
+                    int next = end + 1;
+                    if (window.get(end) == '\r' && next < limit
+                        && window.get(next) == '\n') {
+                        next += 1;
+                    }
+                    line(window, start, end, first);
+                    first = false;
+                    start = next;
+                }
+                if (in.atEnd()) {
+                    if (start < limit) {
+                        line(window, start, limit, first);
+                    }
+                    return in.read();
+                }
+                if (start == 0) {
+                    in.extend();
+                } else {
+                    in.advance(start);
+                }
+            }
+        } finally {
+            flush();
+        }
+    }
+
+    /** Check that the first token of IN starts with '*', as Main.process
+     *  does. */
+    private void checkStart(Input in) throws IOException {
+        int k = 0;
+        while (true) {
+            ByteBuffer window = in.window();
+            while (k < window.limit() && isSpace(window.get(k))) {
+                k += 1;
+            }
+            if (k < window.limit()) {
+                if (window.get(k) != '*') {
+                    break;
+                }
+                return;
+            }
+            if (in.atEnd()) {
+                break;
+            }
+            in.extend();
+        }
+        throw error("Input file doesn't start with *");
+    }
+
+    /** Process the line held in bytes START to END of WINDOW, which is
+     *  the FIRST line of the input if FIRST. */
+    private void line(ByteBuffer window, int start, int end, boolean first) {
+        boolean ascii = true, blank = true, settings = false;
+        for (int i = start; i < end; i += 1) {
+            byte b = window.get(i);
+            ascii &= b >= 0;
+            blank &= isSpace(b);
+            settings |= b == '*';
+        }
+        if (first || settings || !ascii) {
+            byte[] bytes = new byte[end - start];
+            window.get(start, bytes);
+            String line = new String(bytes, Charset.defaultCharset());
+            if (first || !line.isBlank() && line.contains("*")) {
+                _setUp.accept(line);
+            } else if (line.isBlank()) {
+                newline();
+            } else {
+                print(_machine.convert(line.replace(" ", "")));
+            }
+            return;
+        }
+        if (blank) {
+            newline();
+            return;
+        }
+        if (_chars.length < end - start) {
+            _chars = new char[Math.max(end - start, 2 * _chars.length)];
+        }
+        int len = 0;
+        for (int i = start; i < end; i += 1) {
+            byte b = window.get(i);
+            if (b != ' ') {
+                _chars[len] = (char) b;
+                len += 1;
+            }
+        }
+        _machine.convert(_chars, 0, len);
+        group(_chars, len);
+    }
+
+    /** Put the first LEN characters of CHARS into the output buffer in
+     *  groups of five, followed by a line end, writing them as ASCII if
+     *  they all are and as a string otherwise. */
+    private void group(char[] chars, int len) {
+        for (int i = 0; i < len; i += 1) {
+            if (chars[i] >= 0x80) {
+                print(new String(chars, 0, len));
+                return;
+            }
+        }
+        for (int i = 0; i < len; i += 5) {
+            if (_outLen + 6 > _out.length) {
+                flush();
+            }
+            int n = Math.min(5, len - i);
+            for (int k = 0; k < n; k += 1) {
+                _out[_outLen + k] = (byte) chars[i + k];
+            }
+            _outLen += n;
+            if (i + n < len) {
+                _out[_outLen] = ' ';
+                _outLen += 1;
+            }
+        }
+        newline();
+    }
+
+    /** Print MSG in groups of five, followed by a line end, through the
+     *  output's own encoding. */
+    private void print(String msg) {
+        flush();
+        StringBuilder line = new StringBuilder();
+        Main.appendMessageLine(msg, line);
+        _output.print(line);
+    }
+
+    /** Put a line end into the output buffer. */
+    private void newline() {
+        if (_outLen + _newline.length > _out.length) {
+            flush();
+        }
+        System.arraycopy(_newline, 0, _out, _outLen, _newline.length);
+        _outLen += _newline.length;
+    }
+
+    /** Write the contents of the output buffer to the output. */
+    private void flush() {
+        _output.write(_out, 0, _outLen);
+        _output.flush();
+        _outLen = 0;
+    }
+
+    /** Return true iff B is a whitespace character. */
+    private static boolean isSpace(byte b) {
+        return b >= 0 && Character.isWhitespace((char) b);
+    }
+
+    /** A window onto the bytes of an input, moving forward through it. */
+    private abstract static class Input {
+
+        /** Return the bytes of the window, from index 0 to the limit. */
+        ByteBuffer window() {
+            return _window;
+        }
+
+        /** Return the number of bytes of the input up to the end of the
+         *  window. */
+        long read() {
+            return _start + _window.limit();
+        }
+
+        /** Return true iff the window reaches the end of the input. */
+        abstract boolean atEnd();
+
+        /** Move the start of the window forward N bytes. */
+        abstract void advance(int n) throws IOException;
+
+        /** Make the window hold more bytes from the same start.  Must not
+         *  be called atEnd(). */
+        abstract void extend() throws IOException;
+
+        /** The current window. */
+        protected ByteBuffer _window;
+        /** The position in the input of the start of the window. */
+        protected long _start;
+    }
+
+    /** A window mapped onto a file. */
+    private static class MappedInput extends Input {
+
+        /** A window onto the file open on CHANNEL. */
+        MappedInput(FileChannel channel) throws IOException {
+            _channel = channel;
+            _size = channel.size();
+            _length = WINDOW;
+            map();
+        }
+
+        @Override
+        boolean atEnd() {
+            return _start + _window.limit() == _size;
+        }
+
+        @Override
+        void advance(int n) throws IOException {
+            _start += n;
+            map();
+        }
+
+        @Override
+        void extend() throws IOException {
+            if (_length > Integer.MAX_VALUE / 2) {
+                throw error("line too long");
+            }
+            _length *= 2;
+            map();
+        }
+
+        /** Map up to _length bytes from _start. */
+        private void map() throws IOException {
+            _window = _channel.map(FileChannel.MapMode.READ_ONLY, _start,
+                                   Math.min(_length, _size - _start));
+        }
+
+        /** The file. */
+        private final FileChannel _channel;
+        /** The size of the file. */
+        private final long _size;
+        /** The largest size of the window. */
+        private int _length;
+    }
+
+    /** A window onto input read through a channel into a buffer. */
+    private static class ChannelInput extends Input {
+
+        /** A window onto the bytes read from IN. */
+        ChannelInput(ReadableByteChannel in) throws IOException {
+            _in = in;
+            _window = ByteBuffer.allocate(READ_BYTES);
+            _window.limit(0);
+            fill();
+        }
+
+        @Override
+        boolean atEnd() {
+            return _eof;
+        }
+
+        @Override
+        void advance(int n) throws IOException {
+            _start += n;
+            _window.position(n);
+            _window.compact();
+            _window.flip();
+            fill();
+        }
+
+        @Override
+        void extend() throws IOException {
+            ByteBuffer bigger = ByteBuffer.allocate(2 * _window.capacity());
+            bigger.put(_window);
+            bigger.flip();
+            _window = bigger;
+            fill();
+        }
+
+        /** Read into the buffer until it is full or the input ends. */
+        private void fill() throws IOException {
+            int limit = _window.limit();
+            _window.position(limit).limit(_window.capacity());
+            while (_window.hasRemaining() && !_eof) {
+                _eof = _in.read(_window) < 0;
+            }
+            _window.flip();
+        }
+
+        /** The input. */
+        private final ReadableByteChannel _in;
+        /** True once the input has ended. */
+        private boolean _eof;
+    }
+
+    /** The machine converting the messages. */
+    private final Machine _machine;
+    /** Applies a settings line to _machine. */
+    private final Consumer<String> _setUp;
+    /** Where the output goes. */
+    private final PrintStream _output;
+    /** The output buffer. */
+    private final byte[] _out;
+    /** The number of bytes in _out. */
+    private int _outLen;
+    /** The letters of the message line being converted. */
+    private char[] _chars;
+    /** A line end. */
+    private final byte[] _newline;
+}
@@ -0,0 +1,213 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the StreamConverter class, each of
+ *  which checks that Main with --stream converts an input, read from a
+ *  file and from the standard input, exactly as Main.process does
+ *  without it.
+ *  @author Mengmeng Yang
+ */
+public class StreamConverterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The settings line of the naval machine. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+    /** A second settings line. */
+    private static final String SETTINGS2 = "* B Beta I II III QQQQ";
+
+    /** Return a configuration of the naval rotors I to IV, Beta and B. */
+    private static String config() {
+        StringBuilder result = new StringBuilder(UPPER_STRING + "\n 5 3\n");
+        String[][] rotors = {{"I", "MQ"}, {"II", "ME"}, {"III", "MV"},
+                             {"IV", "MJ"}, {"Beta", "N"}, {"B", "R"}};
+        for (String[] rotor : rotors) {
+            result.append(' ').append(rotor[0]).append(' ').append(rotor[1])
+                .append(' ').append(NAVALA.get(rotor[0])).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return the output of Main with the options OPTIONS converting
+     *  INPUT, read from a file unless STDIN, when it is read from the
+     *  standard input, followed by the message of the error that stopped
+     *  it, if any.  Checks that the standard error holds a throughput
+     *  line with --stream after a conversion without error, and is empty
+     *  otherwise. */
+    private static String run(String input, boolean stdin,
+                              String... options) throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        File conf = new File(dir, "conf"), in = new File(dir, "in"),
+            out = new File(dir, "out");
+        Files.writeString(conf.toPath(), config());
+        Files.write(in.toPath(), input.getBytes(Charset.defaultCharset()));
+        String[] args = new String[options.length + (stdin ? 1 : 3)];
+        System.arraycopy(options, 0, args, 0, options.length);
+        args[options.length] = conf.getPath();
+        if (!stdin) {
+            args[options.length + 1] = in.getPath();
+            args[options.length + 2] = out.getPath();
+        }
+        InputStream stdinWas = System.in;
+        PrintStream stdoutWas = System.out, stderrWas = System.err;
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        String error = "";
+        try (InputStream source = new FileInputStream(in);
+             PrintStream sink = new PrintStream(out)) {
+            if (stdin) {
+                System.setIn(source);
+                System.setOut(sink);
+            }
+            System.setErr(new PrintStream(stderr, true));
+            try {
+                new Main(args).process();
+            } catch (EnigmaException excp) {
+                error = "Error: " + excp.getMessage();
+            }
+        } finally {
+            System.setIn(stdinWas);
+            System.setOut(stdoutWas);
+            System.setErr(stderrWas);
+        }
+        boolean report = error.isEmpty()
+            && Arrays.asList(options).contains("--stream");
+        assertEquals("throughput report", report,
+                     stderr.toString().matches("[0-9.]+ MB in [0-9.]+ s: "
+                                               + "[0-9.]+ MB/s\\R"));
+        if (!report) {
+            assertEquals("", stderr.toString());
+        }
+        String result = Files.readString(out.toPath(),
+                                         Charset.defaultCharset()) + error;
+        for (File file : new File[] {conf, in, out, dir}) {
+            file.delete();
+        }
+        return result;
+    }
+
+    /** Check that INPUT is converted through a StreamConverter, from a
+     *  file and from the standard input, as Main.process converts it, and
+     *  return the output. */
+    private static String check(String input) throws IOException {
+        String expected = run(input, false);
+        assertEquals("file", expected, run(input, false, "--stream"));
+        assertEquals("standard input", expected,
+                     run(input, true, "--stream"));
+        return expected;
+    }
+
+    /** Append to OUT a message line of LENGTH random letters from
+     *  RANDOM, with spaces among them. */
+    private static void letters(StringBuilder out, int length,
+                                Random random) {
+        for (int i = 0; i < length; i += 1) {
+            out.append(random.nextInt(8) == 0 ? ' '
+                       : (char) ('A' + random.nextInt(26)));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLineEnds() throws IOException {
+        String nl = System.lineSeparator();
+        String expected =
+            check(SETTINGS + "\nFROM HIS SHOULDER\n\nHIAWATHA\n");
+        assertEquals("QVPQS OKOIL PUBKJ" + nl + nl + "ZPISF XDW" + nl,
+                     expected);
+        assertEquals(expected, check(SETTINGS + "\r\nFROM HIS SHOULDER\r\n"
+                                     + "\r\nHIAWATHA\r\n"));
+        assertEquals(expected, check(SETTINGS + "\rFROM HIS SHOULDER\r\r"
+                                     + "HIAWATHA\r"));
+        assertEquals(expected, check(SETTINGS + "\nFROM HIS SHOULDER\r\n"
+                                     + "\rHIAWATHA"));
+    }
+
+    @Test
+    public void testBlankAndSettingsLines() throws IOException {
+        check("\n  \n" + SETTINGS + "\nAAAAA\n \t \n" + SETTINGS2
+              + "\nAAAAA AAAAA AAAAA\n\n\n" + SETTINGS + "\r\nAAAAA\n  ");
+        check(SETTINGS + "\n" + SETTINGS2 + "\nHELLO WORLD\n");
+        check(SETTINGS + "\nHELLO\n   " + SETTINGS2 + "   \nWORLD\n");
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        assertEquals("Error: Input file doesn't start with *",
+                     check("\n HELLO\n" + SETTINGS + "\n"));
+        String nl = System.lineSeparator();
+        assertEquals("UPVGJ" + nl + "ZUNSG" + nl
+                     + "Error: character 'h' is not in the alphabet",
+                     check(SETTINGS + "\nHELLO\nWORLD\nhello\nAGAIN\n"));
+        assertEquals("UPVGJ" + nl + "Error: Rotor name does not exist.",
+                     check(SETTINGS + "\nHELLO\n* B Beta III IV X AXLE\n"
+                           + "WORLD\n"));
+    }
+
+    @Test
+    public void testNonAscii() throws IOException {
+        String input = SETTINGS + "\nHELLO\n\u2003\nWORLD\n\u00e9T\u00e9\n";
+        if (Charset.defaultCharset().newEncoder().canEncode(input)) {
+            String nl = System.lineSeparator();
+            assertEquals("UPVGJ" + nl + nl + "ZUNSG" + nl
+                         + "Error: character '\u00e9' is not in the alphabet",
+                         check(input));
+        }
+    }
+
+    @Test
+    public void testLongInput() throws IOException {
+        Random random = new Random(23);
+        StringBuilder input = new StringBuilder(SETTINGS).append("\r\n");
+        while (input.length() < StreamConverter.READ_BYTES - 200) {
+            letters(input, 1 + random.nextInt(100), random);
+            input.append(random.nextBoolean() ? "\r\n" : "\n");
+        }
+        letters(input, StreamConverter.READ_BYTES - 1 - input.length(),
+                random);
+        input.append("\r\n");
+        assertEquals('\r', input.charAt(StreamConverter.READ_BYTES - 1));
+        input.append(SETTINGS2).append('\n');
+        for (int i = 0; i < 6000; i += 1) {
+            letters(input, 1 + random.nextInt(400), random);
+            input.append(random.nextInt(3) == 0 ? "\r" : "\n");
+        }
+        assertTrue(input.length() > 2 * StreamConverter.READ_BYTES);
+        check(input.toString());
+    }
+
+    @Test
+    public void testLineLongerThanBuffer() throws IOException {
+        Random random = new Random(29);
+        StringBuilder input = new StringBuilder(SETTINGS).append('\n');
+        letters(input, 100, random);
+        input.append('\n');
+        letters(input, 3 * StreamConverter.READ_BYTES / 2, random);
+        input.append("\r\n");
+        letters(input, 100, random);
+        check(input.toString());
+    }
+
+}
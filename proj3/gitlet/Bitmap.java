@@ -0,0 +1,343 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/** A compressed set of non-negative ints, in the manner of a Roaring
+ *  bitmap.  The set is divided into chunks of 2^16 values sharing their
+ *  high 16 bits, kept in increasing order of those bits.  A chunk holding
+ *  at most ARRAY_MAX values is a sorted array of their low 16 bits; a
+ *  fuller chunk is a bitset of 2^16 bits.  Sparse sets thus take two
+ *  bytes per value and dense ones one bit, and union, intersection and
+ *  counting work a chunk, and within a bitset 64 values, at a time.
+ *
+ *  The encoding is the number of chunks as a varint, then for each its
+ *  high bits as a varint and its size as a varint, followed by the low
+ *  bits of each value as two bytes if the chunk is an array, or by the
+ *  1024 longs of its bitset otherwise.
+ *  @author Mengmeng Yang
+ */
+class Bitmap {
+
+    /** Largest number of values in a chunk kept as an array. */
+    static final int ARRAY_MAX = 4096;
+    /** Number of longs in the bitset of a chunk. */
+    static final int WORDS = 1 << 10;
+
+    /** An empty set. */
+    Bitmap() {
+        _keys = new int[4];
+        _chunks = new Chunk[4];
+    }
+
+    /** Return true iff the set contains VALUE. */
+    boolean contains(int value) {
+        int k = find(value >>> 16);
+        return k >= 0 && _chunks[k].contains((char) value);
+    }
+
+    /** Add VALUE to the set. */
+    void add(int value) {
+        int k = find(value >>> 16);
+        if (k < 0) {
+            k = -k - 1;
+            insert(k, value >>> 16, new Chunk());
+        }
+        _chunks[k].add((char) value);
+    }
+
+    /** Add every value of OTHER to the set. */
+    void or(Bitmap other) {
+        for (int j = 0; j < other._size; j += 1) {
+            int k = find(other._keys[j]);
+            if (k < 0) {
+                insert(-k - 1, other._keys[j], other._chunks[j].copy());
+            } else {
+                _chunks[k].or(other._chunks[j]);
+            }
+        }
+    }
+
+    /** Return the number of values in the set. */
+    int cardinality() {
+        int result = 0;
+        for (int k = 0; k < _size; k += 1) {
+            result += _chunks[k]._cardinality;
+        }
+        return result;
+    }
+
+    /** Return the number of values in both this set and OTHER. */
+    int andCardinality(Bitmap other) {
+        int result = 0;
+        for (int i = 0, j = 0; i < _size && j < other._size;) {
+            if (_keys[i] < other._keys[j]) {
+                i += 1;
+            } else if (_keys[i] > other._keys[j]) {
+                j += 1;
+            } else {
+                result += _chunks[i].andCardinality(other._chunks[j]);
+                i += 1;
+                j += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return the largest value in both this set and OTHER, or -1 if
+     *  there is none. */
+    int lastCommon(Bitmap other) {
+        for (int i = _size - 1, j = other._size - 1; i >= 0 && j >= 0;) {
+            if (_keys[i] > other._keys[j]) {
+                i -= 1;
+            } else if (_keys[i] < other._keys[j]) {
+                j -= 1;
+            } else {
+                int low = _chunks[i].lastCommon(other._chunks[j]);
+                if (low >= 0) {
+                    return _keys[i] << 16 | low;
+                }
+                i -= 1;
+                j -= 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Pass each value of the set to ACTION in increasing order. */
+    void forEach(IntConsumer action) {
+        for (int k = 0; k < _size; k += 1) {
+            _chunks[k].forEach(_keys[k] << 16, action);
+        }
+    }
+
+    /** Return the encoding of the set. */
+    byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utils.writeVarint(out, _size);
+        for (int k = 0; k < _size; k += 1) {
+            Chunk chunk = _chunks[k];
+            Utils.writeVarint(out, _keys[k]);
+            Utils.writeVarint(out, chunk._cardinality);
+            ByteBuffer buf;
+            if (chunk._words == null) {
+                buf = ByteBuffer.allocate(2 * chunk._cardinality);
+                buf.asCharBuffer().put(chunk._values, 0, chunk._cardinality);
+            } else {
+                buf = ByteBuffer.allocate(8 * WORDS);
+                buf.asLongBuffer().put(chunk._words);
+            }
+            out.write(buf.array(), 0, buf.capacity());
+        }
+        return out.toByteArray();
+    }
+
+    /** Return the set encoded at the position of BUF, advancing BUF past
+     *  it.  Throws IllegalArgumentException if the encoding is bad. */
+    static Bitmap decode(ByteBuffer buf) {
+        Bitmap result = new Bitmap();
+        int size = (int) Utils.readVarint(buf);
+        for (int k = 0; k < size; k += 1) {
+            int key = (int) Utils.readVarint(buf);
+            int cardinality = (int) Utils.readVarint(buf);
+            if (key > 0xffff || (k > 0 && key <= result._keys[k - 1])
+                || cardinality <= 0 || cardinality > 1 << 16) {
+                throw new IllegalArgumentException("bad bitmap");
+            }
+            Chunk chunk = new Chunk();
+            chunk._cardinality = cardinality;
+            if (cardinality <= ARRAY_MAX) {
+                chunk._values = new char[cardinality];
+                buf.asCharBuffer().get(chunk._values);
+                buf.position(buf.position() + 2 * cardinality);
+            } else {
+                chunk._values = null;
+                chunk._words = new long[WORDS];
+                buf.asLongBuffer().get(chunk._words);
+                buf.position(buf.position() + 8 * WORDS);
+            }
+            result.insert(k, key, chunk);
+        }
+        return result;
+    }
+
+    /** Return the position of the chunk with high bits KEY, or -(k+1) if
+     *  there is none and it would be at position k. */
+    private int find(int key) {
+        if (_size > 0 && _keys[_size - 1] == key) {
+            return _size - 1;
+        }
+        return Arrays.binarySearch(_keys, 0, _size, key);
+    }
+
+    /** Insert CHUNK with high bits KEY at position K. */
+    private void insert(int k, int key, Chunk chunk) {
+        if (_size == _keys.length) {
+            _keys = Arrays.copyOf(_keys, 2 * _size);
+            _chunks = Arrays.copyOf(_chunks, 2 * _size);
+        }
+        System.arraycopy(_keys, k, _keys, k + 1, _size - k);
+        System.arraycopy(_chunks, k, _chunks, k + 1, _size - k);
+        _keys[k] = key;
+        _chunks[k] = chunk;
+        _size += 1;
+    }
+
+    /** The values of a set sharing their high 16 bits, as a sorted array
+     *  of their low bits or, once there are more than ARRAY_MAX, as a
+     *  bitset. */
+    private static class Chunk {
+
+        /** Return true iff the chunk contains LOW. */
+        boolean contains(char low) {
+            if (_words != null) {
+                return (_words[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(_values, 0, _cardinality, low) >= 0;
+        }
+
+        /** Add LOW to the chunk. */
+        void add(char low) {
+            if (_words != null) {
+                long bit = 1L << low;
+                if ((_words[low >>> 6] & bit) == 0) {
+                    _words[low >>> 6] |= bit;
+                    _cardinality += 1;
+                }
+                return;
+            }
+            int k = _cardinality > 0 && _values[_cardinality - 1] < low
+                ? -_cardinality - 1
+                : Arrays.binarySearch(_values, 0, _cardinality, low);
+            if (k >= 0) {
+                return;
+            }
+            if (_cardinality == ARRAY_MAX) {
+                toBitset();
+                add(low);
+                return;
+            }
+            k = -k - 1;
+            if (_cardinality == _values.length) {
+                _values = Arrays.copyOf(_values,
+                                        Math.min(ARRAY_MAX, 2 * _cardinality));
+            }
+            System.arraycopy(_values, k, _values, k + 1, _cardinality - k);
+            _values[k] = low;
+            _cardinality += 1;
+        }
+
+        /** Add the values of OTHER to the chunk. */
+        void or(Chunk other) {
+            if (other._words == null) {
+                for (int i = 0; i < other._cardinality; i += 1) {
+                    add(other._values[i]);
+                }
+                return;
+            }
+            if (_words == null) {
+                toBitset();
+            }
+            int cardinality = 0;
+            for (int w = 0; w < WORDS; w += 1) {
+                _words[w] |= other._words[w];
+                cardinality += Long.bitCount(_words[w]);
+            }
+            _cardinality = cardinality;
+        }
+
+        /** Return the number of values in both this chunk and OTHER. */
+        int andCardinality(Chunk other) {
+            if (_words != null && other._words != null) {
+                int result = 0;
+                for (int w = 0; w < WORDS; w += 1) {
+                    result += Long.bitCount(_words[w] & other._words[w]);
+                }
+                return result;
+            }
+            Chunk array = _words == null ? this : other;
+            Chunk probe = array == this ? other : this;
+            int result = 0;
+            for (int i = 0; i < array._cardinality; i += 1) {
+                if (probe.contains(array._values[i])) {
+                    result += 1;
+                }
+            }
+            return result;
+        }
+
+        /** Return the largest low bits in both this chunk and OTHER, or -1
+         *  if there are none. */
+        int lastCommon(Chunk other) {
+            if (_words != null && other._words != null) {
+                for (int w = WORDS - 1; w >= 0; w -= 1) {
+                    long both = _words[w] & other._words[w];
+                    if (both != 0) {
+                        return 64 * w + 63 - Long.numberOfLeadingZeros(both);
+                    }
+                }
+                return -1;
+            }
+            Chunk array = _words == null ? this : other;
+            Chunk probe = array == this ? other : this;
+            for (int i = array._cardinality - 1; i >= 0; i -= 1) {
+                if (probe.contains(array._values[i])) {
+                    return array._values[i];
+                }
+            }
+            return -1;
+        }
+
+        /** Pass BASE plus each value of the chunk to ACTION in increasing
+         *  order. */
+        void forEach(int base, IntConsumer action) {
+            if (_words == null) {
+                for (int i = 0; i < _cardinality; i += 1) {
+                    action.accept(base | _values[i]);
+                }
+                return;
+            }
+            for (int w = 0; w < WORDS; w += 1) {
+                for (long bits = _words[w]; bits != 0; bits &= bits - 1) {
+                    action.accept(base | 64 * w
+                                  + Long.numberOfTrailingZeros(bits));
+                }
+            }
+        }
+
+        /** Return a copy of this chunk. */
+        Chunk copy() {
+            Chunk result = new Chunk();
+            result._cardinality = _cardinality;
+            result._values = _values == null ? null : _values.clone();
+            result._words = _words == null ? null : _words.clone();
+            return result;
+        }
+
+        /** Change the chunk from an array to a bitset. */
+        private void toBitset() {
+            _words = new long[WORDS];
+            for (int i = 0; i < _cardinality; i += 1) {
+                _words[_values[i] >>> 6] |= 1L << _values[i];
+            }
+            _values = null;
+        }
+
+        /** The number of values. */
+        private int _cardinality;
+        /** The low bits of the values in increasing order, if the chunk is
+         *  an array. */
+        private char[] _values = new char[4];
+        /** The bitset of the values, or null if the chunk is an array. */
+        private long[] _words;
+    }
+
+    /** The high bits of the chunks, in increasing order. */
+    private int[] _keys;
+    /** The chunks. */
+    private Chunk[] _chunks;
+    /** The number of chunks. */
+    private int _size;
+}
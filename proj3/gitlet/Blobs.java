@@ -2,16 +2,29 @@ package gitlet;
 
 import java.io.File;
 import java.io.Serializable;
+import java.util.Map;
 
-/** The Blobs Class denoting a Blobs object.
+/** The Blobs Class denoting a Blobs object. A blob is identified only by
+ *  the hash of its contents, so each distinct content is stored exactly
+ *  once in BLOB_DIR no matter how many files or commits refer to it.
+ *  The contents are streamed from the working file when needed rather
+ *  than held in memory.
+ *
+ *  Older versions of gitlet kept Blobs, contents and all, in serialized
+ *  commits and staging areas, hashing the file name with the contents.
+ *  The class stays serializable with its old serialVersionUID so that
+ *  those objects can still be read, and upgrade turns their Blobs into
+ *  the ids of stored blobs.
  * @author Mengmeng Yang
  */
 public class Blobs implements Serializable {
+    /** That of the Blobs of older versions. */
+    private static final long serialVersionUID = 3692001206875055322L;
     /** file name. */
     private String _fileName;
     /** blob hash. */
     private String _hash;
-    /** blob contents in byte. */
+    /** blob contents, held only by Blobs of older versions. */
     private byte[] _blobContent;
 
     /**
@@ -20,17 +33,71 @@ public class Blobs implements Serializable {
      */
     public Blobs(String fileName) {
         _fileName = fileName;
-        File file = new File(fileName);
-        _blobContent = Utils.readContents(file);
         _hash = hash();
     }
 
+    /**
+     * Constructor for Blobs whose hash is already known.
+     * @param fileName The given file name
+     * @param hash The hash of the file contents
+     */
+    public Blobs(String fileName, String hash) {
+        _fileName = fileName;
+        _hash = hash;
+    }
+
     /**
      * Compute the blobs hash.
      * @return the blobs hash
      */
     public String hash() {
-        return Utils.sha1(_fileName + new String(_blobContent));
+        return Utils.sha1File(new File(_fileName));
+    }
+
+    /** Copy the contents of this blob to the blob store, unless
+     *  a blob with the same hash is already there. */
+    public void save() {
+        CommandClass.OBJECTS.copy(ObjectStore.BLOB, _hash,
+                                  new File(_fileName));
+    }
+
+    /**
+     * Read the contents of a stored blob.
+     * @param hash The blob hash
+     * @return blob contents
+     */
+    public static byte[] read(String hash) {
+        return CommandClass.OBJECTS.read(ObjectStore.BLOB, hash);
+    }
+
+    /**
+     * Write the contents of a stored blob to a file.
+     * @param hash The blob hash
+     * @param file The file written
+     */
+    public static void write(String hash, File file) {
+        CommandClass.OBJECTS.export(ObjectStore.BLOB, hash, file);
+    }
+
+    /**
+     * Replace each Blobs of an older version among the values of FILES,
+     * a map from file names to blob ids of a commit or staging area of
+     * an older version, by the id of its contents, storing them in
+     * OBJECTS.
+     * @param files The map from file names to blob ids
+     * @param objects The object store
+     */
+    static void upgrade(Map<String, String> files, ObjectStore objects) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> values = (Map<String, Object>) (Map<?, ?>) files;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (entry.getValue() instanceof Blobs) {
+                Blobs blob = (Blobs) entry.getValue();
+                String id = Utils.sha1((Object) blob._blobContent);
+                objects.write(ObjectStore.BLOB, id, blob._blobContent);
+                entry.setValue(id);
+            }
+        }
     }
 
     /**
@@ -48,12 +115,4 @@ public class Blobs implements Serializable {
     public String getHash() {
         return _hash;
     }
-
-    /**
-     * Getter for the blobs contents.
-     * @return blobs contents
-     */
-    public byte[] getContent() {
-        return _blobContent;
-    }
 }
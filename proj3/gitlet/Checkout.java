@@ -0,0 +1,106 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Moves the working directory from the files of one commit to those of
+ *  another.  A file is only written when the blob id the target commit
+ *  gives it differs from the hash of the working file, which comes from
+ *  the stat cache, so files that are the same in both commits are not
+ *  touched.  The files to write are written concurrently by a bounded
+ *  pool of WORKERS threads, each exporting its blob from the object
+ *  store.
+ *  @author Mengmeng Yang
+ */
+class Checkout {
+
+    /** Largest number of files written at once. */
+    static final int WORKERS =
+        Math.min(8, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * A checkout into the folder DIR, reading blobs from OBJECTS and the
+     * hashes of working files through INDEX.
+     * @param dir The working directory
+     * @param objects The object store
+     * @param index The stat cache
+     */
+    Checkout(File dir, ObjectStore objects, Index index) {
+        _dir = dir;
+        _objects = objects;
+        _index = index;
+    }
+
+    /** Make the working files tracked by FROM, a map from file names to
+     *  blob ids, into those of TO: write every file of TO whose working
+     *  contents differ, and delete every working file tracked by FROM that
+     *  TO does not track.  Return the number of files written. */
+    int run(Map<String, String> from, Map<String, String> to) {
+        List<String> writes = new ArrayList<>();
+        for (Map.Entry<String, String> entry : to.entrySet()) {
+            String name = entry.getKey();
+            if (!new File(_dir, name).isFile()
+                || !entry.getValue().equals(_index.hash(name))) {
+                writes.add(name);
+            }
+        }
+        write(writes, to);
+        for (String name : from.keySet()) {
+            if (!to.containsKey(name)) {
+                Utils.restrictedDelete(new File(_dir, name));
+            }
+        }
+        return writes.size();
+    }
+
+    /** Write each of the files NAMES with the contents of its blob in
+     *  BLOBS, spreading the work over at most WORKERS threads. */
+    private void write(List<String> names, Map<String, String> blobs) {
+        if (names.size() <= 1) {
+            for (String name : names) {
+                write(name, blobs.get(name));
+            }
+            return;
+        }
+        ExecutorService pool =
+            Executors.newFixedThreadPool(Math.min(WORKERS, names.size()));
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (String name : names) {
+                String id = blobs.get(name);
+                done.add(pool.submit(() -> write(name, id)));
+            }
+            for (Future<?> future : done) {
+                future.get();
+            }
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            throw cause instanceof RuntimeException
+                ? (RuntimeException) cause
+                : new IllegalArgumentException(cause.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException("checkout interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Write working file NAME with the contents of blob ID. */
+    private void write(String name, String id) {
+        _objects.export(ObjectStore.BLOB, id, new File(_dir, name));
+    }
+
+    /** The working directory. */
+    private final File _dir;
+    /** The object store blobs are read from. */
+    private final ObjectStore _objects;
+    /** The stat cache giving the hashes of working files. */
+    private final Index _index;
+}
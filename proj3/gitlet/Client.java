@@ -0,0 +1,72 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/** A thin client for Daemon.  Invoke as
+ *      java gitlet.Client ARGS
+ *  with the same ARGS as gitlet.Main.  If a daemon is serving the
+ *  repository in the current directory, ARGS are forwarded to it and its
+ *  output is copied to the standard output; otherwise the command is run
+ *  here as by gitlet.Main.  "java gitlet.Client stop-daemon" stops the
+ *  daemon.
+ *  @author Mengmeng Yang
+ */
+public class Client {
+
+    /** Run the command given by ARGS, through the daemon if there is one.
+     *  fast-import always runs here, since it reads the standard input. */
+    public static void main(String... args) throws IOException {
+        if (args.length > 0 && args[0].equals("fast-import")) {
+            Main.main(args);
+            return;
+        }
+        SocketChannel channel =
+            connect(Utils.join(Main.GITLET_FOLDER, Daemon.SOCKET));
+        if (channel == null) {
+            if (args.length == 0 || !args[0].equals(Daemon.STOP)) {
+                Main.main(args);
+            }
+            return;
+        }
+        try (channel) {
+            DataOutputStream out =
+                new DataOutputStream(Channels.newOutputStream(channel));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            InputStream in = Channels.newInputStream(channel);
+            in.transferTo(System.out);
+            System.out.flush();
+        }
+    }
+
+    /** Return a connection to the daemon listening on SOCKET, or null if
+     *  there is none. */
+    static SocketChannel connect(File socket) {
+        if (!socket.exists()) {
+            return null;
+        }
+        try {
+            SocketChannel channel =
+                SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(UnixDomainSocketAddress.of(socket.toPath()));
+                return channel;
+            } catch (IOException excp) {
+                channel.close();
+                return null;
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** The binary encoding of commits, trees and staging areas.  An encoding
+ *  starts with the byte 'G', a type byte ('C' for commits, 'T' for trees,
+ *  'S' for staging areas) and the format version.  Strings are a varint
+ *  byte count followed by UTF-8 bytes, ids are 20 raw bytes, and counts
+ *  are varints.
+ *
+ *  A commit is its message, timestamp, a byte giving the number of
+ *  parents, the parent ids and its own id, followed in version 1 by the
+ *  number of files and each file name and blob id, and in version
+ *  TREE_VERSION by the id of its Tree.  A tree node is a byte that is 0
+ *  for a leaf, followed by the number of files and each name and blob id,
+ *  or 1 for an interior node, followed by the number of files under it, a
+ *  16-bit mask of the children present and their ids.  A staging area is
+ *  the number of added files followed by each name and blob id, then the
+ *  number of removed files followed by each name.
+ *
+ *  Objects written by older versions of gitlet with Java serialization
+ *  (which always start with the bytes 0xAC 0xED) are still decoded, the
+ *  Blobs they hold being stored and replaced by their ids.
+ *  @author Mengmeng Yang
+ */
+class Codec {
+
+    /** First byte of every encoding. */
+    static final int MAGIC = 'G';
+    /** Type byte of commits. */
+    static final int COMMIT = 'C';
+    /** Type byte of staging areas. */
+    static final int STAGE = 'S';
+    /** Type byte of tree nodes. */
+    static final int TREE = 'T';
+    /** Current format version. */
+    static final int VERSION = 1;
+    /** Version of commits that name a tree instead of listing files. */
+    static final int TREE_VERSION = 2;
+
+    /** Return the encoding of COMMIT. */
+    static byte[] encode(Commit commit) {
+        ByteArrayOutputStream out = header(COMMIT,
+            commit.getTree() == null ? VERSION : TREE_VERSION);
+        writeString(out, commit.getMessage());
+        writeString(out, commit.getTimestamp());
+        if (commit.getParent() == null) {
+            out.write(0);
+        } else if (commit.getParent2() == null) {
+            out.write(1);
+            writeId(out, commit.getParent());
+        } else {
+            out.write(2);
+            writeId(out, commit.getParent());
+            writeId(out, commit.getParent2());
+        }
+        writeId(out, commit.getCommitId());
+        if (commit.getTree() == null) {
+            writeMap(out, commit.getBlobs());
+        } else {
+            writeId(out, commit.getTree());
+        }
+        return out.toByteArray();
+    }
+
+    /** Return commit ID of OBJECTS. */
+    static Commit readCommit(ObjectStore objects, String id) {
+        return decodeCommit(objects.read(ObjectStore.COMMIT, id), objects);
+    }
+
+    /** Return the commit encoded in BYTES.  A commit serialized by an
+     *  older version has the contents of its Blobs stored in OBJECTS,
+     *  which need only be given for such commits.  Throws
+     *  IllegalArgumentException if BYTES is not a commit. */
+    static Commit decodeCommit(byte[] bytes, ObjectStore objects) {
+        if (isLegacy(bytes)) {
+            Commit commit = Utils.deserialize(bytes, Commit.class);
+            commit.upgrade(objects);
+            return commit;
+        }
+        try {
+            ByteBuffer in = open(bytes, COMMIT);
+            boolean tree = bytes[2] == TREE_VERSION;
+            String message = readString(in);
+            String timestamp = readString(in);
+            int parents = in.get();
+            String parent = parents > 0 ? readId(in) : null;
+            String parent2 = parents > 1 ? readId(in) : null;
+            String id = readId(in);
+            if (tree) {
+                return new Commit(message, timestamp, parent, parent2, id,
+                                  readId(in));
+            }
+            return new Commit(message, timestamp, parent, parent2, id,
+                              readMap(in));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException excp) {
+            throw new IllegalArgumentException("truncated commit");
+        }
+    }
+
+    /** Return the encoding of NODE. */
+    static byte[] encode(Tree node) {
+        ByteArrayOutputStream out = header(TREE, VERSION);
+        if (node.isLeaf()) {
+            out.write(0);
+            Utils.writeVarint(out, node.size());
+            for (int i = 0; i < node.size(); i += 1) {
+                writeString(out, node.names()[i]);
+                writeId(out, node.ids()[i]);
+            }
+        } else {
+            out.write(1);
+            Utils.writeVarint(out, node.size());
+            String[] children = node.children();
+            int mask = 0;
+            for (int k = 0; k < children.length; k += 1) {
+                if (children[k] != null) {
+                    mask |= 1 << k;
+                }
+            }
+            out.write(mask >>> 8);
+            out.write(mask);
+            for (String child : children) {
+                if (child != null) {
+                    writeId(out, child);
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** Return the tree node encoded in BYTES.  Throws
+     *  IllegalArgumentException if BYTES is not a tree node. */
+    static Tree decodeTree(byte[] bytes) {
+        try {
+            ByteBuffer in = open(bytes, TREE);
+            int kind = in.get();
+            int size = (int) Utils.readVarint(in);
+            if (kind == 0) {
+                String[] names = new String[size];
+                String[] ids = new String[size];
+                for (int i = 0; i < size; i += 1) {
+                    names[i] = readString(in);
+                    ids[i] = readId(in);
+                }
+                return new Tree(names, ids);
+            }
+            int mask = in.getShort() & 0xffff;
+            String[] children = new String[Tree.FANOUT];
+            for (int k = 0; k < Tree.FANOUT; k += 1) {
+                if ((mask & (1 << k)) != 0) {
+                    children[k] = readId(in);
+                }
+            }
+            return new Tree(size, children);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException excp) {
+            throw new IllegalArgumentException("truncated tree");
+        }
+    }
+
+    /** Return the encoding of STAGE. */
+    static byte[] encode(StagingArea stage) {
+        ByteArrayOutputStream out = header(STAGE, VERSION);
+        writeMap(out, stage.getAdded());
+        Utils.writeVarint(out, stage.getRemoved().size());
+        for (String name : stage.getRemoved()) {
+            writeString(out, name);
+        }
+        return out.toByteArray();
+    }
+
+    /** Return the staging area encoded in BYTES.  One serialized by an
+     *  older version has the contents of its Blobs stored in OBJECTS.
+     *  Throws IllegalArgumentException if BYTES is not a staging area. */
+    static StagingArea decodeStagingArea(byte[] bytes, ObjectStore objects) {
+        if (isLegacy(bytes)) {
+            StagingArea stage = Utils.deserialize(bytes, StagingArea.class);
+            stage.upgrade(objects);
+            return stage;
+        }
+        try {
+            ByteBuffer in = open(bytes, STAGE);
+            StagingArea stage = new StagingArea();
+            stage.getAdded().putAll(readMap(in));
+            for (long n = Utils.readVarint(in); n > 0; n -= 1) {
+                stage.getRemoved().add(readString(in));
+            }
+            return stage;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException excp) {
+            throw new IllegalArgumentException("truncated staging area");
+        }
+    }
+
+    /** Return the staging area stored in FILE, storing the contents of
+     *  its Blobs in OBJECTS if it is of an older version.  Throws
+     *  IllegalArgumentException if there is none. */
+    static StagingArea readStagingArea(File file, ObjectStore objects) {
+        return decodeStagingArea(Utils.readContents(file), objects);
+    }
+
+    /** Return BYTES, an encoded commit, in the current format, storing
+     *  the contents of its Blobs in OBJECTS if it is of an older
+     *  version. */
+    static byte[] upgradeCommit(byte[] bytes, ObjectStore objects) {
+        return isLegacy(bytes) ? encode(decodeCommit(bytes, objects)) : bytes;
+    }
+
+    /** Return true iff BYTES were written with Java serialization. */
+    static boolean isLegacy(byte[] bytes) {
+        return bytes.length >= 2 && (bytes[0] & 0xff) == 0xac
+            && (bytes[1] & 0xff) == 0xed;
+    }
+
+    /** Return a stream holding the header for objects of type TYPE in
+     *  format VERSION. */
+    private static ByteArrayOutputStream header(int type, int version) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(MAGIC);
+        out.write(type);
+        out.write(version);
+        return out;
+    }
+
+    /** Return a buffer reading BYTES just past their header, checking
+     *  that they hold an object of type TYPE. */
+    private static ByteBuffer open(byte[] bytes, int type) {
+        if (bytes.length < 3 || bytes[0] != MAGIC || bytes[1] != type) {
+            throw new IllegalArgumentException("not an encoded object");
+        }
+        if (bytes[2] != VERSION
+            && (type != COMMIT || bytes[2] != TREE_VERSION)) {
+            throw new IllegalArgumentException("unknown format version");
+        }
+        return ByteBuffer.wrap(bytes, 3, bytes.length - 3);
+    }
+
+    /** Append S to OUT. */
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        Utils.writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /** Return the string at the current position of IN. */
+    private static String readString(ByteBuffer in) {
+        int length = (int) Utils.readVarint(in);
+        String result = new String(in.array(), in.arrayOffset()
+                                   + in.position(), length,
+                                   StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return result;
+    }
+
+    /** Append the 40-digit hexadecimal id ID to OUT as raw bytes. */
+    private static void writeId(ByteArrayOutputStream out, String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            throw new IllegalArgumentException("bad object id: " + id);
+        }
+        out.write(Utils.fromHex(id), 0, Utils.UID_LENGTH / 2);
+    }
+
+    /** Return the id at the current position of IN. */
+    private static String readId(ByteBuffer in) {
+        byte[] raw = new byte[Utils.UID_LENGTH / 2];
+        in.get(raw);
+        return Utils.toHex(raw);
+    }
+
+    /** Append the map MAP from file names to blob ids to OUT. */
+    private static void writeMap(ByteArrayOutputStream out,
+                                 Map<String, String> map) {
+        Utils.writeVarint(out, map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeId(out, entry.getValue());
+        }
+    }
+
+    /** Return the map from file names to blob ids at the current position
+     *  of IN. */
+    private static LinkedHashMap<String, String> readMap(ByteBuffer in) {
+        LinkedHashMap<String, String> result = new LinkedHashMap<>();
+        for (long n = Utils.readVarint(in); n > 0; n -= 1) {
+            String name = readString(in);
+            result.put(name, readId(in));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.util.LinkedHashMap;
+
+/** Compares the read and write throughput of the binary commit encoding
+ *  in Codec with the Java serialization gitlet used before.  Invoke as
+ *      java gitlet.CodecBenchmark [COMMITS [FILES]]
+ *  to time COMMITS synthetic commits (default 2000) that each track
+ *  FILES files (default 100).
+ *  @author Mengmeng Yang
+ */
+public class CodecBenchmark {
+
+    /** Number of times each measurement is repeated; the best is kept. */
+    static final int ROUNDS = 5;
+
+    /** Run the benchmark with the sizes given in ARGS. */
+    public static void main(String... args) {
+        int numCommits = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int numFiles = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        Commit[] commits = makeCommits(numCommits, numFiles);
+
+        byte[][] binary = new byte[numCommits][];
+        byte[][] serial = new byte[numCommits][];
+        double binaryWrite = Double.MAX_VALUE, serialWrite = Double.MAX_VALUE;
+        double binaryRead = Double.MAX_VALUE, serialRead = Double.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r += 1) {
+            long start = System.nanoTime();
+            for (int i = 0; i < numCommits; i += 1) {
+                binary[i] = Codec.encode(commits[i]);
+            }
+            binaryWrite = Math.min(binaryWrite, seconds(start));
+            start = System.nanoTime();
+            for (int i = 0; i < numCommits; i += 1) {
+                serial[i] = Utils.serialize(commits[i]);
+            }
+            serialWrite = Math.min(serialWrite, seconds(start));
+            start = System.nanoTime();
+            for (int i = 0; i < numCommits; i += 1) {
+                Codec.decodeCommit(binary[i], null);
+            }
+            binaryRead = Math.min(binaryRead, seconds(start));
+            start = System.nanoTime();
+            for (int i = 0; i < numCommits; i += 1) {
+                Codec.decodeCommit(serial[i], null);
+            }
+            serialRead = Math.min(serialRead, seconds(start));
+        }
+
+        System.out.printf("%d commits of %d files each%n",
+                          numCommits, numFiles);
+        report("binary codec", binary, binaryWrite, binaryRead);
+        report("serialization", serial, serialWrite, serialRead);
+    }
+
+    /** Return NUM commits, each tracking FILES files, in a chain. */
+    static Commit[] makeCommits(int num, int files) {
+        Commit[] result = new Commit[num];
+        String parent = null;
+        for (int i = 0; i < num; i += 1) {
+            LinkedHashMap<String, String> blobs = new LinkedHashMap<>();
+            for (int f = 0; f < files; f += 1) {
+                blobs.put("file" + f + ".txt", Utils.sha1("blob", "" + f,
+                                                          "" + (i + f) / 7));
+            }
+            result[i] = new Commit("commit number " + i,
+                                   "Thu Jan 1 00:00:00 1970 -0800",
+                                   parent, null,
+                                   Utils.sha1("commit", "" + i), blobs);
+            parent = result[i].getCommitId();
+        }
+        return result;
+    }
+
+    /** Print the size and throughput of the encodings ENCODED, which took
+     *  WRITE seconds to produce and READ seconds to decode, under NAME. */
+    private static void report(String name, byte[][] encoded,
+                               double write, double read) {
+        long bytes = 0;
+        for (byte[] e : encoded) {
+            bytes += e.length;
+        }
+        System.out.printf("%-14s %8.1f bytes/commit  write %8.0f commits/s"
+                          + "  read %8.0f commits/s%n", name,
+                          (double) bytes / encoded.length,
+                          encoded.length / write, encoded.length / read);
+    }
+
+    /** Return the seconds elapsed since START, a System.nanoTime value. */
+    private static double seconds(long start) {
+        return (System.nanoTime() - start) / 1e9;
+    }
+}
@@ -0,0 +1,308 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+/** Measures how the main gitlet commands scale with the number and size
+ *  of files and the depth of history.  Invoke as
+ *      java gitlet.CommandBenchmark [FILES [COMMITS [BRANCHES [SIZE]]]]
+ *  to build a synthetic repository of FILES files (default 1000) of SIZE
+ *  bytes each (default 1024) with COMMITS commits (default 1000) spread
+ *  over BRANCHES branches (default 4), then time add, commit, status,
+ *  log, checkout and merge in it.
+ *
+ *  Since gitlet works on the current directory, the benchmark runs itself
+ *  again in a new temporary directory, which it deletes afterwards.  The
+ *  repository is made with fast-import and checked out with reset; each
+ *  command is then run through Main as from the command line, WARMUP
+ *  times untimed and ROUNDS times timed, with anything it prints thrown
+ *  away and any setup it needs done outside the timing.  For each command
+ *  the report gives the mean time per run and the runs per second, the
+ *  bytes allocated per run by the benchmark's thread, the bytes read and
+ *  written per run by the process, as counted by /proc/self/io, and the
+ *  share of the commit cache's lookups that found their commit.
+ *  @author Mengmeng Yang
+ */
+public class CommandBenchmark {
+
+    /** Number of untimed runs of each command. */
+    static final int WARMUP = 4;
+    /** Number of timed runs of each command. */
+    static final int ROUNDS = 10;
+    /** Property set in the copy of the benchmark run in the temporary
+     *  directory. */
+    static final String CHILD = "gitlet.benchmark.child";
+
+    /** Run the benchmark with the sizes given in ARGS. */
+    public static void main(String... args) throws Exception {
+        if (System.getProperty(CHILD) == null) {
+            relaunch(args);
+            return;
+        }
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int commits = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int branches = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int size = args.length > 3 ? Integer.parseInt(args[3]) : 1024;
+        if (files < 2 || commits < 1 || branches < 2 || size < 1) {
+            throw new IllegalArgumentException("need FILES >= 2, COMMITS"
+                                               + " >= 1, BRANCHES >= 2");
+        }
+        CommandBenchmark bench =
+            new CommandBenchmark(files, commits, branches, size);
+        long start = System.nanoTime();
+        bench.generate();
+        System.out.printf("%d files of %d bytes, %d commits on %d branches"
+                          + " (made in %.2f s)%n", files, size, commits,
+                          branches, (System.nanoTime() - start) / 1e9);
+        System.out.printf("%-9s %12s %10s %14s %14s %14s %10s%n",
+                          "command", "ms/op", "ops/s", "alloc B/op",
+                          "read B/op", "write B/op", "cache hit");
+        bench.run();
+    }
+
+    /**
+     * A benchmark on a repository of FILES files of SIZE bytes with
+     * COMMITS commits on BRANCHES branches.
+     * @param files The number of files
+     * @param commits The number of commits
+     * @param branches The number of branches
+     * @param size The size of each file
+     */
+    CommandBenchmark(int files, int commits, int branches, int size) {
+        _files = files;
+        _commits = commits;
+        _branches = branches;
+        _size = size;
+        _random = new Random(61);
+    }
+
+    /** Build the repository in the current directory and check out the
+     *  master branch. */
+    void generate() {
+        quietly("init");
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        header(stream, "master", "initial files");
+        for (int f = 0; f < _files; f += 1) {
+            file(stream, f);
+        }
+        fastImport(stream);
+        int changes = Math.max(1, _files / 100);
+        stream.reset();
+        for (int c = 0; c < _commits; c += 1) {
+            int branch = c % _branches;
+            header(stream, branch == 0 ? "master" : "b" + branch,
+                   "commit " + c);
+            for (int k = 0; k < changes; k += 1) {
+                file(stream, _random.nextInt(_files));
+            }
+        }
+        fastImport(stream);
+        quietly("reset", Utils.readContentsAsString(CommandClass.HEAD));
+    }
+
+    /** Time each command and print a line of the report for it. */
+    void run() {
+        measure("add", i -> change(i % _files),
+            i -> new String[] { "add", name(i % _files) });
+        measure("commit", i -> {
+            change(i % _files);
+            quietly("add", name(i % _files));
+        }, i -> new String[] { "commit", "bench " + i });
+        measure("status", i -> { }, i -> new String[] { "status" });
+        measure("log", i -> { }, i -> new String[] { "log" });
+        measure("checkout", i -> { },
+            i -> new String[] { "checkout", i % 2 == 0 ? "b1" : "master" });
+        measure("merge", i -> {
+            String branch = "m" + i;
+            quietly("branch", branch);
+            change(2 * i % _files);
+            quietly("add", name(2 * i % _files));
+            quietly("commit", "master " + i);
+            quietly("checkout", branch);
+            change((2 * i + 1) % _files);
+            quietly("add", name((2 * i + 1) % _files));
+            quietly("commit", branch + " " + i);
+            quietly("checkout", "master");
+        }, i -> new String[] { "merge", "m" + i });
+    }
+
+    /** Run gitlet command NAME WARMUP + ROUNDS times, first passing the
+     *  number of the run to SETUP and then running the command COMMAND
+     *  gives for it, and print the measurements of the timed runs. */
+    private void measure(String name, IntConsumer setup,
+                         IntFunction<String[]> command) {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        long nanos = 0, allocated = 0, read = 0, written = 0;
+        long hits = 0, misses = 0;
+        CommitCache cache = CommandClass.COMMITS;
+        for (int i = 0; i < WARMUP + ROUNDS; i += 1) {
+            setup.accept(i);
+            String[] args = command.apply(i);
+            long[] io = io();
+            long cacheHits = cache.hits(), cacheMisses = cache.misses();
+            long bytes = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            quietly(args);
+            long end = System.nanoTime();
+            bytes = threads.getCurrentThreadAllocatedBytes() - bytes;
+            long[] ioEnd = io();
+            if (i >= WARMUP) {
+                nanos += end - start;
+                allocated += bytes;
+                read += ioEnd[0] - io[0];
+                written += ioEnd[1] - io[1];
+                hits += cache.hits() - cacheHits;
+                misses += cache.misses() - cacheMisses;
+            }
+        }
+        System.out.printf("%-9s %12.3f %10.1f %14d %14d %14d %10s%n", name,
+                          nanos / 1e6 / ROUNDS, ROUNDS / (nanos / 1e9),
+                          allocated / ROUNDS, read / ROUNDS,
+                          written / ROUNDS,
+                          hits + misses == 0 ? "-"
+                          : String.format("%.1f%%",
+                                          100.0 * hits / (hits + misses)));
+    }
+
+    /** Write the header of a fast-import commit on BRANCH with MESSAGE to
+     *  STREAM. */
+    private void header(ByteArrayOutputStream stream, String branch,
+                        String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        stream.writeBytes(String.format("commit %s%ndata %d%n", branch,
+                                        bytes.length)
+                          .getBytes(StandardCharsets.UTF_8));
+        stream.writeBytes(bytes);
+        stream.write('\n');
+    }
+
+    /** Write a fast-import change giving file F new contents to
+     *  STREAM. */
+    private void file(ByteArrayOutputStream stream, int f) {
+        byte[] contents = contents();
+        stream.writeBytes(String.format("M %d %s%n", contents.length, name(f))
+                          .getBytes(StandardCharsets.UTF_8));
+        stream.writeBytes(contents);
+        stream.write('\n');
+    }
+
+    /** Give working file F new contents. */
+    private void change(int f) {
+        Utils.writeContents(new File(name(f)), contents());
+    }
+
+    /** Return _size bytes of random lines of text. */
+    private byte[] contents() {
+        byte[] result = new byte[_size];
+        for (int i = 0; i < _size; i += 1) {
+            result[i] = i % 64 == 63 ? (byte) '\n'
+                : (byte) ('a' + _random.nextInt(26));
+        }
+        return result;
+    }
+
+    /** Return the name of file F. */
+    private static String name(int f) {
+        return String.format("f%05d.txt", f);
+    }
+
+    /** Run fast-import on the contents of STREAM. */
+    private static void fastImport(ByteArrayOutputStream stream) {
+        InputStream stdin = System.in;
+        System.setIn(new ByteArrayInputStream(stream.toByteArray()));
+        try {
+            quietly("fast-import");
+        } finally {
+            System.setIn(stdin);
+        }
+    }
+
+    /** Run the gitlet command ARGS, discarding what it prints. */
+    private static void quietly(String... args) {
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            Main.run(args);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    /** Return the bytes read and written so far by this process, or zeros
+     *  where /proc/self/io is not available. */
+    private static long[] io() {
+        long[] result = new long[2];
+        File file = new File("/proc/self/io");
+        if (!file.canRead()) {
+            return result;
+        }
+        for (String line : Utils.readContentsAsString(file).split("\n")) {
+            if (line.startsWith("rchar:")) {
+                result[0] = Long.parseLong(line.substring(6).trim());
+            } else if (line.startsWith("wchar:")) {
+                result[1] = Long.parseLong(line.substring(6).trim());
+            }
+        }
+        return result;
+    }
+
+    /** Run this benchmark with ARGS in a new Java process whose working
+     *  directory is a new temporary directory, then delete the
+     *  directory. */
+    private static void relaunch(String... args)
+        throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("gitlet-bench");
+        try {
+            String java = ProcessHandle.current().info().command()
+                .orElse("java");
+            String classPath = Stream.of(System.getProperty("java.class.path")
+                                         .split(File.pathSeparator))
+                .map(p -> new File(p).getAbsolutePath())
+                .reduce((a, b) -> a + File.pathSeparator + b).orElse(".");
+            String[] command = new String[args.length + 5];
+            command[0] = java;
+            command[1] = "-D" + CHILD + "=true";
+            command[2] = "-cp";
+            command[3] = classPath;
+            command[4] = CommandBenchmark.class.getName();
+            System.arraycopy(args, 0, command, 5, args.length);
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.directory(dir.toFile()).inheritIO();
+            builder.start().waitFor();
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder())
+                    .forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /** Number of files. */
+    private final int _files;
+    /** Number of commits made by generate. */
+    private final int _commits;
+    /** Number of branches. */
+    private final int _branches;
+    /** Size of each file in bytes. */
+    private final int _size;
+    /** Source of file contents and of the files changed. */
+    private final Random _random;
+}
@@ -1,13 +1,24 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.Set;
-import java.util.HashMap;
+import java.util.TreeSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.ArrayList;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 
 /**
  * Consists of the main gitlet commands.
@@ -35,6 +46,26 @@ public class CommandClass {
     static final File REMOTE_DIR = Utils.join(GITLET_FOLDER, "remote");
     /** Remote branch folder. */
     static final File REMOTE_BRANCH = Utils.join(BRANCHES_DIR, "remote");
+    /** File to store the stat cache of working file hashes. */
+    static final File INDEX = Utils.join(GITLET_FOLDER, "index");
+    /** The journal through which refs and state files are written. */
+    static final Journal JOURNAL = new Journal(GITLET_FOLDER);
+    /** The commits and blobs of this repository, loose or packed. */
+    static final ObjectStore OBJECTS = new ObjectStore(GITLET_FOLDER, JOURNAL);
+    /** The tree nodes of this repository, kept in OBJECTS. */
+    static final Tree.Store TREES = Tree.in(OBJECTS);
+    /** File to store the commit graph. */
+    static final File COMMIT_GRAPH = Utils.join(GITLET_FOLDER, "commit-graph");
+    /** File to store the reachability bitmaps of branch tips. */
+    static final File BITMAPS = Utils.join(GITLET_FOLDER, "bitmaps");
+    /** File to store the index from commit messages to commit ids. */
+    static final File MESSAGE_INDEX = Utils.join(GITLET_FOLDER, "messages");
+    /** Number of commits global-log formats at a time. */
+    static final int LOG_BATCH = 1024;
+    /** Largest total encoded size of the commits kept in COMMITS. */
+    static final long COMMIT_CACHE_BYTES = 16 << 20;
+    /** Decoded commits shared by every command run in this process. */
+    static final CommitCache COMMITS = new CommitCache(COMMIT_CACHE_BYTES);
 
     /** Current head commit id. */
     private String _headId;
@@ -42,12 +73,23 @@ public class CommandClass {
     private String _currentBranch;
     /** The current staging area object. */
     private StagingArea stagingArea;
+    /** The stat cache of working file hashes. */
+    private Index _index;
+    /** The commit graph, or null if not yet read.  Like COMMITS, it is
+     *  shared by every command run in this process. */
+    private static CommitGraph _graph;
+    /** The message index, or null if not yet read.  Shared like
+     *  _graph. */
+    private static MessageIndex _messages;
+    /** The reachability bitmaps, or null if not yet read.  Shared like
+     *  _graph. */
+    private static Reachability _reach;
 
     /** Process Gitlet commands. */
     public CommandClass() {
         try {
-            stagingArea = Utils.readObject(Utils.join
-                    (STAGE_DIR, "stage"), StagingArea.class);
+            stagingArea = Codec.readStagingArea(Utils.join(STAGE_DIR, "stage"),
+                                                OBJECTS);
         } catch (IllegalArgumentException e) {
             stagingArea = new StagingArea();
         }
@@ -61,6 +103,33 @@ public class CommandClass {
         } catch (IllegalArgumentException e) {
             _currentBranch = "";
         }
+        try {
+            _index = Utils.readObject(INDEX, Index.class);
+        } catch (IllegalArgumentException e) {
+            _index = new Index();
+        }
+    }
+
+    /** Forget the commit graph, bitmaps, message index and packs read so
+     *  far, so that they are read again when next needed.  Used when
+     *  another process may have changed the repository. */
+    static void reload() {
+        _graph = null;
+        _reach = null;
+        _messages = null;
+        OBJECTS.reload();
+    }
+
+    /** Write VALUE to the ref or state file FILE when the current
+     *  transaction commits. */
+    private static void writeRef(File file, String value) {
+        JOURNAL.write(file, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Write the staging area when the current transaction commits. */
+    private void saveStage() {
+        JOURNAL.write(Utils.join(STAGE_DIR, "stage"),
+                      Codec.encode(stagingArea));
     }
 
     /** Initialize gitlet. */
@@ -81,13 +150,16 @@ public class CommandClass {
                     null, null, new LinkedHashMap<>());
             _headId = commit.getCommitId();
             _currentBranch = "master";
-            Utils.writeContents(HEAD, _headId);
-            Utils.writeContents(CURR_BRANCH, _currentBranch);
-            Utils.writeContents(Utils.join
-                    (BRANCHES_DIR, _currentBranch), _headId);
-            Utils.writeObject(Utils.join
-                    (COMMIT_DIR, commit.getCommitId()), commit);
-            Utils.writeObject(Utils.join(STAGE_DIR, "stage"), stagingArea);
+            writeRef(HEAD, _headId);
+            writeRef(CURR_BRANCH, _currentBranch);
+            writeRef(Utils.join(BRANCHES_DIR, _currentBranch), _headId);
+            OBJECTS.write(ObjectStore.COMMIT, commit.getCommitId(),
+                    Codec.encode(commit));
+            graph().index(commit.getCommitId());
+            graph().save(JOURNAL);
+            messages().add(commit.getCommitId(), commit.getMessage());
+            messages().save(JOURNAL);
+            saveStage();
         }
     }
 
@@ -100,22 +172,20 @@ public class CommandClass {
         if (!fileSaved.exists()) {
             System.out.println("File does not exist.");
         } else {
-            Blobs blob = new Blobs(fileName);
+            Blobs blob = new Blobs(fileName, _index.hash(fileName));
             Commit commit = getCommit(_headId);
-            LinkedHashMap<String, Blobs> commitBlob = commit.getBlobs();
-            if (commitBlob.containsKey(fileName) && commitBlob.get(fileName).
-                    getHash().equals(blob.getHash())) {
+            if (blob.getHash().equals(commit.getBlob(fileName))) {
                 stagingArea.getAdded().remove(fileName);
-                Utils.writeObject(Utils.join(STAGE_DIR, "stage"), stagingArea);
             } else {
-                stagingArea.getAdded().put(fileName, blob);
+                blob.save();
+                stagingArea.getAdded().put(fileName, blob.getHash());
             }
             if (stagingArea.getRemoved().contains(fileName)) {
                 stagingArea.getRemoved().remove(fileName);
             }
 
-            Utils.writeObject(Utils.join(STAGE_DIR, "stage"), stagingArea);
-            Utils.writeObject(Utils.join(BLOB_DIR, blob.getHash()), blob);
+            saveStage();
+            _index.save(JOURNAL, INDEX);
         }
     }
 
@@ -124,6 +194,16 @@ public class CommandClass {
      * @param message The commit message
      */
     public void commit(String message) {
+        commit(message, null);
+    }
+
+    /**
+     * Create a new Commit, merging in the commit PARENT2 unless it is
+     * null, and serialize it to a file in COMMIT_DIR.
+     * @param message The commit message
+     * @param parent2 The id of the second parent, or null
+     */
+    private void commit(String message, String parent2) {
         if (stagingArea.getAdded().isEmpty()
                 && stagingArea.getRemoved().isEmpty()) {
             System.out.println("No changes added to the commit.");
@@ -133,36 +213,29 @@ public class CommandClass {
             System.out.print("Please enter a commit message.");
             return;
         }
-        Commit parent = getCommit(_headId);
-        Set<String> parentTracked = parent.getBlobs().keySet();
-        LinkedHashMap<String, Blobs> newBlob = new LinkedHashMap<>();
-        for (String files: parentTracked) {
-            newBlob.put(files, parent.getBlobs().get(files));
-        }
-        Set<String> filesStaged = stagingArea.getAdded().keySet();
-        for (String files: filesStaged) {
-            newBlob.put(files, stagingArea.getAdded().get(files));
-        }
+        LinkedHashMap<String, String> changes =
+            new LinkedHashMap<>(stagingArea.getAdded());
         for (String key: stagingArea.getRemoved()) {
-            newBlob.remove(key);
-        }
-        Commit newCommit;
-        if (message.split(" ")[0].equals("Merged")) {
-            File merge = Utils.join(BRANCHES_DIR, "merge");
-            String parent2 = Utils.readContentsAsString(merge);
-            newCommit = new Commit(message, _headId, parent2, newBlob);
-        } else {
-            newCommit = new Commit(message, _headId, null, newBlob);
+            changes.put(key, null);
         }
+        String tree = Tree.update(TREES, treeOf(getCommit(_headId)),
+                changes);
+        Commit newCommit = new Commit(message,
+                ZonedDateTime.now().format(Commit.DATE), _headId, parent2,
+                tree);
         stagingArea.clear();
         _headId = newCommit.getCommitId();
-        Utils.writeContents(HEAD, _headId);
-        Utils.writeContents(Utils.join
-                (BRANCHES_DIR, _currentBranch), _headId);
-        Utils.writeObject(Utils.join
-                (COMMIT_DIR, newCommit.getCommitId()), newCommit);
-        Utils.writeObject(Utils.join(
-                STAGE_DIR, "stage"), stagingArea);
+        writeRef(HEAD, _headId);
+        writeRef(Utils.join(BRANCHES_DIR, _currentBranch), _headId);
+        byte[] bytes = Codec.encode(newCommit);
+        OBJECTS.write(ObjectStore.COMMIT, newCommit.getCommitId(), bytes);
+        COMMITS.put(newCommit, bytes.length);
+        graph().index(newCommit.getCommitId());
+        reach().of(newCommit.getCommitId());
+        saveReach();
+        messages().add(newCommit.getCommitId(), newCommit.getMessage());
+        messages().save(JOURNAL);
+        saveStage();
     }
 
     /**
@@ -173,14 +246,14 @@ public class CommandClass {
         Commit commit = getCommit(_headId);
         if (stagingArea.getAdded().containsKey(fileName)) {
             stagingArea.getAdded().remove(fileName);
-        } else if (commit.getBlobs().containsKey(fileName)) {
+        } else if (commit.getBlob(fileName) != null) {
             stagingArea.getRemoved().add(fileName);
             stagingArea.getAdded().remove(fileName);
             Utils.restrictedDelete(fileName);
         } else {
             System.out.println("No reason to remove the file.");
         }
-        Utils.writeObject(Utils.join(STAGE_DIR, "stage"), stagingArea);
+        saveStage();
     }
 
     /** Starting at the current head commit, display information
@@ -190,19 +263,75 @@ public class CommandClass {
         Commit commit = getCommit(_headId);
         commit.printInfo();
         while (commit.getParent() != null) {
-            commit = Utils.readObject
-                    (Utils.join(COMMIT_DIR, commit.getParent()), Commit.class);
+            commit = getCommit(commit.getParent());
             commit.printInfo();
         }
     }
 
-    /** Displays information about all commits. */
-    public void globalLog() {
-        List<String> commitFiles = Utils.plainFilenamesIn(COMMIT_DIR);
-        for (String sha: commitFiles) {
-            Commit commit = Utils.readObject
-                    (Utils.join(COMMIT_DIR, sha), Commit.class);
+    /**
+     * Display information about the commits that log displays, stopping
+     * at the first that is reachable from any of the given branches.
+     * @param excluded The given branch names
+     */
+    public void log(List<String> excluded) {
+        Bitmap hidden = new Bitmap();
+        for (String branchName: excluded) {
+            File branch = Utils.join(BRANCHES_DIR,
+                    branchName.replace("/", ""));
+            if (!branch.isFile() || branch.equals(CURR_BRANCH)) {
+                System.out.println("A branch with that name does not exist.");
+                return;
+            }
+            hidden.or(reach().of(Utils.readContentsAsString(branch)));
+        }
+        String id = _headId;
+        while (id != null && !hidden.contains(graph().index(id))) {
+            Commit commit = getCommit(id);
             commit.printInfo();
+            id = commit.getParent();
+        }
+        saveReach();
+    }
+
+    /**
+     * Print how many commits the current branch has that the given
+     * branch lacks, and how many it lacks that the given branch has.
+     * @param branchName The given branch name
+     */
+    public void compare(String branchName) {
+        File branch = Utils.join(BRANCHES_DIR, branchName.replace("/", ""));
+        if (!branch.isFile() || branch.equals(CURR_BRANCH)) {
+            System.out.println("A branch with that name does not exist.");
+            return;
+        }
+        String id = Utils.readContentsAsString(branch);
+        System.out.printf("%d ahead, %d behind%n",
+                reach().ahead(_headId, id), reach().ahead(id, _headId));
+        saveReach();
+    }
+
+    /** Displays information about all commits, in order of commit id.
+     *  The commits of each batch of LOG_BATCH are read and formatted in
+     *  parallel on the common fork-join pool, then printed in order.
+     *  Commits saved by older versions, whose reading writes their blobs
+     *  through the journal, are read on this thread instead. */
+    public void globalLog() {
+        List<String> commitFiles = OBJECTS.list(ObjectStore.COMMIT);
+        for (int i = 0; i < commitFiles.size(); i += LOG_BATCH) {
+            List<String> batch = commitFiles.subList(i,
+                    Math.min(i + LOG_BATCH, commitFiles.size()));
+            List<Commit> commits = batch.parallelStream()
+                .map(this::getCurrentCommit)
+                .collect(Collectors.toCollection(ArrayList::new));
+            for (int k = 0; k < commits.size(); k += 1) {
+                if (commits.get(k) == null) {
+                    commits.set(k, getCommit(batch.get(k)));
+                }
+            }
+            StringBuilder out = new StringBuilder();
+            commits.parallelStream().map(Commit::info)
+                .forEachOrdered(info -> out.append(info).append('\n'));
+            System.out.print(out);
         }
     }
 
@@ -211,17 +340,14 @@ public class CommandClass {
      * @param input The given commit message
      */
     public void find(String input) {
-        boolean find = false;
-        List<String> commits = Utils.plainFilenamesIn(COMMIT_DIR);
-        for (String id: commits) {
-            if (getCommit(id).getMessage().equals(input)) {
-                System.out.println(id);
-                find = true;
-            }
+        List<String> ids = messages().find(input);
+        for (String id: ids) {
+            System.out.println(id);
         }
-        if (!find) {
+        if (ids.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
+        messages().save(JOURNAL);
     }
 
     /** Display information about branches, staged files, removed files,
@@ -253,13 +379,16 @@ public class CommandClass {
         }
         System.out.println();
         System.out.println("=== Modifications Not Staged For Commit ===");
-        LinkedHashMap<String, String> modified = getModifiedFiles();
+        LinkedHashMap<String, String> commitBlobs =
+            getCommit(_headId).getBlobs();
+        LinkedHashMap<String, String> modified =
+            getModifiedFiles(commitBlobs);
         for (String file: modified.keySet()) {
             System.out.println(file + modified.get(file));
         }
         System.out.println();
         System.out.println("=== Untracked Files ===");
-        ArrayList<String> untracked = getUntrackedFiles();
+        ArrayList<String> untracked = getUntrackedFiles(commitBlobs);
         for (String file: untracked) {
             System.out.println(file);
         }
@@ -276,9 +405,10 @@ public class CommandClass {
             return;
         }
         File branch = Utils.join(BRANCHES_DIR, branchName);
-        boolean isDeleted = branch.delete();
-        if (!isDeleted) {
+        if (!branch.isFile()) {
             System.out.println("A branch with that name does not exist.");
+        } else {
+            JOURNAL.delete(branch);
         }
     }
 
@@ -293,15 +423,12 @@ public class CommandClass {
             System.out.println("No commit with that id exists.");
             return;
         }
-        Commit commit = getCommit(foundId);
-        LinkedHashMap<String, Blobs> commitBlob = commit.getBlobs();
-        if (!commitBlob.containsKey(fileName)) {
+        String blob = getCommit(foundId).getBlob(fileName);
+        if (blob == null) {
             System.out.println("File does not exist in that commit.");
             return;
         }
-        Blobs blob = commit.getBlobs().get(fileName);
-        Utils.writeContents(Utils.join(CWD, fileName), blob.getContent());
-        Utils.writeObject(Utils.join(BLOB_DIR, blob.getHash()), blob);
+        Blobs.write(blob, Utils.join(CWD, fileName));
     }
 
     /**
@@ -309,15 +436,12 @@ public class CommandClass {
      * @param fileName The given file name
      */
     public void checkout(String fileName) {
-        Commit commit = getCommit(_headId);
-        LinkedHashMap<String, Blobs> commitBlob = commit.getBlobs();
-        if (!commitBlob.containsKey(fileName)) {
+        String blob = getCommit(_headId).getBlob(fileName);
+        if (blob == null) {
             System.out.println("File does not exist in that commit.");
             return;
         }
-        Blobs blob = commit.getBlobs().get(fileName);
-        Utils.writeContents(Utils.join(CWD, fileName), blob.getContent());
-        Utils.writeObject(Utils.join(BLOB_DIR, blob.getHash()), blob);
+        Blobs.write(blob, Utils.join(CWD, fileName));
     }
 
     /**
@@ -338,26 +462,11 @@ public class CommandClass {
             return;
         }
         String idToGet = Utils.readContentsAsString(branch);
-        Commit currCommit = getCommit(_headId);
-        Commit givenCommit = getCommit(idToGet);
-        List<String> workingFiles = Utils.plainFilenamesIn(CWD);
-        if (untrackedFileError(currCommit, givenCommit, workingFiles)) {
+        if (!checkoutCommit(getCommit(_headId), getCommit(idToGet))) {
             return;
         }
-        for (String file: givenCommit.getBlobs().keySet()) {
-            byte[] blobContent = givenCommit.getBlobs().get(file).getContent();
-            Utils.writeContents(Utils.join(CWD, file), blobContent);
-        }
-        for (String file: workingFiles) {
-            if (currCommit.getBlobs().containsKey(file)
-                    && !givenCommit.getBlobs().containsKey(file)) {
-                Utils.restrictedDelete(file);
-            }
-        }
-        stagingArea.clear();
-        Utils.writeObject(Utils.join(STAGE_DIR, "stage"), stagingArea);
-        Utils.writeContents(CURR_BRANCH, branchName);
-        Utils.writeContents(HEAD, idToGet);
+        writeRef(CURR_BRANCH, branchName);
+        writeRef(HEAD, idToGet);
     }
 
     /**
@@ -365,18 +474,38 @@ public class CommandClass {
      * @param id The given commit id
      */
     public void reset(String id) throws IOException {
-        String tempCurrBranch = _currentBranch;
         String foundId = findCommitId(id);
         if (foundId == null) {
             System.out.println("No commit with that id exists.");
             return;
         }
-        branchHelper("temp", id);
-        checkoutBranch("temp");
-        Utils.writeContents(CURR_BRANCH, tempCurrBranch);
-        Utils.writeContents(HEAD, id);
-        Utils.writeContents(Utils.join(BRANCHES_DIR, _currentBranch), id);
-        Utils.join(BRANCHES_DIR, "temp").delete();
+        if (!checkoutCommit(getCommit(_headId), getCommit(foundId))) {
+            return;
+        }
+        writeRef(HEAD, foundId);
+        writeRef(Utils.join(BRANCHES_DIR, _currentBranch), foundId);
+    }
+
+    /**
+     * Replace the working files of the current commit with those of the
+     * given commit and clear the staging area, unless an untracked file
+     * is in the way.  Only files whose contents differ are written.
+     * @param curr The current commit
+     * @param given The given commit
+     * @return false if an untracked file was in the way
+     */
+    private boolean checkoutCommit(Commit curr, Commit given) {
+        List<String> workingFiles = Utils.plainFilenamesIn(CWD);
+        LinkedHashMap<String, String> currBlobs = curr.getBlobs();
+        LinkedHashMap<String, String> givenBlobs = given.getBlobs();
+        if (untrackedFileError(currBlobs, givenBlobs, workingFiles)) {
+            return false;
+        }
+        new Checkout(CWD, OBJECTS, _index).run(currBlobs, givenBlobs);
+        _index.save(JOURNAL, INDEX);
+        stagingArea.clear();
+        saveStage();
+        return true;
     }
 
     /**
@@ -403,7 +532,7 @@ public class CommandClass {
             branchName = branchName.replace("/", "");
             branch = Utils.join(BRANCHES_DIR, branchName);
         }
-        Utils.writeContents(branch, id);
+        writeRef(branch, id);
     }
 
     /**
@@ -415,9 +544,21 @@ public class CommandClass {
      */
     public boolean untrackedFileError(Commit curr,
                                       Commit given, List<String> list) {
+        return untrackedFileError(curr.getBlobs(), given.getBlobs(), list);
+    }
+
+    /**
+     * Report the untracked file error.
+     * @param curr The files of the current commit
+     * @param given The files of the given commit
+     * @param list The list of files in the CWD
+     * @return if the error exists or not
+     */
+    private boolean untrackedFileError(Map<String, String> curr,
+                                       Map<String, String> given,
+                                       List<String> list) {
         for (String file: list) {
-            if (!curr.getBlobs().containsKey(file)
-                    && given.getBlobs().containsKey(file)) {
+            if (!curr.containsKey(file) && given.containsKey(file)) {
                 System.out.println("There is an untracked file in the way;"
                         + " delete it, or add and commit it first.");
                 return true;
@@ -450,13 +591,13 @@ public class CommandClass {
     }
 
     /**
-     * Compare if two blobs' content are the .
-     * @param b1 Blob 1
-     * @param b2 Blob 2
+     * Compare if two blobs' content are the same.
+     * @param b1 Blob 1 id
+     * @param b2 Blob 2 id
      * @return if two blobs' content are the same
      */
-    public boolean cp(Blobs b1, Blobs b2) {
-        return b1.getHash().equals(b2.getHash());
+    public boolean cp(String b1, String b2) {
+        return b1.equals(b2);
     }
 
     /**
@@ -467,7 +608,7 @@ public class CommandClass {
         if (mergeError(branchName)) {
             return;
         }
-        File branch = Utils.join(BRANCHES_DIR, branchName);
+        File branch = Utils.join(BRANCHES_DIR, branchName.replace("/", ""));
         String branchId = Utils.readContentsAsString(branch);
         Commit curr = getCommit(_headId);
         Commit given = getCommit(branchId);
@@ -493,22 +634,27 @@ public class CommandClass {
     public void merge2(Commit curr, Commit given, Commit split,
                        String branchId, String branchName) {
         boolean hasConflict = false;
-        for (String file: curr.getBlobs().keySet()) {
-            Blobs curBlob = curr.getBlobs().get(file);
-            Blobs givBlob = given.getBlobs().get(file);
-            if (split.getBlobs().containsKey(file)) {
-                Blobs spBlob = split.getBlobs().get(file);
+        TreeSet<String> changed = new TreeSet<>();
+        changedFiles(split, curr, changed);
+        changedFiles(split, given, changed);
+        for (String file: changed) {
+            String curBlob = curr.getBlob(file);
+            if (curBlob == null) {
+                continue;
+            }
+            String givBlob = given.getBlob(file);
+            String spBlob = split.getBlob(file);
+            if (spBlob != null) {
                 if (givBlob != null) {
                     if (cp(spBlob, curBlob) && !cp(spBlob, givBlob)) {
                         checkout(branchId, file);
                         add(file);
-                        Utils.writeObject(
-                                Utils.join(STAGE_DIR, "stage"), stagingArea);
+                        saveStage();
                     }
                     if (!cp(spBlob, curBlob) && !cp(spBlob, givBlob)
                             && !cp(curBlob, givBlob)) {
-                        hasConflict = true;
-                        writeConflict(file, curBlob, givBlob);
+                        hasConflict |= mergeFile(file, spBlob, curBlob,
+                                givBlob);
                     }
                 } else if (!cp(spBlob, curBlob) && givBlob == null) {
                     hasConflict = true;
@@ -518,17 +664,19 @@ public class CommandClass {
                 }
             }
         }
-        for (String file: given.getBlobs().keySet()) {
-            Blobs curBlob = curr.getBlobs().get(file);
-            Blobs givBlob = given.getBlobs().get(file);
-            Blobs spBlob = split.getBlobs().get(file);
+        for (String file: changed) {
+            String givBlob = given.getBlob(file);
+            if (givBlob == null) {
+                continue;
+            }
+            String curBlob = curr.getBlob(file);
+            String spBlob = split.getBlob(file);
             if (spBlob != null && !cp(spBlob, givBlob) && curBlob == null) {
                 hasConflict = true;
                 writeConflictCurrDeleted(file, givBlob);
             } else if (spBlob == null && curBlob != null
                     && givBlob != null && !cp(curBlob, givBlob)) {
-                hasConflict = true;
-                writeConflict(file, curBlob, givBlob);
+                hasConflict |= mergeFile(file, null, curBlob, givBlob);
             } else if (spBlob == null && curBlob == null && givBlob != null) {
                 checkout(branchId, file);
                 add(file);
@@ -537,9 +685,47 @@ public class CommandClass {
         if (hasConflict) {
             System.out.println("Encountered a merge conflict.");
         }
-        Utils.writeContents(Utils.join(BRANCHES_DIR, "merge"), branchId);
-        commit("Merged " + branchName + " into " + _currentBranch + ".");
-        Utils.join(BRANCHES_DIR, "merge").delete();
+        commit("Merged " + branchName + " into " + _currentBranch + ".",
+               branchId);
+    }
+
+    /**
+     * Add to the given set the names of the files whose blobs differ
+     * between two commits, comparing their trees where both have one.
+     * @param a The first commit
+     * @param b The second commit
+     * @param result The set of names
+     */
+    private static void changedFiles(Commit a, Commit b, Set<String> result) {
+        if (a.getTree() != null && b.getTree() != null) {
+            Tree.diff(TREES, a.getTree(), b.getTree(), result);
+            return;
+        }
+        LinkedHashMap<String, String> aBlobs = a.getBlobs();
+        LinkedHashMap<String, String> bBlobs = b.getBlobs();
+        for (String file: aBlobs.keySet()) {
+            if (!aBlobs.get(file).equals(bBlobs.get(file))) {
+                result.add(file);
+            }
+        }
+        for (String file: bBlobs.keySet()) {
+            if (!aBlobs.containsKey(file)) {
+                result.add(file);
+            }
+        }
+    }
+
+    /**
+     * Return the id of the tree of the given commit, storing one made
+     * from its files if it lists them directly.
+     * @param commit The commit
+     * @return the tree id
+     */
+    private static String treeOf(Commit commit) {
+        if (commit.getTree() != null) {
+            return commit.getTree();
+        }
+        return Tree.write(TREES, commit.getBlobs());
     }
 
     /**
@@ -555,8 +741,7 @@ public class CommandClass {
         }
         String newPath = path.replace("/", java.io.File.separator);
         File remote = Utils.join(REMOTE_DIR, name);
-        remote.createNewFile();
-        Utils.writeContents(remote, newPath);
+        writeRef(remote, newPath);
     }
 
     /**
@@ -567,7 +752,7 @@ public class CommandClass {
         if (!Utils.join(REMOTE_DIR, name).exists()) {
             System.out.println("A remote with that name does not exist.");
         } else {
-            Utils.join(REMOTE_DIR, name).delete();
+            JOURNAL.delete(Utils.join(REMOTE_DIR, name));
         }
     }
 
@@ -583,33 +768,31 @@ public class CommandClass {
             System.out.println("Remote directory not found.");
             return;
         }
-        ArrayList<String> history = new ArrayList<>();
-        Commit currTemp = getCommit(_headId);
-        Commit curr = getCommit(_headId);
         File remoteBranches = Utils.join(path, "branches");
         File givenBranch = Utils.join(remoteBranches, branchName);
         String givenid = null;
         if (givenBranch.exists()) {
             givenid = Utils.readContentsAsString(givenBranch);
         }
-        history.add(_headId);
-        while (currTemp.getParent() != null) {
-            if (currTemp.getParent2() != null) {
-                history.add(currTemp.getParent2());
-            }
-            history.add(currTemp.getParent());
-            currTemp = getCommit(currTemp.getParent());
-        }
-        if (givenid == null || history.contains(givenid)) {
-            File remoteCmPath = Utils.join(path, "commits");
-            List<String> remoteCm = Utils.plainFilenamesIn(remoteCmPath);
-            for (String cm: history) {
-                if (!remoteCm.contains(cm)) {
-                    Utils.writeObject(Utils.join
-                            (remoteCmPath, cm), getCommit(cm));
-                }
+        if (givenid == null
+                || (OBJECTS.contains(ObjectStore.COMMIT, givenid)
+                && reach().isAncestor(givenid, _headId))) {
+            Journal remoteJournal = new Journal(Utils.join(path));
+            remoteJournal.recover();
+            remoteJournal.begin();
+            ObjectStore remote =
+                new ObjectStore(Utils.join(path), remoteJournal);
+            MessageIndex remoteMessages =
+                new MessageIndex(Utils.join(path, "messages"), remote);
+            for (Commit cm: new Transfer(OBJECTS, graph(), remote)
+                     .send(_headId)) {
+                remoteMessages.add(cm.getCommitId(), cm.getMessage());
             }
-            Utils.writeContents(givenBranch, _headId);
+            remoteMessages.save(remoteJournal);
+            saveReach();
+            remoteJournal.write(givenBranch,
+                                _headId.getBytes(StandardCharsets.UTF_8));
+            remoteJournal.commit();
         } else {
             System.out.println("Please pull down remote "
                     + "changes before pushing.");
@@ -635,32 +818,18 @@ public class CommandClass {
             System.out.println("That remote does not have that branch.");
             return;
         }
-        String newBranch = name + "/" + branchName;
-        if (!Utils.join(BRANCHES_DIR, newBranch).exists()) {
-            branch(newBranch);
-        }
-        File remoteCmPath = Utils.join(path, "commits");
-        List<String> remoteCm = Utils.plainFilenamesIn(remoteCmPath);
-        ArrayList<String> commits = new ArrayList<>();
-        Commit curr = getCommit(_headId);
         String rmCommitid = Utils.readContentsAsString(givenBranch);
-        commits.add(_headId);
-        while (curr.getParent() != null) {
-            if (curr.getParent2() != null) {
-                commits.add(curr.getParent2());
-            }
-            commits.add(curr.getParent());
-            curr = getCommit(curr.getParent());
-        }
-        for (String rmcm: remoteCm) {
-            if (commits.contains(rmcm)) {
-                Utils.writeObject(Utils.join(COMMIT_DIR, rmcm),
-                        getCommit(rmcm));
-            }
-        }
-        newBranch = newBranch.replace("/", "");
-        File branch = Utils.join(BRANCHES_DIR, newBranch);
-        Utils.writeContents(branch, rmCommitid);
+        ObjectStore remote = new ObjectStore(Utils.join(path));
+        CommitGraph remoteGraph =
+            new CommitGraph(Utils.join(path, "commit-graph"), remote);
+        for (Commit cm: new Transfer(remote, remoteGraph, OBJECTS)
+                 .send(rmCommitid)) {
+            messages().add(cm.getCommitId(), cm.getMessage());
+        }
+        messages().save(JOURNAL);
+        graph().index(rmCommitid);
+        graph().save(JOURNAL);
+        writeRef(Utils.join(BRANCHES_DIR, name + branchName), rmCommitid);
     }
 
     /**
@@ -673,33 +842,45 @@ public class CommandClass {
     public void pull(String name, String branchName) throws IOException {
         String newBranch = name + "/" + branchName;
         fetch(name, branchName);
+        JOURNAL.flush();
         merge(newBranch);
     }
     /**
-     * Write the merge conflict where the contents of
-     * both branches are changed and different from other.
-     * @param fileName The given branch name
-     * @param curr The current commit blob
-     * @param given The given commit blob
+     * Write the line-by-line merge of a file whose contents in both
+     * branches are changed and different from each other, marking only
+     * the lines changed differently in both as conflicts.
+     * @param fileName The given file name
+     * @param split The split point blob id, or null if there is none
+     * @param curr The current commit blob id
+     * @param given The given commit blob id
+     * @return true iff the merge has conflicts
      */
-    public void writeConflict(String fileName, Blobs curr, Blobs given) {
+    public boolean mergeFile(String fileName, String split, String curr,
+                             String given) {
         File file = Utils.join(CWD, fileName);
-        Utils.writeContents(file, "<<<<<<< HEAD\n",
-                curr.getContent(), "=======\n",
-                given.getContent(), ">>>>>>>\n");
+        boolean conflict;
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(file.toPath()))) {
+            conflict = Diff3.merge(split == null ? new byte[0]
+                    : Blobs.read(split), Blobs.read(curr),
+                    Blobs.read(given), out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
         add(fileName);
+        return conflict;
     }
 
     /**
      * Write the merge conflict where the content of the current commit
      * is changed and the given branch's files are deleted.
      * @param fileName The given file name
-     * @param curr The current commit blob
+     * @param curr The current commit blob id
      */
-    public void writeConflictGivenDeleted(String fileName, Blobs curr) {
+    public void writeConflictGivenDeleted(String fileName, String curr) {
         File file = Utils.join(CWD, fileName);
         Utils.writeContents(file, "<<<<<<< HEAD\n",
-                curr.getContent(), "=======\n", ">>>>>>>\n");
+                Blobs.read(curr), "=======\n", ">>>>>>>\n");
         add(fileName);
     }
 
@@ -707,54 +888,116 @@ public class CommandClass {
      * Write the merge conflict where the content of the given commit
      * is changed and the current commit's files are deleted.
      * @param fileName The given file name
-     * @param given The given commit blob
+     * @param given The given commit blob id
      */
-    public void writeConflictCurrDeleted(String fileName, Blobs given) {
+    public void writeConflictCurrDeleted(String fileName, String given) {
         File file = Utils.join(CWD, fileName);
         Utils.writeContents(file, "<<<<<<< HEAD\n", "=======\n",
-                given.getContent(), ">>>>>>>\n");
+                Blobs.read(given), ">>>>>>>\n");
         add(fileName);
     }
 
     /**
-     * Find the split point for the merge command.
-     * @param curr The current commit
-     * @param given The given commit
-     * @return The commit of the splitting point
+     * Import the commits described by the given stream, in the format
+     * read by FastImport, into a single new pack, and report how fast
+     * objects were stored.  Branches the commits are on are created or
+     * moved; the working files and staging area are left alone.
+     * @param input The stream of commits
+     * @throws IOException
      */
-    public Commit findSplit(Commit curr, Commit given) {
-        ArrayList<String> currList = new ArrayList<>();
-        currList.add(curr.getCommitId());
-        while (curr.getParent() != null) {
-            if (curr.getParent2() != null) {
-                currList.add(curr.getParent2());
+    public void fastImport(InputStream input) throws IOException {
+        long start = System.nanoTime();
+        LinkedHashMap<String, String> tips = new LinkedHashMap<>();
+        for (String branch : Utils.plainFilenamesIn(BRANCHES_DIR)) {
+            if (!branch.equals(CURR_BRANCH.getName())) {
+                tips.put(branch, Utils.readContentsAsString(
+                        Utils.join(BRANCHES_DIR, branch)));
             }
-            currList.add(curr.getParent());
-            curr = getCommit(curr.getParent());
-        }
-        HashMap<Integer, String> splitList = new HashMap<>();
-        while (Utils.join(COMMIT_DIR, given.getCommitId()).exists()
-                && given.getParent() != null) {
-            if (currList.contains(given.getCommitId())) {
-                splitList.put(currList.
-                        indexOf(given.getCommitId()), given.getCommitId());
+        }
+        LinkedHashMap<String, String> before = new LinkedHashMap<>(tips);
+        FastImport importer = new FastImport(OBJECTS, tips, _headId);
+        List<Commit> commits = importer.run(input);
+        for (Commit commit : commits) {
+            graph().index(commit.getCommitId());
+            messages().add(commit.getCommitId(), commit.getMessage());
+        }
+        graph().save(JOURNAL);
+        messages().save(JOURNAL);
+        for (String branch : tips.keySet()) {
+            if (!tips.get(branch).equals(before.get(branch))) {
+                writeRef(Utils.join(BRANCHES_DIR, branch), tips.get(branch));
             }
-            if (given.getParent() != null) {
-                if (given.getParent2() != null) {
-                    if (currList.contains(given.getParent2())) {
-                        splitList.put(currList.indexOf(
-                                given.getParent2()), given.getParent2());
-                    }
-                } else if (currList.contains(given.getParent())) {
-                    splitList.put(currList.
-                            indexOf(given.getParent()), given.getParent());
+        }
+        String head = tips.get(_currentBranch);
+        if (head != null && !head.equals(_headId)) {
+            _headId = head;
+            writeRef(HEAD, _headId);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int objects = commits.size() + importer.blobs();
+        System.out.printf("Imported %d commits and %d blobs in %.2f s "
+                + "(%.0f objects/sec).%n", commits.size(), importer.blobs(),
+                seconds, objects / Math.max(seconds, 1e-9));
+    }
+
+    /**
+     * Pack all commits, trees and blobs into a single pack, storing
+     * versions of the same file as deltas against each other where that
+     * saves space.  A tree node shared by several commits is read once.
+     * Commits still in the old serialized format are rewritten in the
+     * current one on the way.
+     */
+    public void gc() {
+        LinkedHashMap<String, List<String>> versions = new LinkedHashMap<>();
+        HashSet<String> seen = new HashSet<>();
+        HashSet<String> trees = new HashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        queue.add(_headId);
+        for (String branch: Utils.plainFilenamesIn(BRANCHES_DIR)) {
+            if (!branch.equals(CURR_BRANCH.getName())) {
+                queue.add(Utils.readContentsAsString(
+                        Utils.join(BRANCHES_DIR, branch)));
+            }
+        }
+        queue.addAll(OBJECTS.list(ObjectStore.COMMIT));
+        while (!queue.isEmpty()) {
+            String id = queue.poll();
+            if (id.isEmpty() || !seen.add(id)
+                    || !OBJECTS.contains(ObjectStore.COMMIT, id)) {
+                continue;
+            }
+            Commit commit = getCommit(id);
+            BiConsumer<String, String> version = (file, blob) -> {
+                List<String> ids = versions.computeIfAbsent(file,
+                        k -> new ArrayList<>());
+                if (!ids.contains(blob)) {
+                    ids.add(blob);
                 }
+            };
+            if (commit.getTree() != null) {
+                Tree.walk(TREES, commit.getTree(), trees::add, version);
+            } else {
+                commit.getBlobs().forEach(version);
+            }
+            if (commit.getParent() != null) {
+                queue.addFirst(commit.getParent());
             }
-            given = getCommit(given.getParent());
         }
-        ArrayList<Integer> key = new ArrayList<>(splitList.keySet());
-        Collections.sort(key);
-        return getCommit(splitList.get(key.get(0)));
+        OBJECTS.repack(versions.values(),
+                       bytes -> Codec.upgradeCommit(bytes, OBJECTS));
+    }
+
+    /**
+     * Find the split point for the merge command.
+     * @param curr The current commit
+     * @param given The given commit
+     * @return The commit of the splitting point
+     */
+    public Commit findSplit(Commit curr, Commit given) {
+        String split = reach().mergeBase(curr.getCommitId(),
+                given.getCommitId());
+        saveReach();
+        return getCommit(split);
     }
 
     /**
@@ -768,7 +1011,7 @@ public class CommandClass {
             System.out.println("You have uncommitted changes.");
             return true;
         }
-        File branch = Utils.join(BRANCHES_DIR, branchName);
+        File branch = Utils.join(BRANCHES_DIR, branchName.replace("/", ""));
         if (!branch.exists()) {
             System.out.println("A branch with that name does not exist.");
             return true;
@@ -781,18 +1024,17 @@ public class CommandClass {
     }
 
     /**
-     * Find the given commit id exists or not.
-     * @param commitId The given commit id
+     * Find the commit whose id starts with the given abbreviation.
+     * @param commitId The given commit id, possibly abbreviated
      * @return return the commit id or null if DNE
+     * @throws GitletException if more than one commit id starts with it
      */
     public String findCommitId(String commitId) {
-        List<String> commits = Utils.plainFilenamesIn(COMMIT_DIR);
-        for (String eachId: commits) {
-            if (eachId.substring(0, commitId.length()).equals(commitId)) {
-                return eachId;
-            }
+        List<String> found = OBJECTS.resolve(ObjectStore.COMMIT, commitId, 2);
+        if (found.size() > 1) {
+            throw Utils.error("Ambiguous commit id.");
         }
-        return null;
+        return found.isEmpty() ? null : found.get(0);
     }
 
     /**
@@ -801,7 +1043,74 @@ public class CommandClass {
      * @return the specified commit
      */
     public Commit getCommit(String commitId) {
-        return Utils.readObject(Utils.join(COMMIT_DIR, commitId), Commit.class);
+        Commit commit = COMMITS.get(commitId);
+        if (commit == null) {
+            byte[] bytes = OBJECTS.read(ObjectStore.COMMIT, commitId);
+            commit = Codec.decodeCommit(bytes, OBJECTS);
+            COMMITS.put(commit, bytes.length);
+        }
+        return commit;
+    }
+
+    /** Return the commit with id COMMITID as for getCommit, or null if
+     *  it was saved by an older version of gitlet, so that reading it
+     *  would write its blobs.  Safe to call from several threads. */
+    private Commit getCurrentCommit(String commitId) {
+        Commit commit = COMMITS.get(commitId);
+        if (commit == null) {
+            byte[] bytes = OBJECTS.read(ObjectStore.COMMIT, commitId);
+            if (Codec.isLegacy(bytes)) {
+                return null;
+            }
+            commit = Codec.decodeCommit(bytes, OBJECTS);
+            COMMITS.put(commit, bytes.length);
+        }
+        return commit;
+    }
+
+    /**
+     * The helper method of getting the commit graph.
+     * @return the commit graph
+     */
+    CommitGraph graph() {
+        if (_graph == null) {
+            _graph = new CommitGraph(COMMIT_GRAPH, OBJECTS);
+        }
+        return _graph;
+    }
+
+    /**
+     * The helper method of getting the reachability bitmaps.
+     * @return the reachability bitmaps
+     */
+    Reachability reach() {
+        if (_reach == null) {
+            _reach = new Reachability(BITMAPS, graph());
+        }
+        return _reach;
+    }
+
+    /** Save the commit graph, then the bitmaps of the branch tips. */
+    private void saveReach() {
+        graph().save(JOURNAL);
+        ArrayList<String> tips = new ArrayList<>();
+        tips.add(_headId);
+        for (String branch: Utils.plainFilenamesIn(BRANCHES_DIR)) {
+            tips.add(Utils.readContentsAsString(
+                    Utils.join(BRANCHES_DIR, branch)));
+        }
+        reach().save(JOURNAL, tips);
+    }
+
+    /**
+     * The helper method of getting the message index.
+     * @return the message index
+     */
+    MessageIndex messages() {
+        if (_messages == null) {
+            _messages = new MessageIndex(MESSAGE_INDEX, OBJECTS);
+        }
+        return _messages;
     }
 
     /**
@@ -809,21 +1118,31 @@ public class CommandClass {
      * @return A LinkedHashMap consisting of modified files
      */
     public LinkedHashMap<String, String> getModifiedFiles() {
-        Commit commit = getCommit(_headId);
+        return getModifiedFiles(getCommit(_headId).getBlobs());
+    }
+
+    /**
+     * Get the modified files for status command.
+     * @param commitBlobs The files of the head commit
+     * @return A LinkedHashMap consisting of modified files
+     */
+    private LinkedHashMap<String, String> getModifiedFiles(
+            LinkedHashMap<String, String> commitBlobs) {
         LinkedHashMap<String, String> modified = new LinkedHashMap<>();
-        LinkedHashMap<String, Blobs> commitBlobs = commit.getBlobs();
         List<String> workingFiles = Utils.plainFilenamesIn(CWD);
         for (String file: workingFiles) {
-            Blobs blob = new Blobs(file);
+            String hash = _index.hash(file);
             if ((commitBlobs.containsKey(file)
-                    && !commitBlobs.get(file).getHash().equals(blob.getHash())
+                    && !commitBlobs.get(file).equals(hash)
                     && (!stagingArea.getAdded().containsKey(file)))
                     || (stagingArea.getAdded().containsKey(file)
                     && (!stagingArea.getAdded().get(file).
-                    getHash().equals(blob.getHash())))) {
+                    equals(hash)))) {
                 modified.put(file, " (modified)");
             }
         }
+        _index.retain(workingFiles);
+        _index.save(JOURNAL, INDEX);
         for (String file: commitBlobs.keySet()) {
             if ((!workingFiles.contains(file)
                     && stagingArea.getAdded().containsKey(file))
@@ -841,9 +1160,17 @@ public class CommandClass {
      * @return A LinkedHashMap consisting of untracked files
      */
     public ArrayList<String> getUntrackedFiles() {
-        Commit commit = getCommit(_headId);
+        return getUntrackedFiles(getCommit(_headId).getBlobs());
+    }
+
+    /**
+     * Get the untracked files for status command.
+     * @param commitBlobs The files of the head commit
+     * @return A LinkedHashMap consisting of untracked files
+     */
+    private ArrayList<String> getUntrackedFiles(
+            LinkedHashMap<String, String> commitBlobs) {
         ArrayList<String> untracked = new ArrayList<>();
-        LinkedHashMap<String, Blobs> commitBlobs = commit.getBlobs();
         List<String> workingFiles = Utils.plainFilenamesIn(CWD);
         for (String file: workingFiles) {
             if (!stagingArea.getAdded().containsKey(file)
@@ -7,10 +7,18 @@ import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.LinkedHashMap;
 
-/** The Commit Class denoting a Commit object.
+/** The Commit Class denoting a Commit object.  Commits made by older
+ *  versions of gitlet, and the initial commit, list their files directly;
+ *  others name the root of a Tree, whose files are read from the
+ *  repository only when asked for.
  * @author Mengmeng Yang
  */
 public class Commit implements Serializable {
+    /** Fixed so that commits serialized by older versions can be read. */
+    private static final long serialVersionUID = 5740860010195983649L;
+    /** The format of commit timestamps. */
+    static final DateTimeFormatter DATE =
+        DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z");
     /** commit message. */
     private String _message;
     /** commit timestamp.*/
@@ -21,18 +29,22 @@ public class Commit implements Serializable {
     private String _parent2;
     /** commit id. */
     private String _commitId;
-    /** commit blobs.*/
-    private LinkedHashMap<String, Blobs> _fileToBlobs;
+    /** commit blobs, mapping each tracked file name to its blob id, or
+     *  null if the commit has a tree. */
+    private LinkedHashMap<String, String> _fileToBlobs;
+    /** id of the root of the tree of commit blobs, or null if the commit
+     *  lists its blobs directly. */
+    private String _tree;
 
     /**
      * The commit constructor.
      * @param message commit message
      * @param parent commit parent
      * @param parent2 commit parent2
-     * @param fileToBlobs commit blobs
+     * @param fileToBlobs commit blob ids
      */
     public Commit(String message, String parent,
-                  String parent2, LinkedHashMap<String, Blobs> fileToBlobs) {
+                  String parent2, LinkedHashMap<String, String> fileToBlobs) {
         _message = message;
         _parent = parent;
         _parent2 = parent2;
@@ -40,25 +52,92 @@ public class Commit implements Serializable {
             _timestamp = new SimpleDateFormat(
                     "EEE MMM d HH:mm:ss yyyy Z").format(new Date(0));
         } else {
-            ZonedDateTime currentTime = ZonedDateTime.now();
-            DateTimeFormatter formatter = DateTimeFormatter.
-                    ofPattern("EEE MMM d HH:mm:ss yyyy Z");
-            _timestamp = currentTime.format(formatter);
+            _timestamp = ZonedDateTime.now().format(DATE);
         }
         _fileToBlobs = fileToBlobs;
         hash();
     }
 
-    /** Compute the commid id.*/
+    /**
+     * The constructor of a commit whose files are those of a tree.
+     * @param message commit message
+     * @param timestamp commit timestamp
+     * @param parent commit parent
+     * @param parent2 commit parent2
+     * @param tree commit tree id
+     */
+    Commit(String message, String timestamp, String parent, String parent2,
+           String tree) {
+        _message = message;
+        _timestamp = timestamp;
+        _parent = parent;
+        _parent2 = parent2;
+        _tree = tree;
+        hash();
+    }
+
+    /**
+     * The constructor of a commit read back from storage.
+     * @param message commit message
+     * @param timestamp commit timestamp
+     * @param parent commit parent
+     * @param parent2 commit parent2
+     * @param commitId commit id
+     * @param fileToBlobs commit blob ids
+     */
+    Commit(String message, String timestamp, String parent, String parent2,
+           String commitId, LinkedHashMap<String, String> fileToBlobs) {
+        _message = message;
+        _timestamp = timestamp;
+        _parent = parent;
+        _parent2 = parent2;
+        _commitId = commitId;
+        _fileToBlobs = fileToBlobs;
+    }
+
+    /**
+     * The constructor of a commit with a tree read back from storage.
+     * @param message commit message
+     * @param timestamp commit timestamp
+     * @param parent commit parent
+     * @param parent2 commit parent2
+     * @param commitId commit id
+     * @param tree commit tree id
+     */
+    Commit(String message, String timestamp, String parent, String parent2,
+           String commitId, String tree) {
+        _message = message;
+        _timestamp = timestamp;
+        _parent = parent;
+        _parent2 = parent2;
+        _commitId = commitId;
+        _tree = tree;
+    }
+
+    /** Compute the commid id.  A commit with a tree is hashed with the
+     *  tree id, so that its files need not be listed. */
     public void hash() {
-        _commitId = Utils.sha1(_message + _timestamp
-                + _parent + _fileToBlobs.toString());
+        if (_tree != null) {
+            _commitId = Utils.sha1(_message, _timestamp,
+                    String.valueOf(_parent), _tree);
+        } else {
+            _commitId = Utils.sha1(_message + _timestamp
+                    + _parent + _fileToBlobs.toString());
+        }
     }
 
     /** Print the commit info. */
     public void printInfo() {
-        System.out.println("===\n" + "commit " + _commitId + "\n" + "Date: "
-                + _timestamp + "\n" + _message + "\n");
+        System.out.println(info());
+    }
+
+    /**
+     * The commit info printed by log, less the newline println adds.
+     * @return the commit info
+     */
+    public String info() {
+        return "===\n" + "commit " + _commitId + "\n" + "Date: "
+                + _timestamp + "\n" + _message + "\n";
     }
 
     /**
@@ -98,10 +177,47 @@ public class Commit implements Serializable {
         return _commitId;
     }
 
-    /** Getter for fileToBlobs.
-     * @return commit blobs
+    /** Getter for fileToBlobs.  The files of a commit with a tree are
+     *  read from the repository's tree on each call and not kept, since
+     *  commits are shared through the commit cache, which is charged only
+     *  for their encoded size; callers needing them more than once keep
+     *  the result.
+     * @return commit blob ids
      */
-    public LinkedHashMap<String, Blobs> getBlobs() {
+    public LinkedHashMap<String, String> getBlobs() {
+        if (_tree != null) {
+            return Tree.files(CommandClass.TREES, _tree);
+        }
         return _fileToBlobs;
     }
+
+    /** Return the blob id of the given file, reading only the part of
+     *  the tree that holds it.
+     * @param fileName The file name
+     * @return the blob id, or null if the file is not tracked
+     */
+    public String getBlob(String fileName) {
+        if (_tree == null) {
+            return _fileToBlobs.get(fileName);
+        }
+        return Tree.get(CommandClass.TREES, _tree, fileName);
+    }
+
+    /** Store the contents of the Blobs that a commit of an older version
+     *  of gitlet lists in place of blob ids, and list their ids instead.
+     *  The commit keeps its id.
+     * @param objects The object store the contents are written to
+     */
+    void upgrade(ObjectStore objects) {
+        if (_fileToBlobs != null) {
+            Blobs.upgrade(_fileToBlobs, objects);
+        }
+    }
+
+    /** Getter for tree.
+     * @return commit tree id, or null if the commit lists its blobs
+     */
+    public String getTree() {
+        return _tree;
+    }
 }
@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A least-recently-used cache of decoded commits, keyed by commit id and
+ *  bounded by the total size of the commits' encoded forms.  Commits never
+ *  change once written, so cached entries never go stale.
+ *  @author Mengmeng Yang
+ */
+class CommitCache {
+
+    /**
+     * A cache holding commits whose encoded sizes add up to at most
+     * CAPACITY bytes.
+     * @param capacity The capacity in bytes
+     */
+    CommitCache(long capacity) {
+        _capacity = capacity;
+        _entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /** Return the commit with id ID, or null if it is not cached. */
+    synchronized Commit get(String id) {
+        Entry entry = _entries.get(id);
+        if (entry == null) {
+            _misses += 1;
+            return null;
+        }
+        _hits += 1;
+        return entry._commit;
+    }
+
+    /** Cache COMMIT, whose encoded form is SIZE bytes long, evicting the
+     *  least recently used commits as needed. */
+    synchronized void put(Commit commit, int size) {
+        if (size > _capacity) {
+            return;
+        }
+        Entry old = _entries.put(commit.getCommitId(),
+                                 new Entry(commit, size));
+        if (old != null) {
+            _bytes -= old._size;
+        }
+        _bytes += size;
+        Iterator<Entry> eldest = _entries.values().iterator();
+        while (_bytes > _capacity) {
+            _bytes -= eldest.next()._size;
+            eldest.remove();
+        }
+    }
+
+    /** Return the number of commits cached. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Return the total encoded size of the commits cached. */
+    synchronized long bytes() {
+        return _bytes;
+    }
+
+    /** Return the number of lookups that found their commit. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that did not find their commit. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** A cached commit and its encoded size. */
+    private static class Entry {
+        /**
+         * An entry for COMMIT of encoded size SIZE.
+         * @param commit The commit
+         * @param size The encoded size
+         */
+        Entry(Commit commit, int size) {
+            _commit = commit;
+            _size = size;
+        }
+
+        /** the commit. */
+        private final Commit _commit;
+        /** encoded size of the commit. */
+        private final int _size;
+    }
+
+    /** Largest total encoded size kept. */
+    private final long _capacity;
+    /** Cached entries, least recently used first. */
+    private final Map<String, Entry> _entries;
+    /** Total encoded size of the entries. */
+    private long _bytes;
+    /** Number of lookups that found their commit. */
+    private long _hits;
+    /** Number of lookups that did not find their commit. */
+    private long _misses;
+}
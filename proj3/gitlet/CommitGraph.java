@@ -0,0 +1,321 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** The commit graph of a repository: the parents and generation number of
+ *  every commit, kept in int arrays so that ancestry questions need no
+ *  commit to be read and deserialized.  The generation of a commit is one
+ *  more than the largest generation of its parents (1 for the initial
+ *  commit), so an ancestor always has a smaller generation than its
+ *  descendants.
+ *
+ *  The graph is stored in an append-only file of fixed-size records, one
+ *  per commit: the 20-byte id, then the record numbers of the two parents
+ *  (-1 if absent) and the generation as ints.  Parents always precede
+ *  their children, so new commits are simply appended.
+ *  @author Mengmeng Yang
+ */
+class CommitGraph {
+
+    /** Size of one record in bytes. */
+    static final int RECORD = PackFile.ID_BYTES + 12;
+    /** Flag for commits reached from the first commit of a query. */
+    private static final int FROM_A = 1;
+    /** Flag for commits reached from the second commit of a query. */
+    private static final int FROM_B = 2;
+
+    /**
+     * The commit graph stored in FILE, whose missing commits are read
+     * from OBJECTS.
+     * @param file The commit graph file
+     * @param objects The object store
+     */
+    CommitGraph(File file, ObjectStore objects) {
+        _file = file;
+        _objects = objects;
+        _ids = new String[16];
+        _parents = new int[32];
+        _generations = new int[16];
+        _indices = new HashMap<>();
+        if (!file.isFile()) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(file));
+        int n = buf.remaining() / RECORD;
+        _rewrite = buf.remaining() % RECORD != 0;
+        byte[] raw = new byte[PackFile.ID_BYTES];
+        for (int k = 0; k < n; k += 1) {
+            buf.get(raw);
+            int p1 = buf.getInt(), p2 = buf.getInt(), gen = buf.getInt();
+            if (p1 >= k || p2 >= k) {
+                _rewrite = true;
+                break;
+            }
+            append(Utils.toHex(raw), p1, p2, gen);
+        }
+        _saved = _size;
+    }
+
+    /** Return the number of commits in the graph. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the record number of commit ID, adding it and any missing
+     *  ancestors to the graph first. */
+    int index(String id) {
+        Integer k = _indices.get(id);
+        if (k != null) {
+            return k;
+        }
+        ArrayDeque<String> stack = new ArrayDeque<>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            String top = stack.peek();
+            if (_indices.containsKey(top)) {
+                stack.pop();
+                continue;
+            }
+            Commit commit = Codec.readCommit(_objects, top);
+            String p1 = commit.getParent(), p2 = commit.getParent2();
+            if (p1 != null && !_indices.containsKey(p1)) {
+                stack.push(p1);
+            } else if (p2 != null && !_indices.containsKey(p2)) {
+                stack.push(p2);
+            } else {
+                stack.pop();
+                int i1 = p1 == null ? -1 : _indices.get(p1);
+                int i2 = p2 == null ? -1 : _indices.get(p2);
+                int gen = 1 + Math.max(i1 < 0 ? 0 : _generations[i1],
+                                       i2 < 0 ? 0 : _generations[i2]);
+                append(top, i1, i2, gen);
+            }
+        }
+        return _indices.get(id);
+    }
+
+    /** Return the record number of commit ID, or null if it is not in
+     *  the graph. */
+    Integer find(String id) {
+        return _indices.get(id);
+    }
+
+    /** Return the SHA-1 of the ids of the first N commits, which differs
+     *  for graphs that number those commits differently. */
+    String digest(int n) {
+        byte[] ids = new byte[n * PackFile.ID_BYTES];
+        for (int k = 0; k < n; k += 1) {
+            System.arraycopy(Utils.fromHex(_ids[k]), 0, ids,
+                             k * PackFile.ID_BYTES, PackFile.ID_BYTES);
+        }
+        return Utils.sha1((Object) ids);
+    }
+
+    /** Return the id of commit number K. */
+    String id(int k) {
+        return _ids[k];
+    }
+
+    /** Return the record number of the first parent of commit K, or -1. */
+    int parent(int k) {
+        return _parents[2 * k];
+    }
+
+    /** Return the record number of the second parent of commit K, or -1. */
+    int parent2(int k) {
+        return _parents[2 * k + 1];
+    }
+
+    /** Return the generation number of commit K. */
+    int generation(int k) {
+        return _generations[k];
+    }
+
+    /** Return true iff commit ANCESTOR is reachable from commit ID
+     *  (including when they are the same commit). */
+    boolean isAncestor(String ancestor, String id) {
+        int a = index(ancestor), start = index(id);
+        int minGen = _generations[a];
+        boolean[] seen = new boolean[_size];
+        int[] queue = new int[_size];
+        int head = 0, tail = 0;
+        queue[tail] = start;
+        tail += 1;
+        seen[start] = true;
+        while (head < tail) {
+            int k = queue[head];
+            head += 1;
+            if (k == a) {
+                return true;
+            }
+            if (_generations[k] <= minGen) {
+                continue;
+            }
+            for (int i = 2 * k; i < 2 * k + 2; i += 1) {
+                int p = _parents[i];
+                if (p >= 0 && !seen[p]) {
+                    seen[p] = true;
+                    queue[tail] = p;
+                    tail += 1;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Return the id of a best common ancestor of commits A and B: one
+     *  that is not an ancestor of any other common ancestor.  Commits are
+     *  visited in decreasing order of generation, so every descendant of a
+     *  commit that is reachable from A or B has already passed on its flags
+     *  when the commit is visited, and the first commit reached from both
+     *  is a best common ancestor.  Returns null if there is none. */
+    String mergeBase(String a, String b) {
+        int ia = index(a), ib = index(b);
+        int[] flags = new int[_size];
+        Heap queue = new Heap(_size);
+        flags[ia] |= FROM_A;
+        flags[ib] |= FROM_B;
+        queue.push(ia);
+        if (ib != ia) {
+            queue.push(ib);
+        }
+        while (!queue.isEmpty()) {
+            int k = queue.pop();
+            if (flags[k] == (FROM_A | FROM_B)) {
+                return _ids[k];
+            }
+            for (int i = 2 * k; i < 2 * k + 2; i += 1) {
+                int p = _parents[i];
+                if (p >= 0 && (flags[p] | flags[k]) != flags[p]) {
+                    if (flags[p] == 0) {
+                        queue.push(p);
+                    }
+                    flags[p] |= flags[k];
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Write the commits added since the graph was read to its file
+     *  through JOURNAL. */
+    void save(Journal journal) {
+        if (_saved == _size && !_rewrite) {
+            return;
+        }
+        int from = _rewrite ? 0 : _saved;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer record = ByteBuffer.allocate(RECORD);
+        for (int k = from; k < _size; k += 1) {
+            record.clear();
+            record.put(Utils.fromHex(_ids[k]));
+            record.putInt(parent(k)).putInt(parent2(k))
+                .putInt(_generations[k]);
+            out.write(record.array(), 0, RECORD);
+        }
+        if (_rewrite) {
+            journal.write(_file, out.toByteArray());
+        } else {
+            journal.append(_file, out.toByteArray());
+        }
+        _saved = _size;
+        _rewrite = false;
+    }
+
+    /** Add commit ID with parents P1 and P2 and generation GEN. */
+    private void append(String id, int p1, int p2, int gen) {
+        if (_size == _ids.length) {
+            _ids = Arrays.copyOf(_ids, 2 * _size);
+            _parents = Arrays.copyOf(_parents, 4 * _size);
+            _generations = Arrays.copyOf(_generations, 2 * _size);
+        }
+        _ids[_size] = id;
+        _parents[2 * _size] = p1;
+        _parents[2 * _size + 1] = p2;
+        _generations[_size] = gen;
+        _indices.put(id, _size);
+        _size += 1;
+    }
+
+    /** A binary max-heap of record numbers ordered by generation, for
+     *  traversals in which each commit is pushed at most once. */
+    private class Heap {
+
+        /** An empty heap with room for CAPACITY commits. */
+        Heap(int capacity) {
+            _items = new int[capacity];
+        }
+
+        /** Return true iff the heap is empty. */
+        boolean isEmpty() {
+            return _count == 0;
+        }
+
+        /** Add commit K. */
+        void push(int k) {
+            int i = _count;
+            _count += 1;
+            while (i > 0) {
+                int up = (i - 1) / 2;
+                if (_generations[_items[up]] >= _generations[k]) {
+                    break;
+                }
+                _items[i] = _items[up];
+                i = up;
+            }
+            _items[i] = k;
+        }
+
+        /** Remove and return a commit of the largest generation. */
+        int pop() {
+            int top = _items[0];
+            _count -= 1;
+            int last = _items[_count];
+            int i = 0;
+            while (2 * i + 1 < _count) {
+                int child = 2 * i + 1;
+                if (child + 1 < _count
+                    && _generations[_items[child + 1]]
+                       > _generations[_items[child]]) {
+                    child += 1;
+                }
+                if (_generations[_items[child]] <= _generations[last]) {
+                    break;
+                }
+                _items[i] = _items[child];
+                i = child;
+            }
+            _items[i] = last;
+            return top;
+        }
+
+        /** The commits, in heap order. */
+        private final int[] _items;
+        /** Number of commits in the heap. */
+        private int _count;
+    }
+
+    /** The commit graph file. */
+    private final File _file;
+    /** The object store missing commits are read from. */
+    private final ObjectStore _objects;
+    /** Commit ids by record number. */
+    private String[] _ids;
+    /** The two parents of each record, -1 if absent. */
+    private int[] _parents;
+    /** Generation numbers by record number. */
+    private int[] _generations;
+    /** Record numbers by commit id. */
+    private HashMap<String, Integer> _indices;
+    /** Number of records. */
+    private int _size;
+    /** Number of records already in the file. */
+    private int _saved;
+    /** True if the file is damaged and must be rewritten entirely. */
+    private boolean _rewrite;
+}
@@ -0,0 +1,193 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+
+/** A long-running gitlet server for one repository, started with
+ *  "java gitlet.Main daemon" in the repository's working directory.  It
+ *  runs the commands that Client forwards over a Unix-domain socket in
+ *  the .gitlet folder one at a time, so the JVM, the open packs, the
+ *  commit graph, the message index and the commit cache stay warm from
+ *  one command to the next.
+ *
+ *  A request is the number of arguments as an int followed by each
+ *  argument in modified UTF-8, as written by DataOutputStream; the reply
+ *  is the output of the command, after which the connection is closed.
+ *  The protocol is simple enough for scripts to speak directly, which
+ *  saves starting a JVM for Client as well.
+ *
+ *  A watcher thread notes any change to the .gitlet folder, its branches
+ *  and stages folders and its packs.  Before each command, if there was
+ *  such a change, the daemon compares the sizes and modification times of
+ *  the files there with those it recorded after its own last command,
+ *  and if another process has changed them it drops the cached state so
+ *  that it is read again.
+ *  @author Mengmeng Yang
+ */
+class Daemon {
+
+    /** Name of the socket file in the .gitlet folder. */
+    static final String SOCKET = "daemon.sock";
+    /** Request that stops the daemon. */
+    static final String STOP = "stop-daemon";
+    /** Folders of the .gitlet folder whose changes invalidate caches. */
+    static final String[] WATCHED = { ".", "branches", "stages", "packs" };
+
+    /**
+     * A daemon for the repository whose .gitlet folder is DIR.
+     * @param dir The .gitlet folder
+     */
+    Daemon(File dir) {
+        _dir = dir;
+        _socket = Utils.join(dir, SOCKET);
+    }
+
+    /** Serve requests until a STOP request arrives. */
+    void serve() throws IOException {
+        if (Client.connect(_socket) != null) {
+            System.out.println("A daemon is already running.");
+            return;
+        }
+        _socket.delete();
+        UnixDomainSocketAddress address =
+            UnixDomainSocketAddress.of(_socket.toPath());
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             WatchService watcher =
+                 FileSystems.getDefault().newWatchService()) {
+            server.bind(address);
+            Runtime.getRuntime().addShutdownHook(
+                new Thread(() -> _socket.delete()));
+            watch(watcher);
+            _stamp = stamp();
+            while (true) {
+                try (SocketChannel client = server.accept()) {
+                    if (!handle(client)) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            _socket.delete();
+        }
+    }
+
+    /** Run the request read from CLIENT, sending it the output.  Return
+     *  false iff it was a request to stop. */
+    private boolean handle(SocketChannel client) throws IOException {
+        DataInputStream in =
+            new DataInputStream(Channels.newInputStream(client));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        PrintStream stdout = System.out;
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+            Channels.newOutputStream(client)), false, "UTF-8");
+        System.setOut(out);
+        try {
+            if (args.length > 0 && args[0].equals(STOP)) {
+                return false;
+            } else if (args.length > 0 && args[0].equals("daemon")) {
+                System.out.println("A daemon is already running.");
+            } else {
+                if (_changed) {
+                    _changed = false;
+                    if (!stamp().equals(_stamp)) {
+                        CommandClass.reload();
+                    }
+                }
+                Main.run(args);
+            }
+        } catch (IOException | RuntimeException excp) {
+            CommandClass.reload();
+            System.out.println(excp);
+        } finally {
+            System.setOut(stdout);
+            out.flush();
+            _stamp = stamp();
+        }
+        return true;
+    }
+
+    /** Start a thread that sets _changed whenever one of the WATCHED
+     *  folders changes, using WATCHER. */
+    private void watch(WatchService watcher) throws IOException {
+        register(watcher);
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watcher.take();
+                    key.pollEvents();
+                    _changed = true;
+                    key.reset();
+                    register(watcher);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException
+                     | IOException excp) {
+                return;
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Register those WATCHED folders that exist with WATCHER.  Folders
+     *  already registered are unaffected. */
+    private void register(WatchService watcher) throws IOException {
+        for (String name : WATCHED) {
+            Path path = Utils.join(_dir, name).toPath();
+            if (path.toFile().isDirectory()) {
+                path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                              StandardWatchEventKinds.ENTRY_DELETE,
+                              StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+    }
+
+    /** Return a summary of the names, sizes and modification times of the
+     *  files in the WATCHED folders. */
+    private String stamp() {
+        StringBuilder result = new StringBuilder();
+        for (String name : WATCHED) {
+            File[] files = Utils.join(_dir, name).listFiles();
+            if (files == null) {
+                continue;
+            }
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.isFile() && !file.getName().equals(SOCKET)) {
+                    result.append(name).append('/').append(file.getName())
+                        .append(' ').append(file.length()).append(' ')
+                        .append(file.lastModified()).append('\n');
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    /** The .gitlet folder. */
+    private final File _dir;
+    /** The socket file. */
+    private final File _socket;
+    /** The stamp of the WATCHED folders after the last command. */
+    private String _stamp;
+    /** True if a WATCHED folder may have changed since the last
+     *  command. */
+    private volatile boolean _changed;
+}
@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Binary deltas between two versions of a blob.  A delta starts with the
+ *  length of the target as a varint, followed by instructions that rebuild
+ *  the target from the base: either COPY OFFSET LENGTH, which copies a
+ *  range of the base, or INSERT LENGTH BYTES, which inserts literal bytes.
+ *  @author Mengmeng Yang
+ */
+class Delta {
+
+    /** Size of the blocks of the base that are indexed for matching. */
+    static final int BLOCK = 16;
+    /** Instruction copying a range of the base. */
+    private static final int COPY = 1;
+    /** Instruction inserting literal bytes. */
+    private static final int INSERT = 2;
+
+    /**
+     * Return a delta that rebuilds the target from the base.
+     * @param base The base contents
+     * @param target The target contents
+     * @return the delta
+     */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utils.writeVarint(out, target.length);
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(blockHash(base, i), i);
+        }
+        int pending = 0;
+        int i = 0;
+        while (i + BLOCK <= target.length) {
+            Integer b = blocks.get(blockHash(target, i));
+            if (b == null || !Arrays.equals(base, b, b + BLOCK,
+                                            target, i, i + BLOCK)) {
+                i += 1;
+                continue;
+            }
+            int start = b, tstart = i;
+            while (start > 0 && tstart > pending
+                   && base[start - 1] == target[tstart - 1]) {
+                start -= 1;
+                tstart -= 1;
+            }
+            int end = b + BLOCK, tend = i + BLOCK;
+            while (end < base.length && tend < target.length
+                   && base[end] == target[tend]) {
+                end += 1;
+                tend += 1;
+            }
+            writeInsert(out, target, pending, tstart);
+            out.write(COPY);
+            Utils.writeVarint(out, start);
+            Utils.writeVarint(out, end - start);
+            i = pending = tend;
+        }
+        writeInsert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Return the target rebuilt from the base and a delta made by create.
+     * @param base The base contents
+     * @param delta The delta
+     * @return the target contents
+     */
+    static byte[] apply(byte[] base, byte[] delta) {
+        ByteBuffer in = ByteBuffer.wrap(delta);
+        byte[] result = new byte[(int) Utils.readVarint(in)];
+        int pos = 0;
+        while (in.hasRemaining()) {
+            int op = in.get();
+            if (op == COPY) {
+                int offset = (int) Utils.readVarint(in);
+                int len = (int) Utils.readVarint(in);
+                System.arraycopy(base, offset, result, pos, len);
+                pos += len;
+            } else if (op == INSERT) {
+                int len = (int) Utils.readVarint(in);
+                in.get(result, pos, len);
+                pos += len;
+            } else {
+                throw Utils.error("Corrupt delta.");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Append an instruction inserting DATA[FROM .. TO-1], if not empty.
+     * @param out The delta being written
+     * @param data The target contents
+     * @param from The first byte to insert
+     * @param to One past the last byte to insert
+     */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] data,
+                                    int from, int to) {
+        if (from < to) {
+            out.write(INSERT);
+            Utils.writeVarint(out, to - from);
+            out.write(data, from, to - from);
+        }
+    }
+
+    /**
+     * Return a hash of the BLOCK bytes of DATA starting at START.
+     * @param data The contents
+     * @param start The start of the block
+     * @return the block hash
+     */
+    private static int blockHash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = 31 * h + data[i];
+        }
+        return h;
+    }
+}
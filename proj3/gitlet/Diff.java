@@ -0,0 +1,133 @@
+package gitlet;
+
+import java.util.Arrays;
+
+/** A longest common subsequence of two sequences of ints, found with the
+ *  linear-space version of Myers' O(ND) difference algorithm: the middle
+ *  snake of the shortest edit script is found by searching forward from
+ *  the start and backward from the end at once, and the parts before and
+ *  after it are solved recursively.  Besides the two sequences, only two
+ *  int arrays of length about 2(N + M) are needed.
+ *  @author Mengmeng Yang
+ */
+class Diff {
+
+    /** Return an array giving for each element of A the index of the
+     *  element of B it is matched with in a longest common subsequence of
+     *  A and B, or -1 if it is not in the subsequence.  Matched indices
+     *  increase along A. */
+    static int[] match(int[] a, int[] b) {
+        int[] result = new int[a.length];
+        Arrays.fill(result, -1);
+        int size = a.length + b.length + 2;
+        new Diff(a, b, result, size).lcs(0, a.length, 0, b.length);
+        return result;
+    }
+
+    /**
+     * A search for the common subsequence of A and B, recorded in MATCH,
+     * with room for diagonals -SIZE to SIZE.
+     * @param a The first sequence
+     * @param b The second sequence
+     * @param match The index in B matched with each element of A
+     * @param size The largest diagonal searched
+     */
+    private Diff(int[] a, int[] b, int[] match, int size) {
+        _a = a;
+        _b = b;
+        _match = match;
+        _offset = size;
+        _forward = new int[2 * size + 1];
+        _backward = new int[2 * size + 1];
+    }
+
+    /** Match a longest common subsequence of A[ALO..AHI) and
+     *  B[BLO..BHI). */
+    private void lcs(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && _a[aLo] == _b[bLo]) {
+            _match[aLo] = bLo;
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && _a[aHi - 1] == _b[bHi - 1]) {
+            _match[aHi - 1] = bHi - 1;
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            return;
+        }
+        int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+        lcs(aLo, aLo + snake[0], bLo, bLo + snake[1]);
+        for (int x = snake[0], y = snake[1]; x < snake[2]; x += 1, y += 1) {
+            _match[aLo + x] = bLo + y;
+        }
+        lcs(aLo + snake[2], aHi, bLo + snake[3], bHi);
+    }
+
+    /** Return the start x, y and end x, y, relative to ALO and BLO, of the
+     *  middle snake of a shortest edit script from A[ALO..AHI) to
+     *  B[BLO..BHI).  The diagonal k holds the points with x - y = k; the
+     *  forward search records the furthest x reached on each diagonal,
+     *  the backward search the furthest distance back from the ends. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int[] vf = _forward, vb = _backward;
+        int off = _offset;
+        vf[off + 1] = 0;
+        vb[off + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && vf[off + k - 1]
+                                    < vf[off + k + 1])
+                    ? vf[off + k + 1] : vf[off + k - 1] + 1;
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m && _a[aLo + x] == _b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[off + k] = x;
+                int back = delta - k;
+                if (odd && back >= -(d - 1) && back <= d - 1
+                    && x + vb[off + back] >= n) {
+                    return new int[] { x0, y0, x, y };
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && vb[off + k - 1]
+                                    < vb[off + k + 1])
+                    ? vb[off + k + 1] : vb[off + k - 1] + 1;
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m
+                       && _a[aHi - 1 - x] == _b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vb[off + k] = x;
+                int fore = delta - k;
+                if (!odd && fore >= -d && fore <= d
+                    && vf[off + fore] + x >= n) {
+                    return new int[] { n - x, m - y, n - x0, m - y0 };
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** The first sequence. */
+    private final int[] _a;
+    /** The second sequence. */
+    private final int[] _b;
+    /** The index in _b matched with each element of _a, or -1. */
+    private final int[] _match;
+    /** Index of diagonal 0 in _forward and _backward. */
+    private final int _offset;
+    /** Furthest x reached on each diagonal searching forward. */
+    private final int[] _forward;
+    /** Furthest distance from the ends reached searching backward. */
+    private final int[] _backward;
+}
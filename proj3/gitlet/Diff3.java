@@ -0,0 +1,206 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** A three-way merge of the lines of two versions of a file that both
+ *  descend from a common base version.  Each version is matched against
+ *  the base with Diff; base lines matched in both versions are stable,
+ *  and the stretches between stable lines are merged as a whole.  A
+ *  stretch changed in only one version takes that version's lines, one
+ *  changed the same way in both takes either, and only one changed
+ *  differently in both becomes a conflict:
+ *      <<<<<<< HEAD
+ *      (current lines)=======
+ *      (given lines)>>>>>>>
+ *  Lines keep their line terminators, so a version whose last line has
+ *  none is merged exactly as it is.  The result is written out stretch
+ *  by stretch as slices of the three versions.
+ *  @author Mengmeng Yang
+ */
+class Diff3 {
+
+    /** Marker starting a conflict. */
+    static final byte[] START =
+        "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+    /** Marker separating the two sides of a conflict. */
+    static final byte[] MIDDLE =
+        "=======\n".getBytes(StandardCharsets.UTF_8);
+    /** Marker ending a conflict. */
+    static final byte[] END =
+        ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+
+    /** Write to OUT the merge of CURR and GIVEN, the contents of two
+     *  versions of a file, whose base version has contents BASE.  Return
+     *  true iff the merge has conflicts. */
+    static boolean merge(byte[] base, byte[] curr, byte[] given,
+                         OutputStream out) throws IOException {
+        return new Diff3(base, curr, given).write(out);
+    }
+
+    /**
+     * A merge of CURR and GIVEN against BASE.
+     * @param base The base contents
+     * @param curr The current contents
+     * @param given The given contents
+     */
+    private Diff3(byte[] base, byte[] curr, byte[] given) {
+        _base = new Lines(base);
+        _curr = new Lines(curr);
+        _given = new Lines(given);
+        int size = Integer.highestOneBit(
+            2 * (_base.size() + _curr.size() + _given.size()) + 1) * 2;
+        _table = new Lines[size];
+        _tableLine = new int[size];
+        for (Lines lines : new Lines[] { _base, _curr, _given }) {
+            for (int i = 0; i < lines.size(); i += 1) {
+                lines._ids[i] = number(lines, i);
+            }
+        }
+    }
+
+    /** Write the merge to OUT, returning true iff it has conflicts. */
+    private boolean write(OutputStream out) throws IOException {
+        int[] toCurr = Diff.match(_base._ids, _curr._ids);
+        int[] toGiven = Diff.match(_base._ids, _given._ids);
+        boolean conflict = false;
+        int b = 0, c = 0, g = 0;
+        int n = _base.size();
+        while (true) {
+            int s = b;
+            while (s < n && (toCurr[s] < 0 || toGiven[s] < 0)) {
+                s += 1;
+            }
+            int cEnd = s < n ? toCurr[s] : _curr.size();
+            int gEnd = s < n ? toGiven[s] : _given.size();
+            boolean currSame = same(_curr, c, cEnd, _base, b, s);
+            boolean givenSame = same(_given, g, gEnd, _base, b, s);
+            if (currSame) {
+                _given.write(out, g, gEnd);
+            } else if (givenSame || same(_curr, c, cEnd, _given, g, gEnd)) {
+                _curr.write(out, c, cEnd);
+            } else {
+                conflict = true;
+                out.write(START);
+                _curr.write(out, c, cEnd);
+                out.write(MIDDLE);
+                _given.write(out, g, gEnd);
+                out.write(END);
+            }
+            if (s == n) {
+                return conflict;
+            }
+            _base.write(out, s, s + 1);
+            b = s + 1;
+            c = cEnd + 1;
+            g = gEnd + 1;
+        }
+    }
+
+    /** Return true iff lines [ALO..AHI) of A are the same as lines
+     *  [BLO..BHI) of B. */
+    private static boolean same(Lines a, int aLo, int aHi,
+                                Lines b, int bLo, int bHi) {
+        if (aHi - aLo != bHi - bLo) {
+            return false;
+        }
+        for (int i = 0; i < aHi - aLo; i += 1) {
+            if (a._ids[aLo + i] != b._ids[bLo + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the number of line I of LINES: the slot in _table of the
+     *  first line seen with the same contents. */
+    private int number(Lines lines, int i) {
+        int hash = lines.hash(i);
+        int mask = _table.length - 1;
+        for (int k = hash & mask; true; k = (k + 1) & mask) {
+            if (_table[k] == null) {
+                _table[k] = lines;
+                _tableLine[k] = i;
+                return k;
+            }
+            if (lines.equals(i, _table[k], _tableLine[k])) {
+                return k;
+            }
+        }
+    }
+
+    /** The lines of one version, each numbered so that equal lines of
+     *  any version have equal numbers. */
+    private static class Lines {
+        /**
+         * The lines of DATA.
+         * @param data The contents
+         */
+        Lines(byte[] data) {
+            _data = data;
+            int count = 0;
+            for (int i = 0; i < data.length; i += 1) {
+                if (data[i] == '\n' || i == data.length - 1) {
+                    count += 1;
+                }
+            }
+            _starts = new int[count + 1];
+            for (int i = 0, k = 1; i < data.length; i += 1) {
+                if (data[i] == '\n' || i == data.length - 1) {
+                    _starts[k] = i + 1;
+                    k += 1;
+                }
+            }
+            _ids = new int[count];
+        }
+
+        /** Return a hash of the contents of line I. */
+        int hash(int i) {
+            int h = 0;
+            for (int k = _starts[i]; k < _starts[i + 1]; k += 1) {
+                h = 31 * h + _data[k];
+            }
+            return h ^ (h >>> 16);
+        }
+
+        /** Return true iff line I has the same contents as line J of
+         *  OTHER. */
+        boolean equals(int i, Lines other, int j) {
+            return Arrays.equals(_data, _starts[i], _starts[i + 1],
+                                 other._data, other._starts[j],
+                                 other._starts[j + 1]);
+        }
+
+        /** Return the number of lines. */
+        int size() {
+            return _ids.length;
+        }
+
+        /** Write lines [LO..HI) to OUT. */
+        void write(OutputStream out, int lo, int hi) throws IOException {
+            out.write(_data, _starts[lo], _starts[hi] - _starts[lo]);
+        }
+
+        /** the contents. */
+        private final byte[] _data;
+        /** the start of each line, followed by the length of _data. */
+        private final int[] _starts;
+        /** the number of each line. */
+        private final int[] _ids;
+    }
+
+    /** For each line number, the version holding the first line seen
+     *  with that number, or null if the number is unused. */
+    private final Lines[] _table;
+    /** For each line number, the index of that line in its version. */
+    private final int[] _tableLine;
+
+    /** The base version. */
+    private final Lines _base;
+    /** The current version. */
+    private final Lines _curr;
+    /** The given version. */
+    private final Lines _given;
+}
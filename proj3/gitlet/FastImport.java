@@ -0,0 +1,297 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Builds history from a stream of snapshot descriptions, as read by the
+ *  fast-import command.  The stream is a sequence of commits, each
+ *      commit BRANCH
+ *      date SECONDS                (optional; the time since the epoch)
+ *      data N
+ *      (N bytes of commit message)
+ *  followed by any number of file changes, applied in order to the files
+ *  of the commit's parent:
+ *      M N NAME
+ *      (N bytes of contents of the file NAME)
+ *      D NAME                      (stop tracking NAME)
+ *  Blank lines between items are ignored.  A commit's parent is the
+ *  previous tip of BRANCH, or the current head commit if there is no
+ *  such branch yet.
+ *
+ *  The stream is parsed in one thread, while the blobs are hashed and
+ *  compressed by a pool of WORKERS threads, at most IN_FLIGHT at a time
+ *  so that memory use stays bounded.  Each commit's tree is made from its
+ *  parent's by changing only the nodes that hold changed files, and every
+ *  new object goes into a single pack; nothing is written to the working
+ *  directory or the staging area.
+ *  @author Mengmeng Yang
+ */
+class FastImport {
+
+    /** Number of threads hashing and compressing blobs. */
+    static final int WORKERS =
+        Math.min(8, Runtime.getRuntime().availableProcessors());
+    /** Largest number of blobs read but not yet stored. */
+    static final int IN_FLIGHT = 4 * WORKERS;
+
+    /**
+     * An import into OBJECTS of commits on the branches whose tips are
+     * TIPS, new branches starting at HEAD.
+     * @param objects The object store
+     * @param tips The tip of each branch, updated as commits are made
+     * @param head The current head commit id
+     */
+    FastImport(ObjectStore objects, Map<String, String> tips, String head) {
+        _objects = objects;
+        _tips = tips;
+        _head = head;
+        _seen = ConcurrentHashMap.newKeySet();
+        _slots = new Semaphore(IN_FLIGHT);
+    }
+
+    /** Import the commits described by INPUT and return them in the order
+     *  they were made. */
+    List<Commit> run(InputStream input) throws IOException {
+        _in = new BufferedInputStream(input, 1 << 16);
+        List<Commit> result = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(WORKERS);
+        try {
+            String line = nextLine();
+            while (line != null) {
+                if (!line.startsWith("commit ")) {
+                    throw Utils.error("Bad fast-import line: %s", line);
+                }
+                if (_writer == null) {
+                    _writer = _objects.newPack();
+                }
+                line = commit(line.substring("commit ".length()), pool,
+                              result);
+            }
+            if (_writer != null) {
+                _objects.addPack(_writer);
+            }
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            throw cause instanceof RuntimeException
+                ? (RuntimeException) cause
+                : new IllegalArgumentException(cause.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException("import interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+        return result;
+    }
+
+    /** Return the number of new blobs stored by the last run. */
+    int blobs() {
+        return _blobs.get();
+    }
+
+    /** Read the rest of a commit on BRANCH, storing its blobs using POOL,
+     *  and add it to COMMITS.  Return the next line after it, or null at
+     *  the end of the input. */
+    private String commit(String branch, ExecutorService pool,
+                          List<Commit> commits)
+        throws IOException, InterruptedException, ExecutionException {
+        String line = nextLine();
+        ZonedDateTime date = ZonedDateTime.now();
+        if (line != null && line.startsWith("date ")) {
+            date = Instant.ofEpochSecond(
+                number(line.substring("date ".length())))
+                .atZone(ZoneId.systemDefault());
+            line = nextLine();
+        }
+        if (line == null || !line.startsWith("data ")) {
+            throw Utils.error("Missing commit message for %s.", branch);
+        }
+        String message = new String(data(line.substring("data ".length())),
+                                    StandardCharsets.UTF_8);
+        List<String> names = new ArrayList<>();
+        List<Future<String>> blobs = new ArrayList<>();
+        for (line = nextLine(); line != null && !line.startsWith("commit ");
+             line = nextLine()) {
+            if (line.startsWith("M ")) {
+                int space = line.indexOf(' ', 2);
+                if (space < 0) {
+                    throw Utils.error("Bad fast-import line: %s", line);
+                }
+                names.add(name(line.substring(space + 1)));
+                blobs.add(store(data(line.substring(2, space)), pool));
+            } else if (line.startsWith("D ")) {
+                names.add(name(line.substring(2)));
+                blobs.add(null);
+            } else {
+                throw Utils.error("Bad fast-import line: %s", line);
+            }
+        }
+        String parent = _tips.getOrDefault(branch, _head);
+        LinkedHashMap<String, String> changes = new LinkedHashMap<>();
+        for (int i = 0; i < names.size(); i += 1) {
+            changes.put(names.get(i),
+                        blobs.get(i) == null ? null : blobs.get(i).get());
+        }
+        String tree = Tree.update(_trees, tree(parent), changes);
+        Commit commit = new Commit(message, date.format(Commit.DATE), parent,
+                                   null, tree);
+        byte[] bytes = Codec.encode(commit);
+        if (_seen.add(commit.getCommitId())
+            && !_objects.contains(ObjectStore.COMMIT, commit.getCommitId())) {
+            _writer.add(commit.getCommitId(), ObjectStore.COMMIT, bytes);
+        }
+        _commits.put(commit.getCommitId(), commit);
+        _tips.put(branch, commit.getCommitId());
+        commits.add(commit);
+        return line;
+    }
+
+    /** Return the tree of commit ID, which may be one made by this
+     *  import. */
+    private String tree(String id) {
+        Commit commit = _commits.get(id);
+        if (commit == null) {
+            commit = Codec.readCommit(_objects, id);
+        }
+        return commit.getTree() != null ? commit.getTree()
+            : Tree.write(_trees, commit.getBlobs());
+    }
+
+    /** Return the tree nodes made by this import from NODES, or else from
+     *  the object store, and add new ones to the pack. */
+    private Tree.Store nodes() {
+        return new Tree.Store() {
+            @Override
+            public byte[] read(String id) {
+                byte[] data = _nodes.get(id);
+                return data != null
+                    ? data : _objects.read(ObjectStore.TREE, id);
+            }
+
+            @Override
+            public void write(String id, byte[] data) {
+                if (_nodes.putIfAbsent(id, data) == null
+                    && !_objects.contains(ObjectStore.TREE, id)) {
+                    _writer.add(id, ObjectStore.TREE, data);
+                }
+            }
+        };
+    }
+
+    /** Hash DATA and, unless it is stored already, add it to the pack as
+     *  a blob, using a thread of POOL.  Return the blob id to come. */
+    private Future<String> store(byte[] data, ExecutorService pool)
+        throws InterruptedException {
+        _slots.acquire();
+        return pool.submit(() -> {
+            try {
+                String id = Utils.sha1((Object) data);
+                if (_seen.add(id)
+                    && !_objects.contains(ObjectStore.BLOB, id)) {
+                    _writer.add(id, ObjectStore.BLOB, data);
+                    _blobs.incrementAndGet();
+                }
+                return id;
+            } finally {
+                _slots.release();
+            }
+        });
+    }
+
+    /** Return file name NAME, checking that it names a working file. */
+    private static String name(String name) {
+        if (name.isEmpty() || name.contains("/")) {
+            throw Utils.error("Bad file name in fast-import: %s", name);
+        }
+        return name;
+    }
+
+    /** Return the next SIZE bytes of input, where SIZE is a decimal
+     *  count. */
+    private byte[] data(String size) throws IOException {
+        long length = number(size);
+        if (length > Integer.MAX_VALUE - 8) {
+            throw Utils.error("Data too large in fast-import: %s", size);
+        }
+        byte[] result = _in.readNBytes((int) length);
+        if (result.length != length) {
+            throw Utils.error("Unexpected end of fast-import data.");
+        }
+        return result;
+    }
+
+    /** Return the non-negative decimal number TEXT. */
+    private static long number(String text) {
+        long result;
+        try {
+            result = Long.parseLong(text.trim());
+        } catch (NumberFormatException excp) {
+            result = -1;
+        }
+        if (result < 0) {
+            throw Utils.error("Bad number in fast-import: %s", text);
+        }
+        return result;
+    }
+
+    /** Return the next non-blank line of input without its terminator, or
+     *  null at the end of the input. */
+    private String nextLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            int c = _in.read();
+            if (c == -1 && line.size() == 0) {
+                return null;
+            } else if (c == -1 || c == '\n') {
+                if (line.size() > 0) {
+                    return line.toString(StandardCharsets.UTF_8);
+                }
+            } else {
+                line.write(c);
+            }
+        }
+    }
+
+    /** The object store. */
+    private final ObjectStore _objects;
+    /** The tip of each branch. */
+    private final Map<String, String> _tips;
+    /** The head commit, from which new branches start. */
+    private final String _head;
+    /** The ids of the objects added to the pack or found stored. */
+    private final Set<String> _seen;
+    /** Permits for the blobs that may be in flight. */
+    private final Semaphore _slots;
+    /** The tree nodes made by this import, by id.  They are kept until
+     *  the pack holding them can be read. */
+    private final Map<String, byte[]> _nodes = new HashMap<>();
+    /** The store of tree nodes. */
+    private final Tree.Store _trees = nodes();
+    /** The commits made by this import, by id. */
+    private final Map<String, Commit> _commits = new HashMap<>();
+    /** Number of new blobs stored. */
+    private final AtomicInteger _blobs = new AtomicInteger();
+    /** The input. */
+    private BufferedInputStream _in;
+    /** The writer of the new pack, or null if nothing is imported. */
+    private PackFile.Writer _writer;
+}
@@ -0,0 +1,122 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+
+/** The Index Class denoting a cache of working file hashes. For each
+ *  file it remembers the size, modification time and file key seen when
+ *  the file was last hashed, so that a file whose stat data has not
+ *  changed need not be read again.
+ * @author Mengmeng Yang
+ */
+public class Index implements Serializable {
+    /** Fixed so that index files written by other builds can be read. */
+    private static final long serialVersionUID = 3702978730983548137L;
+    /** Files modified less than this many milliseconds before they were
+     *  hashed are not cached, since a later change within the same
+     *  timestamp tick would go unnoticed. */
+    static final long RACY_WINDOW = 2000;
+
+    /** The stat data and hash recorded for one file. */
+    private static class Entry implements Serializable {
+        /** Fixed as that of the Index. */
+        private static final long serialVersionUID = -8080117827675841159L;
+        /** file size in bytes. */
+        private long _size;
+        /** file modification time in milliseconds. */
+        private long _mtime;
+        /** file key (inode) or null if the system has none. */
+        private String _fileKey;
+        /** blob hash of the contents. */
+        private String _hash;
+    }
+
+    /** map from file name to its entry. */
+    private HashMap<String, Entry> _entries;
+    /** true if the entries changed since the index was read. */
+    private transient boolean _changed;
+
+    /** The Index constructor. */
+    public Index() {
+        _entries = new HashMap<>();
+    }
+
+    /**
+     * Return the blob hash of the working file with the given name,
+     * hashing its contents only if its stat data changed.
+     * @param fileName The given file name
+     * @return the blob hash
+     */
+    public String hash(String fileName) {
+        File file = new File(fileName);
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        long mtime = attrs.lastModifiedTime().toMillis();
+        String fileKey = attrs.fileKey() == null
+                ? null : attrs.fileKey().toString();
+        Entry entry = _entries.get(fileName);
+        if (entry != null && entry._size == attrs.size()
+                && entry._mtime == mtime
+                && equal(entry._fileKey, fileKey)) {
+            return entry._hash;
+        }
+        String hash = Utils.sha1File(file);
+        if (System.currentTimeMillis() - mtime < RACY_WINDOW) {
+            if (_entries.remove(fileName) != null) {
+                _changed = true;
+            }
+            return hash;
+        }
+        entry = new Entry();
+        entry._size = attrs.size();
+        entry._mtime = mtime;
+        entry._fileKey = fileKey;
+        entry._hash = hash;
+        _entries.put(fileName, entry);
+        _changed = true;
+        return hash;
+    }
+
+    /**
+     * Forget all files whose names are not in the given collection.
+     * @param fileNames The names of the files to keep
+     */
+    public void retain(Collection<String> fileNames) {
+        if (_entries.keySet().retainAll(fileNames)) {
+            _changed = true;
+        }
+    }
+
+    /**
+     * Write the index to the given file through the given journal if it
+     * changed.
+     * @param journal The journal of the repository
+     * @param file The index file
+     */
+    public void save(Journal journal, File file) {
+        if (_changed) {
+            journal.write(file, Utils.serialize(this));
+            _changed = false;
+        }
+    }
+
+    /**
+     * Compare two possibly null strings.
+     * @param a String 1
+     * @param b String 2
+     * @return if both are null or equal
+     */
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,539 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/** A write-ahead journal making the changes a command makes to a
+ *  repository atomic and durable with a single fsync.
+ *
+ *  Between begin and commit, writes, appends and deletions of refs and
+ *  other state files are held in memory (a later write of a file
+ *  replacing an earlier one), and each new loose object, which is
+ *  already in place, is noted.  Commit
+ *  appends one record holding the new contents of the state files and of
+ *  the small objects to the journal file and forces it to disk; only then
+ *  are the state files replaced, each by writing a temporary file and
+ *  renaming it over the old one, so that a ref never points at an object
+ *  that might be lost.  Objects larger than INLINE_LIMIT are forced to
+ *  disk themselves instead of being copied into the record.  A byte
+ *  marking the record as applied follows once the files are replaced.
+ *
+ *  The files replaced are not forced, since their contents are in the
+ *  journal.  Each record names the boot of the machine it was written
+ *  in: a record written since the last boot whose files were replaced is
+ *  safe in the operating system's cache, and only after a crash of the
+ *  machine or of gitlet in the middle of a commit are records applied
+ *  again by recover.  Once the journal grows past CHECKPOINT_BYTES, or
+ *  after recovering, every file it names is forced and the journal is
+ *  emptied.
+ *
+ *  A record is the int RECORD, the boot id, the number of files, then
+ *  each file's path relative to the repository and its contents as an
+ *  int length and bytes, and finally the SHA-1 of all of these.  In
+ *  place of the length, DELETED marks a file deleted, and APPENDED one
+ *  to which bytes were appended: it is followed by the long length of
+ *  the file before, and the bytes appended as an int length and bytes,
+ *  so that replaying the append again leaves the same file.
+ *  @author Mengmeng Yang
+ */
+class Journal {
+
+    /** First int of every record. */
+    static final int RECORD = 0x474a524e;
+    /** Length of a file deleted, in a record. */
+    static final int DELETED = -1;
+    /** Length of a file appended to, in a record. */
+    static final int APPENDED = -2;
+    /** Byte following a record whose files have been replaced. */
+    static final int APPLIED = 'A';
+    /** Size of the journal beyond which it is emptied after a commit. */
+    static final long CHECKPOINT_BYTES = 1 << 20;
+    /** Largest object copied into a record rather than forced. */
+    static final int INLINE_LIMIT = 1 << 16;
+    /** Identifies this boot of the machine, or empty if unknown. */
+    static final String BOOT_ID = bootId();
+
+    /**
+     * The journal of the repository whose .gitlet folder is DIR.
+     * @param dir The .gitlet folder
+     */
+    Journal(File dir) {
+        _dir = dir;
+        _root = dir.getAbsoluteFile().toPath().getParent().normalize();
+        _file = Utils.join(dir, "journal");
+        _pending = new LinkedHashMap<>();
+        _appends = new LinkedHashMap<>();
+        _force = new ArrayList<>();
+    }
+
+    /** Start a transaction.  Transactions nest: only the commit matching
+     *  the outermost begin writes anything. */
+    void begin() {
+        _depth += 1;
+    }
+
+    /** End a transaction, committing its writes if it is the outermost
+     *  one. */
+    void commit() {
+        _depth -= 1;
+        if (_depth == 0) {
+            flush();
+        }
+    }
+
+    /** End the outermost transaction, discarding the writes of state
+     *  files made in it. */
+    void abort() {
+        _depth = 0;
+        _pending.clear();
+        _appends.clear();
+        _force.clear();
+    }
+
+    /** Write DATA to the state file FILE when the transaction commits,
+     *  or at once if there is no transaction. */
+    void write(File file, byte[] data) {
+        _appends.remove(file);
+        _pending.put(file, data);
+        if (_depth == 0) {
+            flush();
+        }
+    }
+
+    /** Append DATA to the state file FILE when the transaction commits,
+     *  or at once if there is no transaction. */
+    void append(File file, byte[] data) {
+        if (_pending.containsKey(file)) {
+            byte[] old = _pending.get(file);
+            _pending.put(file, concat(old == null ? new byte[0] : old, data));
+        } else if (_appends.containsKey(file)) {
+            Append old = _appends.get(file);
+            _appends.put(file, new Append(old._offset,
+                                          concat(old._data, data)));
+        } else {
+            _appends.put(file, new Append(file.isFile() ? file.length() : 0,
+                                          data));
+        }
+        if (_depth == 0) {
+            flush();
+        }
+    }
+
+    /** Delete the state file FILE when the transaction commits, or at
+     *  once if there is no transaction. */
+    void delete(File file) {
+        _appends.remove(file);
+        _pending.put(file, null);
+        if (_depth == 0) {
+            flush();
+        }
+    }
+
+    /** Note that the loose object FILE was just written, so that it is
+     *  made durable before the state files written with it. */
+    void object(File file) {
+        if (!file.isFile()) {
+            return;
+        }
+        if (file.length() <= INLINE_LIMIT) {
+            _pending.put(file, Utils.readContents(file));
+        } else {
+            _force.add(file);
+        }
+        if (_depth == 0) {
+            flush();
+        }
+    }
+
+    /** Commit the writes made so far in the current transaction as a
+     *  transaction of their own. */
+    void flush() {
+        if (_pending.isEmpty() && _appends.isEmpty() && _force.isEmpty()) {
+            return;
+        }
+        try {
+            for (File file : _force) {
+                force(file.toPath(), false);
+            }
+            byte[] record = record(_pending, _appends);
+            try (FileChannel out = FileChannel.open(_file.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.APPEND)) {
+                out.write(ByteBuffer.wrap(record));
+                out.force(false);
+                for (Map.Entry<File, byte[]> entry : _pending.entrySet()) {
+                    if (entry.getValue() == null) {
+                        Files.deleteIfExists(entry.getKey().toPath());
+                    } else if (!isObject(entry.getKey())) {
+                        replace(entry.getKey(), entry.getValue());
+                    }
+                }
+                for (Map.Entry<File, Append> entry : _appends.entrySet()) {
+                    entry.getValue().apply(entry.getKey());
+                }
+                out.write(ByteBuffer.wrap(new byte[] { APPLIED }));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            _pending.clear();
+            _appends.clear();
+            _force.clear();
+        }
+        if (_file.length() > CHECKPOINT_BYTES || BOOT_ID.isEmpty()) {
+            checkpoint();
+        }
+    }
+
+    /** Finish any transaction that a crash interrupted: apply again every
+     *  record that may not have reached the disk, make everything durable
+     *  and empty the journal.  An incomplete last record, whose commit
+     *  never finished, is dropped. */
+    void recover() {
+        if (!_file.isFile() || _file.length() == 0) {
+            return;
+        }
+        byte[] bytes = Utils.readContents(_file);
+        boolean replayed = false;
+        int end = 0;
+        for (Record record : records(bytes)) {
+            end = record._end;
+            if (!record._applied || !record._boot.equals(BOOT_ID)
+                || BOOT_ID.isEmpty()) {
+                for (Map.Entry<File, byte[]> entry
+                         : record._files.entrySet()) {
+                    File file = entry.getKey();
+                    if (entry.getValue() == null) {
+                        file.delete();
+                    } else if (!file.isFile()
+                               || !Arrays.equals(entry.getValue(),
+                                                 Utils.readContents(file))) {
+                        file.getParentFile().mkdirs();
+                        replace(file, entry.getValue());
+                    }
+                }
+                for (Map.Entry<File, Append> entry
+                         : record._appends.entrySet()) {
+                    entry.getValue().replay(entry.getKey());
+                }
+                replayed = true;
+            }
+        }
+        if (replayed) {
+            checkpoint();
+        } else if (end < bytes.length) {
+            try (FileChannel out = FileChannel.open(_file.toPath(),
+                     StandardOpenOption.WRITE)) {
+                out.truncate(end);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Force every file named in the journal, and the folders holding
+     *  them, to disk, then empty the journal. */
+    void checkpoint() {
+        if (!_file.isFile()) {
+            return;
+        }
+        LinkedHashSet<Path> paths = new LinkedHashSet<>();
+        for (Record record : records(Utils.readContents(_file))) {
+            for (File file : record._files.keySet()) {
+                paths.add(file.toPath());
+                paths.add(file.toPath().getParent());
+            }
+            for (File file : record._appends.keySet()) {
+                paths.add(file.toPath());
+                paths.add(file.toPath().getParent());
+            }
+        }
+        try {
+            for (Path path : paths) {
+                force(path, true);
+            }
+            Files.write(_file.toPath(), new byte[0]);
+            force(_file.toPath(), false);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Replace the contents of FILE by DATA atomically: readers see either
+     *  the old contents or the new, never a mixture, even after a
+     *  crash. */
+    static void replace(File file, byte[] data) {
+        File temp = new File(file.getParentFile(),
+                             "." + file.getName() + ".tmp");
+        try {
+            Files.write(temp.toPath(), data);
+            move(temp.toPath(), file.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Rename FROM to TO, replacing TO, atomically if the file system
+     *  allows it. */
+    static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException excp) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** Return the record for the files and contents in FILES, null
+     *  for a file deleted, and the files appended to in APPENDS. */
+    private byte[] record(Map<File, byte[]> files,
+                          Map<File, Append> appends) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(RECORD);
+        out.writeUTF(BOOT_ID);
+        out.writeInt(files.size() + appends.size());
+        for (Map.Entry<File, byte[]> entry : files.entrySet()) {
+            out.writeUTF(path(entry.getKey()));
+            if (entry.getValue() == null) {
+                out.writeInt(DELETED);
+            } else {
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+        }
+        for (Map.Entry<File, Append> entry : appends.entrySet()) {
+            out.writeUTF(path(entry.getKey()));
+            out.writeInt(APPENDED);
+            out.writeLong(entry.getValue()._offset);
+            out.writeInt(entry.getValue()._data.length);
+            out.write(entry.getValue()._data);
+        }
+        out.write(Utils.fromHex(Utils.sha1((Object) bytes.toByteArray())));
+        return bytes.toByteArray();
+    }
+
+    /** Return the complete, undamaged records at the start of BYTES, the
+     *  contents of a journal. */
+    private List<Record> records(byte[] bytes) {
+        ArrayList<Record> result = new ArrayList<>();
+        ByteArrayInputStream raw = new ByteArrayInputStream(bytes);
+        DataInputStream in = new DataInputStream(raw);
+        try {
+            while (raw.available() > 0) {
+                int start = bytes.length - raw.available();
+                if (in.readInt() != RECORD) {
+                    break;
+                }
+                Record record = new Record(in.readUTF());
+                for (int n = in.readInt(); n > 0; n -= 1) {
+                    File file = _root.resolve(in.readUTF()).toFile();
+                    int length = in.readInt();
+                    if (length == DELETED) {
+                        record._files.put(file, null);
+                        continue;
+                    }
+                    long offset = -1;
+                    if (length == APPENDED) {
+                        offset = in.readLong();
+                        length = in.readInt();
+                    }
+                    if (length < 0 || length > raw.available()) {
+                        throw new EOFException();
+                    }
+                    byte[] data = new byte[length];
+                    in.readFully(data);
+                    if (offset >= 0) {
+                        record._appends.put(file, new Append(offset, data));
+                    } else {
+                        record._files.put(file, data);
+                    }
+                }
+                int end = bytes.length - raw.available();
+                byte[] sum = new byte[PackFile.ID_BYTES];
+                in.readFully(sum);
+                if (!Arrays.equals(sum, Utils.fromHex(Utils.sha1(
+                        (Object) Arrays.copyOfRange(bytes, start, end))))) {
+                    break;
+                }
+                raw.mark(1);
+                record._applied = raw.read() == APPLIED;
+                if (!record._applied) {
+                    raw.reset();
+                }
+                record._end = bytes.length - raw.available();
+                result.add(record);
+            }
+        } catch (IOException excp) {
+            return result;
+        }
+        return result;
+    }
+
+    /** Return the path of FILE relative to the folder holding the
+     *  repository. */
+    private String path(File file) {
+        return _root.relativize(file.getAbsoluteFile().toPath().normalize())
+            .toString();
+    }
+
+    /** Return the bytes of A followed by those of B. */
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    /** Return true iff FILE is a loose object, which is in place before it
+     *  is put in a record. */
+    private boolean isObject(File file) {
+        Path path = file.getAbsoluteFile().toPath().normalize();
+        Path dir = _dir.getAbsoluteFile().toPath().normalize();
+        return path.startsWith(dir.resolve("commits"))
+            || path.startsWith(dir.resolve("blobs"))
+            || path.startsWith(dir.resolve("trees"));
+    }
+
+    /** Force the file or, if DIRECTORY, the folder at PATH to disk. */
+    private static void force(Path path, boolean directory)
+        throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path,
+                 StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            if (!directory) {
+                throw excp;
+            }
+        }
+    }
+
+    /** Return the id of this boot of the machine, or "" if unknown. */
+    private static String bootId() {
+        File id = new File("/proc/sys/kernel/random/boot_id");
+        try {
+            return id.isFile() ? Utils.readContentsAsString(id).trim() : "";
+        } catch (IllegalArgumentException excp) {
+            return "";
+        }
+    }
+
+    /** Bytes appended to a file. */
+    private static class Append {
+        /**
+         * The bytes DATA appended to a file OFFSET bytes long.
+         * @param offset The length of the file before
+         * @param data The bytes appended
+         */
+        Append(long offset, byte[] data) {
+            _offset = offset;
+            _data = data;
+        }
+
+        /** Write the bytes to FILE at the offset, dropping any bytes
+         *  after it. */
+        void apply(File file) throws IOException {
+            try (FileChannel out = FileChannel.open(file.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                out.truncate(_offset);
+                ByteBuffer buf = ByteBuffer.wrap(_data);
+                for (long at = _offset; buf.hasRemaining(); ) {
+                    at += out.write(buf, at);
+                }
+            }
+        }
+
+        /** Apply the append to FILE again unless FILE already holds the
+         *  bytes at the offset.  A file shorter than the offset was not
+         *  written through the journal, and is left alone. */
+        void replay(File file) {
+            long length = file.isFile() ? file.length() : 0;
+            if (length < _offset) {
+                return;
+            }
+            try {
+                if (length >= _offset + _data.length) {
+                    ByteBuffer buf = ByteBuffer.allocate(_data.length);
+                    try (FileChannel in = FileChannel.open(file.toPath())) {
+                        while (buf.hasRemaining()) {
+                            if (in.read(buf, _offset + buf.position()) < 0) {
+                                break;
+                            }
+                        }
+                    }
+                    if (Arrays.equals(buf.array(), _data)) {
+                        return;
+                    }
+                }
+                file.getParentFile().mkdirs();
+                apply(file);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** The length of the file before the append. */
+        private final long _offset;
+        /** The bytes appended. */
+        private final byte[] _data;
+    }
+
+    /** One record read from the journal. */
+    private static class Record {
+        /**
+         * A record written during boot BOOT.
+         * @param boot The boot id
+         */
+        Record(String boot) {
+            _boot = boot;
+        }
+
+        /** The boot id. */
+        private final String _boot;
+        /** The files written and their contents, null for those
+         *  deleted. */
+        private final Map<File, byte[]> _files = new LinkedHashMap<>();
+        /** The files appended to. */
+        private final Map<File, Append> _appends = new LinkedHashMap<>();
+        /** True iff the files were known to be replaced. */
+        private boolean _applied;
+        /** The offset just past the record. */
+        private int _end;
+    }
+
+    /** The .gitlet folder. */
+    private final File _dir;
+    /** The folder holding the .gitlet folder, which paths are relative
+     *  to. */
+    private final Path _root;
+    /** The journal file. */
+    private final File _file;
+    /** The contents of the files to be in the next record, null for
+     *  those to be deleted. */
+    private final Map<File, byte[]> _pending;
+    /** The bytes to be appended to files in the next record. */
+    private final Map<File, Append> _appends;
+    /** Large objects to be forced before the next record is written. */
+    private final List<File> _force;
+    /** Number of transactions begun and not yet committed. */
+    private int _depth;
+}
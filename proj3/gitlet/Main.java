@@ -2,6 +2,8 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Mengmeng Yang
@@ -14,55 +16,87 @@ public class Main {
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) throws IOException {
-        CommandClass commands = new CommandClass();
+        run(args);
+        System.exit(0);
+    }
+
+    /** Run the command given by ARGS, as for main, but return when it is
+     *  done instead of exiting, so that a daemon can run many commands.
+     *  The command's writes to the repository form one transaction of
+     *  the journal, which is discarded if the command fails.  The daemon
+     *  itself runs outside any transaction, so that each command it
+     *  serves through this method commits its own. */
+    static void run(String... args) throws IOException {
         if (args.length == 0) {
             System.out.println("Please enter a command.");
         } else if (!GITLET_FOLDER.exists() && !args[0].equals("init")) {
             System.out.println("Not in an initialized Gitlet directory.");
-            return;
+        } else if (args[0].equals("daemon")) {
+            daemon(args);
         } else {
-            switch (args[0]) {
-            case "init":
-                init(commands, args); break;
-            case "add":
-                add(commands, args); break;
-            case "commit":
-                commit(commands, args); break;
-            case "find":
-                find(commands, args); break;
-            case "rm":
-                rm(commands, args); break;
-            case "log":
-                log(commands, args); break;
-            case "global-log":
-                globalLog(commands, args); break;
-            case "status":
-                status(commands, args); break;
-            case "checkout":
-                checkout(commands, args); break;
-            case "branch":
-                branch(commands, args); break;
-            case "rm-branch":
-                rmbranch(commands, args); break;
-            case "reset":
-                reset(commands, args); break;
-            case "merge":
-                merge(commands, args); break;
-            case "add-remote":
-                addremote(commands, args); break;
-            case "rm-remote":
-                rmremote(commands, args); break;
-            case "push":
-                push(commands, args); break;
-            case "fetch":
-                fetch(commands, args); break;
-            case "pull":
-                pull(commands, args); break;
-            default:
-                System.out.println("No command with that name exists.");
+            CommandClass.JOURNAL.recover();
+            CommandClass commands = new CommandClass();
+            CommandClass.JOURNAL.begin();
+            boolean done = false;
+            try {
+                switch (args[0]) {
+                case "init":
+                    init(commands, args); break;
+                case "add":
+                    add(commands, args); break;
+                case "commit":
+                    commit(commands, args); break;
+                case "find":
+                    find(commands, args); break;
+                case "rm":
+                    rm(commands, args); break;
+                case "log":
+                    log(commands, args); break;
+                case "compare":
+                    compare(commands, args); break;
+                case "global-log":
+                    globalLog(commands, args); break;
+                case "status":
+                    status(commands, args); break;
+                case "checkout":
+                    checkout(commands, args); break;
+                case "branch":
+                    branch(commands, args); break;
+                case "rm-branch":
+                    rmbranch(commands, args); break;
+                case "reset":
+                    reset(commands, args); break;
+                case "merge":
+                    merge(commands, args); break;
+                case "add-remote":
+                    addremote(commands, args); break;
+                case "rm-remote":
+                    rmremote(commands, args); break;
+                case "push":
+                    push(commands, args); break;
+                case "fetch":
+                    fetch(commands, args); break;
+                case "pull":
+                    pull(commands, args); break;
+                case "gc":
+                    gc(commands, args); break;
+                case "fast-import":
+                    fastImport(commands, args); break;
+                default:
+                    System.out.println("No command with that name exists.");
+                }
+                done = true;
+            } catch (GitletException excp) {
+                System.out.println(excp.getMessage());
+                done = true;
+            } finally {
+                if (done) {
+                    CommandClass.JOURNAL.commit();
+                } else {
+                    CommandClass.JOURNAL.abort();
+                }
             }
         }
-        System.exit(0);
     }
 
     /**
@@ -125,8 +159,28 @@ public class Main {
      * @param args gitlet.Main ARGS
      */
     public static void log(CommandClass commands, String... args) {
-        if (validateNumArgs(args, 1)) {
+        if (args.length == 1) {
             commands.log();
+            return;
+        }
+        List<String> excluded = new ArrayList<>();
+        for (int i = 1; i < args.length; i += 1) {
+            if (!args[i].startsWith("^") || args[i].length() == 1) {
+                System.out.println("Incorrect operands.");
+                return;
+            }
+            excluded.add(args[i].substring(1));
+        }
+        commands.log(excluded);
+    }
+    /**
+     * compare command.
+     * @param commands The CommandClass object
+     * @param args gitlet.Main ARGS
+     */
+    public static void compare(CommandClass commands, String... args) {
+        if (validateNumArgs(args, 2)) {
+            commands.compare(args[1]);
         }
     }
     /**
@@ -272,6 +326,41 @@ public class Main {
             commands.pull(args[1], args[2]);
         }
     }
+    /**
+     * gc command.
+     * @param commands The CommandClass object
+     * @param args gitlet.Main ARGS
+     */
+    public static void gc(CommandClass commands, String... args) {
+        if (validateNumArgs(args, 1)) {
+            commands.gc();
+        }
+    }
+
+    /**
+     * fast-import command.
+     * @param commands The CommandClass object
+     * @param args gitlet.Main ARGS
+     * @throws IOException
+     */
+    public static void fastImport(CommandClass commands, String... args)
+            throws IOException {
+        if (validateNumArgs(args, 1)) {
+            commands.fastImport(System.in);
+        }
+    }
+
+    /**
+     * daemon command.
+     * @param args gitlet.Main ARGS
+     * @throws IOException
+     */
+    public static void daemon(String... args) throws IOException {
+        if (validateNumArgs(args, 1)) {
+            new Daemon(GITLET_FOLDER).serve();
+        }
+    }
+
     /**
      * Checks the number of arguments versus the expected number,
      * throws a RuntimeException if they do not match.
@@ -0,0 +1,144 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/** An index from commit messages to the ids of the commits with that
+ *  message, so that find need not read every commit.
+ *
+ *  The index is stored in an append-only file with one record per
+ *  commit: the 20-byte id, then the length of the message in bytes as a
+ *  varint and the message in UTF-8.  A repository without the file has
+ *  its index built from all its commits the first time it is used.
+ *  @author Mengmeng Yang
+ */
+class MessageIndex {
+
+    /**
+     * The message index stored in FILE for the commits in OBJECTS.
+     * @param file The message index file
+     * @param objects The object store
+     */
+    MessageIndex(File file, ObjectStore objects) {
+        _file = file;
+        _ids = new HashMap<>();
+        _indexed = new HashSet<>();
+        _pending = new ArrayList<>();
+        if (!file.isFile()) {
+            build(objects);
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(file));
+        byte[] raw = new byte[PackFile.ID_BYTES];
+        try {
+            while (buf.hasRemaining()) {
+                buf.get(raw);
+                byte[] message = new byte[(int) Utils.readVarint(buf)];
+                buf.get(message);
+                record(Utils.toHex(raw),
+                       new String(message, StandardCharsets.UTF_8));
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | NegativeArraySizeException excp) {
+            build(objects);
+        }
+    }
+
+    /** Make the index again from all the commits in OBJECTS, to be
+     *  written in full by the next save. */
+    private void build(ObjectStore objects) {
+        _ids.clear();
+        _indexed.clear();
+        _pending.clear();
+        _rewrite = true;
+        for (String id : objects.list(ObjectStore.COMMIT)) {
+            add(id, Codec.readCommit(objects, id).getMessage());
+        }
+    }
+
+    /** Return the ids of the commits with message MESSAGE in increasing
+     *  order. */
+    List<String> find(String message) {
+        List<String> ids = _ids.get(message);
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        ArrayList<String> result = new ArrayList<>(ids);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Add commit ID, whose message is MESSAGE, unless it is already in
+     *  the index. */
+    void add(String id, String message) {
+        if (record(id, message)) {
+            _pending.add(id);
+            _pending.add(message);
+        }
+    }
+
+    /** Write the commits added since the index was read to its file
+     *  through JOURNAL. */
+    void save(Journal journal) {
+        if (_pending.isEmpty() && !_rewrite) {
+            return;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (_rewrite) {
+            for (String message : _ids.keySet()) {
+                for (String id : _ids.get(message)) {
+                    write(out, id, message);
+                }
+            }
+        } else {
+            for (int i = 0; i < _pending.size(); i += 2) {
+                write(out, _pending.get(i), _pending.get(i + 1));
+            }
+        }
+        if (_rewrite) {
+            journal.write(_file, out.toByteArray());
+        } else {
+            journal.append(_file, out.toByteArray());
+        }
+        _pending.clear();
+        _rewrite = false;
+    }
+
+    /** Enter commit ID with message MESSAGE in the in-memory index,
+     *  returning false if it was already there. */
+    private boolean record(String id, String message) {
+        if (!_indexed.add(id)) {
+            return false;
+        }
+        _ids.computeIfAbsent(message, m -> new ArrayList<>()).add(id);
+        return true;
+    }
+
+    /** Append the record for commit ID with message MESSAGE to OUT. */
+    private static void write(ByteArrayOutputStream out, String id,
+                              String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        out.write(Utils.fromHex(id), 0, PackFile.ID_BYTES);
+        Utils.writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /** The message index file. */
+    private final File _file;
+    /** Commit ids by message. */
+    private final HashMap<String, List<String>> _ids;
+    /** Every commit id in the index. */
+    private final HashSet<String> _indexed;
+    /** Ids and messages, alternately, of commits not yet in the file. */
+    private final ArrayList<String> _pending;
+    /** True if the file is missing or damaged and must be rewritten. */
+    private boolean _rewrite;
+}
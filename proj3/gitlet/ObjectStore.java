@@ -0,0 +1,451 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.UnaryOperator;
+
+/** The object database of one gitlet repository.  Objects are looked up
+ *  first as loose files and then in the packs in the packs folder.  Each
+ *  loose object is one file in the commits, blobs or trees folder,
+ *  fanned out into subfolders named by the first two hexadecimal digits
+ *  of the id so that no folder grows too large to list.  Loose objects
+ *  written by older versions of gitlet directly into the commits and
+ *  blobs folders are still read, and are packed by repack.  Loose
+ *  objects are written to a temporary file and renamed into place, so
+ *  that no reader ever sees part of one; with a Journal, each is also
+ *  made durable along with the transaction that wrote it.
+ *  @author Mengmeng Yang
+ */
+class ObjectStore {
+
+    /** Type of commit objects. */
+    static final int COMMIT = 1;
+    /** Type of blob objects. */
+    static final int BLOB = 2;
+    /** Type of tree nodes. */
+    static final int TREE = 3;
+    /** Number of previous versions a blob is tried as a delta against. */
+    static final int DELTA_WINDOW = 4;
+    /** Longest chain of deltas needed to read a blob. */
+    static final int MAX_DELTA_DEPTH = 10;
+
+    /**
+     * The object store of the repository whose .gitlet folder is DIR.
+     * @param dir The .gitlet folder
+     */
+    ObjectStore(File dir) {
+        this(dir, null);
+    }
+
+    /**
+     * The object store of the repository whose .gitlet folder is DIR,
+     * noting each loose object written in JOURNAL, if not null.
+     * @param dir The .gitlet folder
+     * @param journal The journal of the repository
+     */
+    ObjectStore(File dir, Journal journal) {
+        _journal = journal;
+        _commitDir = Utils.join(dir, "commits");
+        _blobDir = Utils.join(dir, "blobs");
+        _treeDir = Utils.join(dir, "trees");
+        _packDir = Utils.join(dir, "packs");
+    }
+
+    /** Return the loose file that holds object ID of type TYPE. */
+    File looseFile(int type, String id) {
+        return Utils.join(folder(type), id.substring(0, 2), id.substring(2));
+    }
+
+    /** Return true iff object ID of type TYPE exists. */
+    boolean contains(int type, String id) {
+        if (looseFile(type, id).isFile() || legacyFile(type, id).isFile()) {
+            return true;
+        }
+        for (PackFile pack : packs()) {
+            int k = pack.find(id);
+            if (k >= 0 && pack.type(k) == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the contents of object ID of type TYPE.  Throws
+     *  IllegalArgumentException if there is no such object. */
+    byte[] read(int type, String id) {
+        for (File loose : new File[] { looseFile(type, id),
+                                       legacyFile(type, id) }) {
+            if (loose.isFile()) {
+                return Utils.readContents(loose);
+            }
+        }
+        for (PackFile pack : packs()) {
+            int k = pack.find(id);
+            if (k >= 0 && pack.type(k) == type) {
+                return pack.read(k);
+            }
+        }
+        throw new IllegalArgumentException("no such object: " + id);
+    }
+
+    /** Return the length of the contents of object ID of type TYPE.
+     *  Throws IllegalArgumentException if there is no such object. */
+    long length(int type, String id) {
+        for (File loose : new File[] { looseFile(type, id),
+                                       legacyFile(type, id) }) {
+            if (loose.isFile()) {
+                return loose.length();
+            }
+        }
+        for (PackFile pack : packs()) {
+            int k = pack.find(id);
+            if (k >= 0 && pack.type(k) == type) {
+                return pack.length(k);
+            }
+        }
+        throw new IllegalArgumentException("no such object: " + id);
+    }
+
+    /** Return a stream of the contents of object ID of type TYPE, for
+     *  objects too large to read whole.  Throws IllegalArgumentException
+     *  if there is no such object. */
+    InputStream open(int type, String id) {
+        for (File loose : new File[] { looseFile(type, id),
+                                       legacyFile(type, id) }) {
+            if (loose.isFile()) {
+                try {
+                    return Files.newInputStream(loose.toPath());
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        for (PackFile pack : packs()) {
+            int k = pack.find(id);
+            if (k >= 0 && pack.type(k) == type) {
+                return pack.open(k);
+            }
+        }
+        throw new IllegalArgumentException("no such object: " + id);
+    }
+
+    /** Write the contents of object ID of type TYPE to FILE, replacing
+     *  it.  Objects of at most PackFile.STREAM_MIN bytes are read whole
+     *  and written with a single channel write; longer ones are copied
+     *  as a stream. */
+    void export(int type, String id, File file) {
+        try {
+            if (length(type, id) > PackFile.STREAM_MIN) {
+                try (InputStream in = open(type, id)) {
+                    Files.copy(in, file.toPath(),
+                               StandardCopyOption.REPLACE_EXISTING);
+                }
+                return;
+            }
+            ByteBuffer data = ByteBuffer.wrap(read(type, id));
+            try (FileChannel out = FileChannel.open(
+                     file.toPath(), StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (data.hasRemaining()) {
+                    out.write(data);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write DATA as loose object ID of type TYPE, unless the object is
+     *  already stored. */
+    void write(int type, String id, byte[] data) {
+        if (!contains(type, id)) {
+            File file = looseFile(type, id);
+            file.getParentFile().mkdirs();
+            Journal.replace(file, data);
+            written(file);
+        }
+    }
+
+    /** Copy the contents of SOURCE in as loose object ID of type TYPE,
+     *  unless the object is already stored. */
+    void copy(int type, String id, File source) {
+        if (!contains(type, id)) {
+            File file = looseFile(type, id);
+            file.getParentFile().mkdirs();
+            File temp = new File(file.getParentFile(),
+                                 "." + file.getName() + ".tmp");
+            try {
+                Files.copy(source.toPath(), temp.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
+                Journal.move(temp.toPath(), file.toPath());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            written(file);
+        }
+    }
+
+    /** Note in the journal, if any, that loose object FILE was written. */
+    private void written(File file) {
+        if (_journal != null) {
+            _journal.object(file);
+        }
+    }
+
+    /** Return the ids of all objects of type TYPE in increasing order. */
+    List<String> list(int type) {
+        TreeSet<String> ids = new TreeSet<>();
+        addLoose(type, "", ids);
+        for (PackFile pack : packs()) {
+            for (int k = 0; k < pack.size(); k += 1) {
+                if (pack.type(k) == type) {
+                    ids.add(pack.id(k));
+                }
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /** Return the ids, in increasing order, of the objects of type TYPE
+     *  that start with PREFIX, stopping after LIMIT ids.  Upper-case
+     *  digits in PREFIX are accepted; a PREFIX that is empty or is not
+     *  hexadecimal matches nothing.  Loose objects are found by listing
+     *  only the subfolders PREFIX can name, and packed objects by binary
+     *  search on the sorted ids of each pack index. */
+    List<String> resolve(int type, String prefix, int limit) {
+        String hex = prefix.toLowerCase();
+        if (hex.isEmpty() || hex.length() > 2 * PackFile.ID_BYTES
+            || !hex.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            return new ArrayList<>();
+        }
+        TreeSet<String> ids = new TreeSet<>();
+        addLoose(type, hex, ids);
+        for (PackFile pack : packs()) {
+            pack.findPrefix(hex, type, ids, limit);
+        }
+        ArrayList<String> result = new ArrayList<>(ids);
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    /** Forget the packs opened so far, so that packs added or removed by
+     *  another process are seen. */
+    synchronized void reload() {
+        _packs = null;
+    }
+
+    /** Return a writer for a new pack of this store.  Its objects become
+     *  part of the store only when the writer is passed to addPack. */
+    PackFile.Writer newPack() {
+        _packDir.mkdir();
+        return new PackFile.Writer(_packDir);
+    }
+
+    /** Finish the pack being written by WRITER and add its objects to
+     *  this store. */
+    void addPack(PackFile.Writer writer) {
+        PackFile pack = writer.finish();
+        synchronized (this) {
+            if (_packs != null) {
+                _packs.add(pack);
+            }
+        }
+    }
+
+    /** Move every object into a single new pack, replacing the existing
+     *  packs and loose objects.  Each list in SIMILAR names versions of
+     *  one file, most recent first; each blob is stored as a delta against
+     *  one of the DELTA_WINDOW versions before it when that is smaller than
+     *  storing it whole.  Blobs longer than PackFile.STREAM_MIN are never
+     *  read whole, and so are neither deltas nor bases.  The contents of
+     *  each commit are passed through UPGRADE before being packed. */
+    void repack(Collection<List<String>> similar,
+                UnaryOperator<byte[]> upgrade) {
+        List<PackFile> old = packs();
+        List<String> commits = list(COMMIT);
+        List<String> blobs = list(BLOB);
+        List<String> trees = list(TREE);
+        PackFile.Writer writer = newPack();
+        for (String id : commits) {
+            writer.add(id, COMMIT, upgrade.apply(read(COMMIT, id)));
+        }
+        for (String id : trees) {
+            writer.add(id, TREE, read(TREE, id));
+        }
+        HashSet<String> done = new HashSet<>();
+        for (List<String> versions : similar) {
+            ArrayDeque<Version> window = new ArrayDeque<>();
+            for (String id : versions) {
+                if (done.contains(id) || !contains(BLOB, id)
+                    || length(BLOB, id) > PackFile.STREAM_MIN) {
+                    continue;
+                }
+                Version version = new Version(id, read(BLOB, id));
+                byte[] best = null;
+                Version base = null;
+                for (Version candidate : window) {
+                    if (candidate._depth >= MAX_DELTA_DEPTH) {
+                        continue;
+                    }
+                    byte[] delta = Delta.create(candidate._data,
+                                                version._data);
+                    if (delta.length < version._data.length / 2
+                        && (best == null || delta.length < best.length)) {
+                        best = delta;
+                        base = candidate;
+                    }
+                }
+                if (base == null) {
+                    writer.add(id, BLOB, version._data);
+                } else {
+                    writer.addDelta(id, BLOB, base._id, best);
+                    version._depth = base._depth + 1;
+                }
+                done.add(id);
+                window.addFirst(version);
+                if (window.size() > DELTA_WINDOW) {
+                    window.removeLast();
+                }
+            }
+        }
+        for (String id : blobs) {
+            if (!done.contains(id)) {
+                writer.add(id, BLOB, this);
+            }
+        }
+        PackFile pack = writer.finish();
+        for (PackFile p : old) {
+            if (!p.packFile().equals(pack.packFile())) {
+                p.packFile().delete();
+                p.indexFile().delete();
+            }
+        }
+        for (String id : commits) {
+            looseFile(COMMIT, id).delete();
+            legacyFile(COMMIT, id).delete();
+        }
+        for (String id : blobs) {
+            looseFile(BLOB, id).delete();
+            legacyFile(BLOB, id).delete();
+        }
+        for (String id : trees) {
+            looseFile(TREE, id).delete();
+        }
+        for (File dir : new File[] { _commitDir, _blobDir, _treeDir }) {
+            File[] fans = dir.listFiles(File::isDirectory);
+            for (File fan : fans == null ? new File[0] : fans) {
+                fan.delete();
+            }
+        }
+        _packs = null;
+    }
+
+    /** Return the folder of loose objects of type TYPE. */
+    private File folder(int type) {
+        switch (type) {
+        case COMMIT:
+            return _commitDir;
+        case TREE:
+            return _treeDir;
+        default:
+            return _blobDir;
+        }
+    }
+
+    /** Return the file object ID of type TYPE had in the flat layout of
+     *  older versions of gitlet. */
+    private File legacyFile(int type, String id) {
+        return Utils.join(folder(type), id);
+    }
+
+    /** Add to IDS the ids of the loose objects of type TYPE that start
+     *  with PREFIX.  Only the subfolders whose names agree with PREFIX are
+     *  listed. */
+    private void addLoose(int type, String prefix, Collection<String> ids) {
+        File dir = folder(type);
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        String fan = prefix.substring(0, Math.min(2, prefix.length()));
+        for (String name : names) {
+            if (name.length() == 2 * PackFile.ID_BYTES) {
+                if (name.startsWith(prefix)) {
+                    ids.add(name);
+                }
+            } else if (name.length() == 2 && name.startsWith(fan)) {
+                List<String> rest =
+                    Utils.plainFilenamesIn(Utils.join(dir, name));
+                for (String tail : rest == null ? List.<String>of() : rest) {
+                    String id = name + tail;
+                    if (id.length() == 2 * PackFile.ID_BYTES
+                        && id.startsWith(prefix)) {
+                        ids.add(id);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Return the packs of this repository, opening them if needed.
+     *  Synchronized so that objects may be read from several threads. */
+    private synchronized List<PackFile> packs() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            List<String> names = Utils.plainFilenamesIn(_packDir);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".pack")) {
+                        _packs.add(new PackFile(Utils.join(_packDir, name)));
+                    }
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** A blob version considered as a delta base while repacking. */
+    private static class Version {
+        /**
+         * A version with id ID and contents DATA.
+         * @param id The blob id
+         * @param data The blob contents
+         */
+        Version(String id, byte[] data) {
+            _id = id;
+            _data = data;
+        }
+
+        /** blob id. */
+        private final String _id;
+        /** blob contents. */
+        private final byte[] _data;
+        /** number of deltas needed to read this version. */
+        private int _depth;
+    }
+
+    /** Folder of loose commits. */
+    private final File _commitDir;
+    /** Folder of loose blobs. */
+    private final File _blobDir;
+    /** Folder of loose tree nodes. */
+    private final File _treeDir;
+    /** Folder of packs. */
+    private final File _packDir;
+    /** The journal noting loose objects written, or null. */
+    private final Journal _journal;
+    /** The open packs, or null if not yet opened. */
+    private List<PackFile> _packs;
+}
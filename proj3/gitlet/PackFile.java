@@ -0,0 +1,626 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** A pack of gitlet objects: one append-only pack file holding many
+ *  compressed objects, and an index file giving the offset of each object
+ *  in the pack.  Both files are memory-mapped for reading.  The pack file
+ *  may be larger than one mapping can hold, so it is mapped in windows
+ *  of WINDOW bytes as they are needed, each overlapping the next by the
+ *  longest entry header; an entry whose contents run past the end of its
+ *  window is mapped by itself.  Objects larger than STREAM_MIN bytes are
+ *  copied between stores and out to files as streams, never held whole.
+ *
+ *  The pack file holds the magic number, the version and the object count,
+ *  followed by the objects.  Each object is a kind byte (the object type,
+ *  or'ed with DELTA_FLAG for deltas), the 20-byte id of the base for
+ *  deltas, the inflated length and the deflated length as varints, and
+ *  the deflated contents or delta.
+ *
+ *  The index file holds the magic number, the version and the object
+ *  count, a 256-entry fan-out table whose entry B is the number of ids
+ *  whose first byte is at most B, and then the sorted 20-byte ids, their
+ *  8-byte offsets and their 1-byte types.
+ *  @author Mengmeng Yang
+ */
+class PackFile {
+
+    /** Magic number of pack files. */
+    static final int PACK_MAGIC = 0x4750414b;
+    /** Magic number of index files. */
+    static final int INDEX_MAGIC = 0x47494458;
+    /** Format version. */
+    static final int VERSION = 1;
+    /** Kind bit marking a delta against another object. */
+    static final int DELTA_FLAG = 0x80;
+    /** Length of a raw object id. */
+    static final int ID_BYTES = 20;
+    /** Number of bytes of the pack file mapped at a time. */
+    static final long WINDOW = 1L << 30;
+    /** Length of objects above which they are streamed. */
+    static final long STREAM_MIN = 1L << 24;
+    /** Longest entry header: the kind, a base id and two varints. */
+    private static final int ENTRY_MAX = 1 + ID_BYTES + 2 * 10;
+    /** Largest array that can be allocated. */
+    private static final int ARRAY_MAX = Integer.MAX_VALUE - 8;
+    /** Length of the index header. */
+    private static final int HEADER = 12;
+    /** Length of the fan-out table. */
+    private static final int FANOUT = 256 * 4;
+
+    /**
+     * Open the pack whose pack file is PACK; its index file is the file
+     * with the same name ending in ".idx".
+     * @param pack The pack file
+     */
+    PackFile(File pack) {
+        _pack = pack;
+        _index = indexFor(pack);
+        _packLength = pack.length();
+        _windows = new MappedByteBuffer[(int) ((_packLength + WINDOW - 1)
+                                               / WINDOW)];
+        _indexData = map(_index, 0, _index.length());
+        if (_packLength < HEADER || window(0).getInt(0) != PACK_MAGIC
+            || _indexData.getInt(0) != INDEX_MAGIC
+            || _indexData.getInt(4) != VERSION) {
+            throw Utils.error("Corrupt pack %s.", pack.getName());
+        }
+        _size = _indexData.getInt(8);
+    }
+
+    /** Return the pack file. */
+    File packFile() {
+        return _pack;
+    }
+
+    /** Return the index file. */
+    File indexFile() {
+        return _index;
+    }
+
+    /** Return the number of objects in this pack. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the id of the K-th object in id order. */
+    String id(int k) {
+        byte[] raw = new byte[ID_BYTES];
+        _indexData.get(idPos(k), raw);
+        return Utils.toHex(raw);
+    }
+
+    /** Return the type of the K-th object in id order. */
+    int type(int k) {
+        return _indexData.get(HEADER + FANOUT + _size * (ID_BYTES + 8) + k);
+    }
+
+    /** Return the position in id order of the object with id ID, or -1 if
+     *  there is none. */
+    int find(String id) {
+        if (id.length() != 2 * ID_BYTES) {
+            return -1;
+        }
+        byte[] raw = Utils.fromHex(id);
+        int k = lowerBound(raw, true);
+        return k < _size && compareId(k, raw) == 0 ? k : -1;
+    }
+
+    /** Add to RESULT the ids of objects of type TYPE that start with
+     *  PREFIX, a string of lower-case hexadecimal digits, stopping after
+     *  the first LIMIT of them in this pack, whatever RESULT already
+     *  holds.  The first candidate is found by binary search, so this
+     *  takes time logarithmic in the size of the pack. */
+    void findPrefix(String prefix, int type, Collection<String> result,
+                    int limit) {
+        String padded = prefix;
+        while (padded.length() < 2 * ID_BYTES) {
+            padded += "0";
+        }
+        int found = 0;
+        for (int k = lowerBound(Utils.fromHex(padded), prefix.length() >= 2);
+             k < _size && found < limit; k += 1) {
+            String id = id(k);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            if (type(k) == type) {
+                result.add(id);
+                found += 1;
+            }
+        }
+    }
+
+    /** Return the contents of the K-th object in id order, resolving
+     *  deltas against their bases. */
+    byte[] read(int k) {
+        Entry entry = entry(k);
+        if (entry._length > ARRAY_MAX || entry._compressed > ARRAY_MAX) {
+            throw Utils.error("Object %s is too large to read whole.",
+                              id(k));
+        }
+        byte[] data = inflate(contents(entry), (int) entry._length);
+        if (entry._base == null) {
+            return data;
+        }
+        int b = find(entry._base);
+        if (b < 0) {
+            throw Utils.error("Missing delta base %s.", entry._base);
+        }
+        return Delta.apply(read(b), data);
+    }
+
+    /** Return the length of the contents of the K-th object in id order.
+     *  For a delta, that is the length of the target at its start. */
+    long length(int k) {
+        Entry entry = entry(k);
+        if (entry._base == null) {
+            return entry._length;
+        }
+        byte[] start = inflate(contents(entry),
+                               (int) Math.min(10, entry._length));
+        return Utils.readVarint(ByteBuffer.wrap(start));
+    }
+
+    /** Return a stream of the contents of the K-th object in id order,
+     *  which is read from the pack file as it is inflated unless the
+     *  object is a delta. */
+    InputStream open(int k) {
+        Entry entry = entry(k);
+        if (entry._base != null) {
+            return new ByteArrayInputStream(read(k));
+        }
+        try {
+            FileChannel channel = FileChannel.open(_pack.toPath(),
+                                                   StandardOpenOption.READ);
+            try {
+                channel.position(entry._data);
+            } catch (IOException excp) {
+                channel.close();
+                throw excp;
+            }
+            return new InflaterInputStream(Channels.newInputStream(channel));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the header of the entry of the K-th object in id order. */
+    private Entry entry(int k) {
+        long offset = _indexData.getLong(HEADER + FANOUT + _size * ID_BYTES
+                                         + 8 * k);
+        int w = (int) (offset / WINDOW);
+        ByteBuffer buf = window(w).duplicate();
+        buf.position((int) (offset - w * WINDOW));
+        Entry entry = new Entry();
+        entry._offset = offset;
+        int kind = buf.get() & 0xff;
+        if ((kind & DELTA_FLAG) != 0) {
+            byte[] raw = new byte[ID_BYTES];
+            buf.get(raw);
+            entry._base = Utils.toHex(raw);
+        }
+        entry._length = Utils.readVarint(buf);
+        entry._compressed = Utils.readVarint(buf);
+        entry._data = w * WINDOW + buf.position();
+        return entry;
+    }
+
+    /** Return the compressed contents of ENTRY, from the window holding
+     *  its header if they lie within it and mapped by themselves
+     *  otherwise. */
+    private ByteBuffer contents(Entry entry) {
+        int w = (int) (entry._offset / WINDOW);
+        MappedByteBuffer window = window(w);
+        long start = entry._data - w * WINDOW;
+        if (start + entry._compressed <= window.limit()) {
+            return window.slice((int) start, (int) entry._compressed);
+        }
+        return map(_pack, entry._data, entry._compressed);
+    }
+
+    /** Return window W of the pack file, mapping it if needed.
+     *  Synchronized so that objects may be read from several threads. */
+    private synchronized MappedByteBuffer window(int w) {
+        if (_windows[w] == null) {
+            long start = w * WINDOW;
+            _windows[w] = map(_pack, start,
+                              Math.min(_packLength - start,
+                                       WINDOW + ENTRY_MAX));
+        }
+        return _windows[w];
+    }
+
+    /** Return the value of entry B of the fan-out table. */
+    private int fanout(int b) {
+        return _indexData.getInt(HEADER + 4 * b);
+    }
+
+    /** Return the position in id order of the first id that is at least
+     *  RAW.  If FIRST, the search is confined to the ids sharing the first
+     *  byte of RAW using the fan-out table. */
+    private int lowerBound(byte[] raw, boolean first) {
+        int lo = 0, hi = _size;
+        if (first) {
+            int b = raw[0] & 0xff;
+            lo = b == 0 ? 0 : fanout(b - 1);
+            hi = fanout(b);
+        }
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareId(mid, raw) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the position of the K-th id in the index. */
+    private int idPos(int k) {
+        return HEADER + FANOUT + k * ID_BYTES;
+    }
+
+    /** Compare the K-th id with RAW as unsigned bytes. */
+    private int compareId(int k, byte[] raw) {
+        int pos = idPos(k);
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int c = (_indexData.get(pos + i) & 0xff) - (raw[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Return the index file belonging to pack file PACK. */
+    static File indexFor(File pack) {
+        String name = pack.getName();
+        return new File(pack.getParentFile(),
+                        name.substring(0, name.length() - ".pack".length())
+                        + ".idx");
+    }
+
+    /** Return the LENGTH bytes of FILE from byte START mapped read-only
+     *  into memory. */
+    private static MappedByteBuffer map(File file, long start, long length) {
+        if (length > Integer.MAX_VALUE) {
+            throw Utils.error("Pack entry too large to map.");
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                                                    StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the LENGTH bytes obtained by inflating IN. */
+    private static byte[] inflate(ByteBuffer in, int length) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(in);
+        byte[] result = new byte[length];
+        try {
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                int k = inflater.inflate(result, n, length - n);
+                if (k == 0 && inflater.needsInput()) {
+                    throw Utils.error("Truncated pack entry.");
+                }
+                n += k;
+            }
+            return result;
+        } catch (DataFormatException excp) {
+            throw Utils.error("Corrupt pack entry.");
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Write all of IN deflated to OUT, returning the number of bytes
+     *  written.  The input is fed to the deflater in full chunks, so the
+     *  same input always gives the same output. */
+    static long deflate(InputStream in, OutputStream out)
+        throws IOException {
+        Deflater deflater = new Deflater();
+        byte[] input = new byte[1 << 16];
+        byte[] chunk = new byte[1 << 16];
+        long total = 0;
+        try {
+            int n;
+            while ((n = in.readNBytes(input, 0, input.length)) > 0) {
+                deflater.setInput(input, 0, n);
+                while (!deflater.needsInput()) {
+                    int k = deflater.deflate(chunk);
+                    out.write(chunk, 0, k);
+                    total += k;
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                int k = deflater.deflate(chunk);
+                out.write(chunk, 0, k);
+                total += k;
+            }
+            return total;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Return DATA deflated. */
+    static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /** Writes a new pack.  Objects are appended to a temporary file as
+     *  they are added; finish writes the index, forces both files to disk
+     *  and gives them their final names, the pack last, so that a pack is
+     *  never seen before it is complete and durable. */
+    static class Writer {
+
+        /**
+         * A writer of a new pack in directory DIR.
+         * @param dir The pack directory
+         */
+        Writer(File dir) {
+            _dir = dir;
+            try {
+                _temp = Files.createTempFile(dir.toPath(), "tmp-pack-",
+                                             ".tmp").toFile();
+                _out = new BufferedOutputStream(
+                        Files.newOutputStream(_temp.toPath()));
+                ByteBuffer header = ByteBuffer.allocate(HEADER);
+                header.putInt(PACK_MAGIC).putInt(VERSION).putInt(0);
+                _out.write(header.array());
+                _offset = HEADER;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /**
+         * Append object ID of type TYPE with contents DATA.
+         * @param id The object id
+         * @param type The object type
+         * @param data The object contents
+         */
+        void add(String id, int type, byte[] data) {
+            append(id, type, null, data);
+        }
+
+        /**
+         * Append object ID of type TYPE, stored as DELTA against BASE.
+         * @param id The object id
+         * @param type The object type
+         * @param base The id of the base object
+         * @param delta The delta from the base
+         */
+        void addDelta(String id, int type, String base, byte[] delta) {
+            append(id, type, base, delta);
+        }
+
+        /**
+         * Append object ID of type TYPE, copied from the store FROM.  An
+         * object longer than STREAM_MIN is deflated from a stream twice,
+         * once to learn its compressed length for the entry header and
+         * once to write it, rather than being read whole.
+         * @param id The object id
+         * @param type The object type
+         * @param from The store holding the object
+         */
+        void add(String id, int type, ObjectStore from) {
+            long length = from.length(type, id);
+            if (length <= STREAM_MIN) {
+                add(id, type, from.read(type, id));
+                return;
+            }
+            try {
+                long compressed;
+                try (InputStream in = from.open(type, id)) {
+                    compressed = deflate(in, OutputStream.nullOutputStream());
+                }
+                ByteArrayOutputStream header = new ByteArrayOutputStream();
+                header.write(type);
+                Utils.writeVarint(header, length);
+                Utils.writeVarint(header, compressed);
+                synchronized (this) {
+                    _ids.add(id);
+                    _types.add(type);
+                    _offsets.add(_offset);
+                    header.writeTo(_out);
+                    try (InputStream in = from.open(type, id)) {
+                        if (deflate(in, _out) != compressed) {
+                            throw Utils.error("Object %s changed while"
+                                              + " being packed.", id);
+                        }
+                    }
+                    _offset += header.size() + compressed;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Return the number of objects added so far. */
+        synchronized int count() {
+            return _ids.size();
+        }
+
+        /** Append one object entry (see add and addDelta).  Objects may
+         *  be appended from several threads at once; each is compressed
+         *  before the writer is locked. */
+        private void append(String id, int type, String base, byte[] data) {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            header.write(base == null ? type : type | DELTA_FLAG);
+            if (base != null) {
+                header.write(Utils.fromHex(base), 0, ID_BYTES);
+            }
+            byte[] compressed = deflate(data);
+            Utils.writeVarint(header, data.length);
+            Utils.writeVarint(header, compressed.length);
+            synchronized (this) {
+                write(id, type, header, compressed);
+            }
+        }
+
+        /** Write the entry for object ID of type TYPE, made of HEADER
+         *  followed by COMPRESSED. */
+        private void write(String id, int type, ByteArrayOutputStream header,
+                           byte[] compressed) {
+            try {
+                _ids.add(id);
+                _types.add(type);
+                _offsets.add(_offset);
+                header.writeTo(_out);
+                _out.write(compressed);
+                _offset += header.size() + compressed.length;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Write the index, name both files after their contents, and
+         *  return the finished pack. */
+        synchronized PackFile finish() {
+            try {
+                _out.close();
+                Integer[] order = new Integer[_ids.size()];
+                for (int i = 0; i < order.length; i += 1) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> _ids.get(a).compareTo(
+                        _ids.get(b)));
+                ArrayList<Object> sortedIds = new ArrayList<>();
+                for (int i : order) {
+                    sortedIds.add(_ids.get(i));
+                }
+                String name = "pack-" + Utils.sha1(sortedIds);
+                File pack = Utils.join(_dir, name + ".pack");
+                File index = Utils.join(_dir, name + ".idx");
+                try (FileChannel channel = FileChannel.open(
+                        _temp.toPath(), StandardOpenOption.WRITE)) {
+                    channel.write(ByteBuffer.allocate(4).putInt(0,
+                                  order.length), 8);
+                    channel.force(true);
+                }
+                File tempIndex = Files.createTempFile(_dir.toPath(),
+                                                      "tmp-idx-", ".tmp")
+                    .toFile();
+                writeIndex(tempIndex, order);
+                try (FileChannel channel = FileChannel.open(
+                        tempIndex.toPath(), StandardOpenOption.READ)) {
+                    channel.force(true);
+                }
+                Journal.move(tempIndex.toPath(), index.toPath());
+                Journal.move(_temp.toPath(), pack.toPath());
+                return new PackFile(pack);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Write to INDEX the index of the objects in the given ORDER. */
+        private void writeIndex(File index, Integer[] order)
+            throws IOException {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                        Files.newOutputStream(index.toPath())))) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(order.length);
+                int[] fanout = new int[256];
+                for (String id : _ids) {
+                    fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+                }
+                int total = 0;
+                for (int count : fanout) {
+                    total += count;
+                    out.writeInt(total);
+                }
+                for (int i : order) {
+                    out.write(Utils.fromHex(_ids.get(i)));
+                }
+                for (int i : order) {
+                    out.writeLong(_offsets.get(i));
+                }
+                for (int i : order) {
+                    out.write(_types.get(i));
+                }
+            }
+        }
+
+        /** The pack directory. */
+        private final File _dir;
+        /** The temporary pack file, named uniquely so that writers of
+         *  several packs at once do not collide. */
+        private final File _temp;
+        /** The stream writing the temporary pack file. */
+        private BufferedOutputStream _out;
+        /** The offset of the next object in the pack file. */
+        private long _offset;
+        /** The ids of the objects added, in order. */
+        private final ArrayList<String> _ids = new ArrayList<>();
+        /** The types of the objects added, in order. */
+        private final ArrayList<Integer> _types = new ArrayList<>();
+        /** The offsets of the objects added, in order. */
+        private final ArrayList<Long> _offsets = new ArrayList<>();
+    }
+
+    /** The header of an entry of the pack file. */
+    private static class Entry {
+        /** Offset of the entry. */
+        private long _offset;
+        /** Id of the delta base, or null if the entry is whole. */
+        private String _base;
+        /** Inflated length. */
+        private long _length;
+        /** Deflated length. */
+        private long _compressed;
+        /** Offset of the deflated contents. */
+        private long _data;
+    }
+
+    /** The pack file. */
+    private final File _pack;
+    /** The index file. */
+    private final File _index;
+    /** The length of the pack file. */
+    private final long _packLength;
+    /** The windows of the pack file mapped so far, by number. */
+    private final MappedByteBuffer[] _windows;
+    /** The mapped index file. */
+    private final MappedByteBuffer _indexData;
+    /** The number of objects. */
+    private final int _size;
+}
@@ -0,0 +1,163 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/** Reachability bitmaps for the commits of a CommitGraph: the bitmap of a
+ *  commit holds the record numbers of the commit and all its ancestors,
+ *  so that whether one commit is an ancestor of another, how many commits
+ *  one branch is ahead of another, and the best common ancestor of two
+ *  commits are bitmap operations rather than walks of the history.
+ *
+ *  Bitmaps are kept for branch tips.  The bitmap of any other commit is
+ *  made by walking back from it only as far as commits with bitmaps,
+ *  whose bitmaps are merged in whole, so the bitmap of a new commit costs
+ *  a merge of its parents' bitmaps.  Since a commit's parents precede it
+ *  in the graph, the largest record number two bitmaps share is a common
+ *  ancestor that is an ancestor of no other common ancestor.
+ *
+ *  The bitmaps are stored in a file holding the SHA-1 of the ids of the
+ *  first N commits of the graph, N as a varint, the number of bitmaps as
+ *  a varint, then for each the 20-byte commit id and the bitmap as
+ *  encoded by Bitmap.  A file whose commits are not numbered as in the
+ *  graph is ignored, and the bitmaps are made again.
+ *  @author Mengmeng Yang
+ */
+class Reachability {
+
+    /**
+     * The bitmaps stored in FILE for the commits of GRAPH.
+     * @param file The bitmap file
+     * @param graph The commit graph
+     */
+    Reachability(File file, CommitGraph graph) {
+        _file = file;
+        _graph = graph;
+        _bitmaps = new HashMap<>();
+        if (!file.isFile()) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(file));
+        byte[] raw = new byte[PackFile.ID_BYTES];
+        try {
+            buf.get(raw);
+            int n = (int) Utils.readVarint(buf);
+            if (n > graph.size()
+                || !Utils.toHex(raw).equals(graph.digest(n))) {
+                _changed = true;
+                return;
+            }
+            HashMap<Integer, Bitmap> bitmaps = new HashMap<>();
+            for (long count = Utils.readVarint(buf); count > 0; count -= 1) {
+                buf.get(raw);
+                Integer k = graph.find(Utils.toHex(raw));
+                Bitmap bitmap = Bitmap.decode(buf);
+                if (k == null || k >= n) {
+                    throw new IllegalArgumentException("bad bitmap file");
+                }
+                bitmaps.put(k, bitmap);
+            }
+            _bitmaps.putAll(bitmaps);
+        } catch (BufferUnderflowException | IllegalArgumentException excp) {
+            _changed = true;
+        }
+    }
+
+    /** Return the bitmap of the record numbers of commit ID and all its
+     *  ancestors.  It must not be modified. */
+    Bitmap of(String id) {
+        int k = _graph.index(id);
+        Bitmap result = _bitmaps.get(k);
+        if (result != null) {
+            return result;
+        }
+        result = new Bitmap();
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        stack.push(k);
+        while (!stack.isEmpty()) {
+            int j = stack.pop();
+            if (result.contains(j)) {
+                continue;
+            }
+            Bitmap known = _bitmaps.get(j);
+            if (known != null) {
+                result.or(known);
+                continue;
+            }
+            result.add(j);
+            for (int p : new int[] { _graph.parent(j), _graph.parent2(j) }) {
+                if (p >= 0 && !result.contains(p)) {
+                    stack.push(p);
+                }
+            }
+        }
+        _bitmaps.put(k, result);
+        _changed = true;
+        return result;
+    }
+
+    /** Return true iff commit ANCESTOR is reachable from commit ID
+     *  (including when they are the same commit). */
+    boolean isAncestor(String ancestor, String id) {
+        return of(id).contains(_graph.index(ancestor));
+    }
+
+    /** Return the number of commits reachable from commit A but not from
+     *  commit B. */
+    int ahead(String a, String b) {
+        Bitmap bitmapA = of(a);
+        return bitmapA.cardinality() - bitmapA.andCardinality(of(b));
+    }
+
+    /** Return the id of a best common ancestor of commits A and B: one
+     *  that is not an ancestor of any other common ancestor.  Returns null
+     *  if there is none. */
+    String mergeBase(String a, String b) {
+        int k = of(a).lastCommon(of(b));
+        return k < 0 ? null : _graph.id(k);
+    }
+
+    /** Write the bitmaps of the commits TIPS to the file through
+     *  JOURNAL, dropping the others, if they have changed.  Commits must
+     *  have been saved in the graph first. */
+    void save(Journal journal, Collection<String> tips) {
+        HashSet<Integer> keep = new HashSet<>();
+        for (String tip : tips) {
+            Integer k = _graph.find(tip);
+            if (k != null && _bitmaps.containsKey(k)) {
+                keep.add(k);
+            }
+        }
+        _changed |= _bitmaps.keySet().retainAll(keep);
+        if (!_changed) {
+            return;
+        }
+        int n = _graph.size();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(Utils.fromHex(_graph.digest(n)));
+        Utils.writeVarint(out, n);
+        Utils.writeVarint(out, _bitmaps.size());
+        for (Map.Entry<Integer, Bitmap> entry : _bitmaps.entrySet()) {
+            out.writeBytes(Utils.fromHex(_graph.id(entry.getKey())));
+            out.writeBytes(entry.getValue().encode());
+        }
+        journal.write(_file, out.toByteArray());
+        _changed = false;
+    }
+
+    /** The bitmap file. */
+    private final File _file;
+    /** The commit graph whose record numbers the bitmaps hold. */
+    private final CommitGraph _graph;
+    /** The bitmaps known, by the record number of their commit. */
+    private final HashMap<Integer, Bitmap> _bitmaps;
+    /** True if the bitmaps differ from those in the file. */
+    private boolean _changed;
+}
@@ -8,8 +8,11 @@ import java.util.ArrayList;
  * @author Mengmeng Yang
  */
 public class StagingArea implements Serializable {
-    /** store the added files. */
-    private LinkedHashMap<String, Blobs> addedFiles;
+    /** Fixed so that staging areas serialized by older versions can be
+     *  read. */
+    private static final long serialVersionUID = -3158268244518492715L;
+    /** store the added files and their blob ids. */
+    private LinkedHashMap<String, String> addedFiles;
     /** store the removed files. */
     private ArrayList<String> removedFiles;
 
@@ -33,7 +36,7 @@ public class StagingArea implements Serializable {
      * Getter for addedFiles.
      * @return addedFiles
      */
-    public LinkedHashMap<String, Blobs> getAdded() {
+    public LinkedHashMap<String, String> getAdded() {
         return addedFiles;
     }
 
@@ -44,4 +47,14 @@ public class StagingArea implements Serializable {
     public ArrayList<String> getRemoved() {
         return removedFiles;
     }
+
+    /**
+     * Store the contents of the Blobs that a staging area of an older
+     * version of gitlet holds in place of blob ids, and hold their ids
+     * instead.
+     * @param objects The object store the contents are written to
+     */
+    void upgrade(ObjectStore objects) {
+        Blobs.upgrade(addedFiles, objects);
+    }
 }
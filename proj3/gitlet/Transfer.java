@@ -0,0 +1,119 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/** Copies the history of one commit from one repository's object store
+ *  to another's, as push and fetch do.
+ *
+ *  The receiving store is the have-set: packs are installed whole, so a
+ *  store that holds a commit also holds every ancestor of that commit and
+ *  every blob they track.  The sender walks back from the commit being
+ *  sent through its commit graph and stops at each commit the receiver
+ *  already has, which gives exactly the missing commits without reading
+ *  any commit the receiver has.  Only the missing commits are decoded,
+ *  to find the blobs the receiver lacks.  All missing objects are sent
+ *  as one pack, which the receiver sees only once it is complete; an
+ *  interrupted transfer leaves the receiver as it was, and running it
+ *  again sends only what is still missing.
+ *  @author Mengmeng Yang
+ */
+class Transfer {
+
+    /**
+     * A transfer from the store FROM, whose commit graph is GRAPH, to the
+     * store TO.
+     * @param from The sending object store
+     * @param graph The commit graph of the sender
+     * @param to The receiving object store
+     */
+    Transfer(ObjectStore from, CommitGraph graph, ObjectStore to) {
+        _from = from;
+        _graph = graph;
+        _to = to;
+    }
+
+    /** Return the commits reachable from commit TIP that the receiver
+     *  lacks, each before its ancestors. */
+    List<String> missing(String tip) {
+        List<String> result = new ArrayList<>();
+        HashSet<Integer> seen = new HashSet<>();
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        stack.push(_graph.index(tip));
+        while (!stack.isEmpty()) {
+            int k = stack.pop();
+            if (!seen.add(k)
+                || _to.contains(ObjectStore.COMMIT, _graph.id(k))) {
+                continue;
+            }
+            result.add(_graph.id(k));
+            for (int p : new int[] { _graph.parent2(k), _graph.parent(k) }) {
+                if (p >= 0 && !seen.contains(p)) {
+                    stack.push(p);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Send the receiver every commit reachable from TIP that it lacks,
+     *  with the tree nodes and blobs they need that it lacks, in one
+     *  pack.  A commit of an older version is sent in the current format,
+     *  the contents of its Blobs being stored in the receiver directly.
+     *  Return the commits sent. */
+    List<Commit> send(String tip) {
+        List<Commit> sent = new ArrayList<>();
+        List<String> commits = missing(tip);
+        if (commits.isEmpty()) {
+            return sent;
+        }
+        PackFile.Writer writer = _to.newPack();
+        HashSet<String> blobs = new HashSet<>();
+        HashSet<String> nodes = new HashSet<>();
+        Tree.Store trees = Tree.in(_from);
+        for (String id : commits) {
+            byte[] bytes = Codec.upgradeCommit(
+                _from.read(ObjectStore.COMMIT, id), _to);
+            Commit commit = Codec.decodeCommit(bytes, _to);
+            writer.add(id, ObjectStore.COMMIT, bytes);
+            BiConsumer<String, String> file = (name, blob) -> {
+                if (blobs.add(blob)
+                    && !_to.contains(ObjectStore.BLOB, blob)) {
+                    writer.add(blob, ObjectStore.BLOB, _from);
+                }
+            };
+            if (commit.getTree() != null) {
+                Tree.walk(trees, commit.getTree(),
+                          node -> sendTree(node, writer, nodes), file);
+            } else {
+                commit.getBlobs().forEach(file);
+            }
+            sent.add(commit);
+        }
+        _to.addPack(writer);
+        return sent;
+    }
+
+    /** Add tree node ID to WRITER unless it is in SENT or the receiver
+     *  has it, adding it to SENT.  Return true iff it was added, so that
+     *  only the subtrees the receiver lacks are visited. */
+    private boolean sendTree(String id, PackFile.Writer writer,
+                             Set<String> sent) {
+        if (!sent.add(id) || _to.contains(ObjectStore.TREE, id)) {
+            return false;
+        }
+        writer.add(id, ObjectStore.TREE, _from.read(ObjectStore.TREE, id));
+        return true;
+    }
+
+    /** The sending object store. */
+    private final ObjectStore _from;
+    /** The commit graph of the sender. */
+    private final CommitGraph _graph;
+    /** The receiving object store. */
+    private final ObjectStore _to;
+}
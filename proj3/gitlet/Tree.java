@@ -0,0 +1,333 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/** One node of the tree of files a commit tracks, mapping file names to
+ *  blob ids.  Gitlet's working directory is flat, so rather than follow
+ *  folders a tree is a trie on a hash of each file name: a set of at most
+ *  LEAF_MAX files (or any set at depth MAX_DEPTH) is a leaf listing the
+ *  names and blob ids in order of name, and a larger set is an interior
+ *  node whose FANOUT children hold the files whose name hashes have each
+ *  value of the next hexadecimal digit.  The shape depends only on the
+ *  set of files, so equal sets have equal trees, and a node is stored
+ *  once, as an object of type ObjectStore.TREE whose id is the SHA-1 of
+ *  its encoding, however many commits share it.
+ *
+ *  Changing k files of a tree of n files reads and writes only the
+ *  O(k log n) nodes on the paths to those files, looking up a file reads
+ *  one path, and comparing two trees skips every subtree they share.
+ *  @author Mengmeng Yang
+ */
+class Tree {
+
+    /** Largest number of files in a leaf above MAX_DEPTH. */
+    static final int LEAF_MAX = 64;
+    /** Number of children of an interior node. */
+    static final int FANOUT = 16;
+    /** Depth of the deepest nodes, which are always leaves. */
+    static final int MAX_DEPTH = 8;
+
+    /** Where tree nodes are read from and written to. */
+    interface Store {
+        /** Return the encoding of node ID. */
+        byte[] read(String id);
+
+        /** Store DATA, the encoding of node ID. */
+        void write(String id, byte[] data);
+    }
+
+    /** Return a Store keeping nodes in OBJECTS. */
+    static Store in(ObjectStore objects) {
+        return new Store() {
+            @Override
+            public byte[] read(String id) {
+                return objects.read(ObjectStore.TREE, id);
+            }
+
+            @Override
+            public void write(String id, byte[] data) {
+                objects.write(ObjectStore.TREE, id, data);
+            }
+        };
+    }
+
+    /**
+     * A leaf holding the files NAMES, in order, with blob ids IDS.
+     * @param names The file names
+     * @param ids The blob ids
+     */
+    Tree(String[] names, String[] ids) {
+        _names = names;
+        _ids = ids;
+        _children = null;
+        _size = names.length;
+    }
+
+    /**
+     * An interior node holding SIZE files in CHILDREN, the ids of its
+     * FANOUT children, null where a child would be empty.
+     * @param size The number of files
+     * @param children The child ids
+     */
+    Tree(int size, String[] children) {
+        _names = null;
+        _ids = null;
+        _children = children;
+        _size = size;
+    }
+
+    /** Return true iff this is a leaf. */
+    boolean isLeaf() {
+        return _children == null;
+    }
+
+    /** Return the number of files under this node. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the names of the files of this leaf, in order. */
+    String[] names() {
+        return _names;
+    }
+
+    /** Return the blob ids of the files of this leaf. */
+    String[] ids() {
+        return _ids;
+    }
+
+    /** Return the child ids of this interior node. */
+    String[] children() {
+        return _children;
+    }
+
+    /** Store in STORE the tree of FILES, a map from names to blob ids, and
+     *  return the id of its root. */
+    static String write(Store store, Map<String, String> files) {
+        return build(store, new TreeMap<>(files), 0)._id;
+    }
+
+    /** Store in STORE the tree that results from applying CHANGES to tree
+     *  ROOT, and return the id of its root.  CHANGES maps file names to
+     *  new blob ids, or to null for files no longer tracked. */
+    static String update(Store store, String root,
+                         Map<String, String> changes) {
+        if (changes.isEmpty()) {
+            return root;
+        }
+        return update(store, read(store, root), new TreeMap<>(changes),
+                      0)._id;
+    }
+
+    /** Return the blob id of file NAME in tree ROOT of STORE, or null if
+     *  the tree does not track NAME. */
+    static String get(Store store, String root, String name) {
+        int hash = hash(name);
+        for (int depth = 0; root != null; depth += 1) {
+            Tree node = read(store, root);
+            if (node.isLeaf()) {
+                int k = Arrays.binarySearch(node._names, name);
+                return k < 0 ? null : node._ids[k];
+            }
+            root = node._children[digit(hash, depth)];
+        }
+        return null;
+    }
+
+    /** Return all files of tree ROOT of STORE, as a map from names to
+     *  blob ids in order of name. */
+    static LinkedHashMap<String, String> files(Store store, String root) {
+        TreeMap<String, String> files = new TreeMap<>();
+        walk(store, root, id -> true, files::put);
+        return new LinkedHashMap<>(files);
+    }
+
+    /** Visit the nodes of tree ROOT of STORE in preorder: each node id is
+     *  passed to ENTER, and the node is read and its children or files
+     *  visited only if ENTER returns true.  The name and blob id of each
+     *  file of a leaf are passed to FILE. */
+    static void walk(Store store, String root, Predicate<String> enter,
+                     BiConsumer<String, String> file) {
+        if (root == null || !enter.test(root)) {
+            return;
+        }
+        Tree node = read(store, root);
+        if (node.isLeaf()) {
+            for (int i = 0; i < node._names.length; i += 1) {
+                file.accept(node._names[i], node._ids[i]);
+            }
+        } else {
+            for (String child : node._children) {
+                walk(store, child, enter, file);
+            }
+        }
+    }
+
+    /** Add to RESULT the names of the files whose blob ids differ between
+     *  trees A and B of STORE, including files only one of them tracks.
+     *  Subtrees the two share are skipped. */
+    static void diff(Store store, String a, String b, Set<String> result) {
+        if (a == null ? b == null : a.equals(b)) {
+            return;
+        }
+        Tree nodeA = a == null ? null : read(store, a);
+        Tree nodeB = b == null ? null : read(store, b);
+        if (nodeA != null && nodeB != null
+            && !nodeA.isLeaf() && !nodeB.isLeaf()) {
+            for (int k = 0; k < FANOUT; k += 1) {
+                diff(store, nodeA._children[k], nodeB._children[k], result);
+            }
+            return;
+        }
+        Map<String, String> filesA = files(store, a);
+        Map<String, String> filesB = files(store, b);
+        for (Map.Entry<String, String> entry : filesA.entrySet()) {
+            if (!entry.getValue().equals(filesB.get(entry.getKey()))) {
+                result.add(entry.getKey());
+            }
+        }
+        for (String name : filesB.keySet()) {
+            if (!filesA.containsKey(name)) {
+                result.add(name);
+            }
+        }
+    }
+
+    /** Return the node of STORE with id ID. */
+    static Tree read(Store store, String id) {
+        Tree node = Codec.decodeTree(store.read(id));
+        node._id = id;
+        return node;
+    }
+
+    /** Store the canonical node at DEPTH for FILES, a map from names to
+     *  blob ids, in STORE and return it. */
+    private static Tree build(Store store, TreeMap<String, String> files,
+                              int depth) {
+        Tree node;
+        if (files.isEmpty() && depth > 0) {
+            return EMPTY;
+        } else if (files.size() <= LEAF_MAX || depth == MAX_DEPTH) {
+            node = new Tree(files.keySet().toArray(new String[0]),
+                            files.values().toArray(new String[0]));
+        } else {
+            List<TreeMap<String, String>> parts = split(files, depth);
+            String[] children = new String[FANOUT];
+            for (int k = 0; k < FANOUT; k += 1) {
+                if (!parts.get(k).isEmpty()) {
+                    children[k] = build(store, parts.get(k), depth + 1)._id;
+                }
+            }
+            node = new Tree(files.size(), children);
+        }
+        return save(store, node);
+    }
+
+    /** Store in STORE the node at DEPTH that results from applying CHANGES
+     *  to NODE, and return it. */
+    private static Tree update(Store store, Tree node,
+                               TreeMap<String, String> changes, int depth) {
+        if (node.isLeaf()) {
+            TreeMap<String, String> files = new TreeMap<>();
+            for (int i = 0; i < node._names.length; i += 1) {
+                files.put(node._names[i], node._ids[i]);
+            }
+            apply(files, changes);
+            return build(store, files, depth);
+        }
+        List<TreeMap<String, String>> parts = split(changes, depth);
+        String[] children = node._children.clone();
+        int size = node._size;
+        for (int k = 0; k < FANOUT; k += 1) {
+            if (parts.get(k).isEmpty()) {
+                continue;
+            }
+            Tree old = children[k] == null ? EMPTY : read(store, children[k]);
+            Tree child = update(store, old, parts.get(k), depth + 1);
+            children[k] = child._id;
+            size += child._size - old._size;
+        }
+        if (size <= LEAF_MAX) {
+            TreeMap<String, String> files = new TreeMap<>();
+            for (String child : children) {
+                walk(store, child, c -> true, files::put);
+            }
+            return build(store, files, depth);
+        }
+        return save(store, new Tree(size, children));
+    }
+
+    /** Apply CHANGES to FILES. */
+    private static void apply(TreeMap<String, String> files,
+                              Map<String, String> changes) {
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                files.remove(change.getKey());
+            } else {
+                files.put(change.getKey(), change.getValue());
+            }
+        }
+    }
+
+    /** Return the entries of MAP divided by the digit of the hashes of
+     *  their names at DEPTH. */
+    private static List<TreeMap<String, String>> split(
+        TreeMap<String, String> map, int depth) {
+        List<TreeMap<String, String>> result = new ArrayList<>();
+        for (int k = 0; k < FANOUT; k += 1) {
+            result.add(new TreeMap<>());
+        }
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            result.get(digit(hash(entry.getKey()), depth))
+                .put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /** Encode NODE, set its id and store it in STORE.  Return NODE. */
+    private static Tree save(Store store, Tree node) {
+        byte[] bytes = Codec.encode(node);
+        node._id = Utils.sha1((Object) bytes);
+        store.write(node._id, bytes);
+        return node;
+    }
+
+    /** Return the hash of file name NAME that places it in a tree.  It
+     *  depends only on NAME, so that trees have the same shape
+     *  everywhere. */
+    static int hash(String name) {
+        int h = name.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    /** Return the hexadecimal digit of HASH used at DEPTH. */
+    private static int digit(int hash, int depth) {
+        return (hash >>> (28 - 4 * depth)) & (FANOUT - 1);
+    }
+
+    /** The empty leaf, which has no id below the root. */
+    private static final Tree EMPTY = new Tree(new String[0], new String[0]);
+
+    /** The file names of a leaf, in order, or null. */
+    private final String[] _names;
+    /** The blob ids of the files of a leaf, or null. */
+    private final String[] _ids;
+    /** The ids of the children of an interior node, or null. */
+    private final String[] _children;
+    /** The number of files under this node. */
+    private final int _size;
+    /** The id of this node, once known. */
+    private String _id;
+}
@@ -4,6 +4,27 @@ import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
  */
@@ -20,6 +41,1128 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
-}
+    /** Streaming hashes agree with hashing the whole contents at once,
+     *  including for files spanning several chunks. */
+    @Test
+    public void sha1FileTest() throws IOException {
+        File file = File.createTempFile("gitlet", ".bin");
+        file.deleteOnExit();
+        byte[] contents = new byte[Utils.HASH_CHUNK_SIZE * 3 + 17];
+        for (int i = 0; i < contents.length; i += 1) {
+            contents[i] = (byte) (i * 31);
+        }
+        Utils.writeContents(file, contents);
+        assertEquals(Utils.sha1(contents), Utils.sha1File(file));
+        Utils.writeContents(file, "");
+        assertEquals(Utils.sha1(""), Utils.sha1File(file));
+    }
+
+    /** Commits survive a round trip through both the binary encoding and
+     *  the old serialized format. */
+    @Test
+    public void codecCommitTest() {
+        LinkedHashMap<String, String> blobs = new LinkedHashMap<>();
+        blobs.put("a.txt", Utils.sha1("a"));
+        blobs.put("\u00e9t\u00e9.txt", Utils.sha1("b"));
+        Commit commit = new Commit("m\u00e9ssage", "Thu Jan 1 00:00:00 1970",
+                Utils.sha1("p1"), Utils.sha1("p2"), Utils.sha1("c"), blobs);
+        byte[] bytes = Codec.encode(commit);
+        assertArrayEquals(bytes,
+                          Codec.upgradeCommit(Utils.serialize(commit), null));
+        Commit copy = Codec.decodeCommit(bytes, null);
+        assertEquals(commit.getMessage(), copy.getMessage());
+        assertEquals(commit.getTimestamp(), copy.getTimestamp());
+        assertEquals(commit.getParent(), copy.getParent());
+        assertEquals(commit.getParent2(), copy.getParent2());
+        assertEquals(commit.getCommitId(), copy.getCommitId());
+        assertEquals(blobs, copy.getBlobs());
+    }
+
+    /** A commit serialized by the version of gitlet that kept whole Blobs
+     *  in commits: the initial commit of a repository, with message
+     *  "legacy" and files a.txt holding "hello\n" and b.txt holding
+     *  "world\n". */
+    private static final String LEGACY_COMMIT =
+        "aced00057372000d6769746c65742e436f6d6d69744faba1c34cfa1d21020006"
+        + "4c00095f636f6d6d697449647400124c6a6176612f6c616e672f537472696e67"
+        + "3b4c000c5f66696c65546f426c6f62737400194c6a6176612f7574696c2f4c69"
+        + "6e6b6564486173684d61703b4c00085f6d65737361676571007e00014c00075f"
+        + "706172656e7471007e00014c00085f706172656e743271007e00014c000a5f74"
+        + "696d657374616d7071007e000178707400283266383532363463373533623737"
+        + "6461303031383539623764623731616261663664613338303863737200176a61"
+        + "76612e7574696c2e4c696e6b6564486173684d617034c04e5c106cc0fb020001"
+        + "5a000b6163636573734f72646572787200116a6176612e7574696c2e48617368"
+        + "4d61700507dac1c31660d103000246000a6c6f6164466163746f724900097468"
+        + "726573686f6c6478703f4000000000000c77080000001000000002740005612e"
+        + "7478747372000c6769746c65742e426c6f6273333c9f895e19e4da0200035b00"
+        + "0c5f626c6f62436f6e74656e747400025b424c00095f66696c654e616d657100"
+        + "7e00014c00055f6861736871007e00017870757200025b42acf317f8060854e0"
+        + "02000078700000000668656c6c6f0a71007e0008740028333061323863306566"
+        + "6539386532666464373465393065333537386565346231356437336565303274"
+        + "0005622e7478747371007e00097571007e000c00000006776f726c640a71007e"
+        + "000f740028366564353233373633613835383063396136383832663831653634"
+        + "3564653230633530643861356578007400066c6567616379707074001d546875"
+        + "204a616e20312030303a30303a30302031393730202b30303030";
+
+    /** A commit serialized by an older version decodes with its own id,
+     *  its Blobs stored as blobs named by the hashes of their contents. */
+    @Test
+    public void legacyCommitTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore objects = new ObjectStore(dir);
+        byte[] bytes = Utils.fromHex(LEGACY_COMMIT);
+        Commit commit = Codec.decodeCommit(bytes, objects);
+        assertEquals("2f85264c753b77da001859b7db71abaf6da3808c",
+                     commit.getCommitId());
+        assertEquals("legacy", commit.getMessage());
+        assertNull(commit.getParent());
+        String a = Utils.sha1("hello\n"), b = Utils.sha1("world\n");
+        assertEquals("{a.txt=" + a + ", b.txt=" + b + "}",
+                     commit.getBlobs().toString());
+        assertEquals("hello\n",
+                     new String(objects.read(ObjectStore.BLOB, a)));
+        assertEquals("world\n",
+                     new String(objects.read(ObjectStore.BLOB, b)));
+        Commit copy = Codec.decodeCommit(Codec.upgradeCommit(bytes, objects),
+                                         null);
+        assertEquals(commit.getCommitId(), copy.getCommitId());
+        assertEquals(commit.getBlobs(), copy.getBlobs());
+    }
+
+    /** global-log reads the commits of an older version, writing their
+     *  blobs, alongside current ones. */
+    @Test
+    public void legacyGlobalLogTest()
+        throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        File gitlet = Utils.join(dir, ".gitlet");
+        gitlet(dir, "init");
+        String legacy = "2f85264c753b77da001859b7db71abaf6da3808c";
+        Utils.writeContents(Utils.join(gitlet, "commits", legacy),
+                            (Object) Utils.fromHex(LEGACY_COMMIT));
+        String log = gitlet(dir, "global-log");
+        assertTrue(log.contains("commit " + legacy + "\n"));
+        assertTrue(log.contains("\nlegacy\n"));
+        assertTrue(log.contains("\ninitial commit\n"));
+        assertEquals(2, log.split("===").length - 1);
+        ObjectStore objects = new ObjectStore(gitlet);
+        assertEquals("hello\n", new String(
+            objects.read(ObjectStore.BLOB, Utils.sha1("hello\n"))));
+        assertEquals("world\n", new String(
+            objects.read(ObjectStore.BLOB, Utils.sha1("world\n"))));
+        assertEquals(log, gitlet(dir, "global-log"));
+    }
+
+    /** Staging areas survive a round trip through the binary encoding. */
+    @Test
+    public void codecStageTest() {
+        StagingArea stage = new StagingArea();
+        stage.getAdded().put("a.txt", Utils.sha1("a"));
+        stage.getRemoved().add("b.txt");
+        StagingArea copy =
+            Codec.decodeStagingArea(Codec.encode(stage), null);
+        assertEquals(stage.getAdded(), copy.getAdded());
+        assertEquals(stage.getRemoved(), copy.getRemoved());
+    }
+
+    /** Return the three-way merge of CURR and GIVEN against BASE, with a
+     *  final "!" if it has conflicts. */
+    private static String merge3(String base, String curr, String given)
+        throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean conflict = Diff3.merge(base.getBytes(), curr.getBytes(),
+                                       given.getBytes(), out);
+        return out + (conflict ? "!" : "");
+    }
+
+    /** Edits to different lines are merged; edits to the same lines
+     *  conflict only where they differ. */
+    @Test
+    public void diff3Test() throws IOException {
+        assertEquals("A\nb\nc\nD\n",
+                     merge3("a\nb\nc\nd\n", "A\nb\nc\nd\n", "a\nb\nc\nD\n"));
+        assertEquals("a\nc\nd\n",
+                     merge3("a\nb\nc\n", "a\nc\n", "a\nb\nc\nd\n"));
+        assertEquals("a\nZ\nb\n",
+                     merge3("a\nb\n", "a\nZ\nb\n", "a\nZ\nb\n"));
+        assertEquals("a\n<<<<<<< HEAD\nX\n=======\nY\n>>>>>>>\nc\n!",
+                     merge3("a\nb\nc\n", "a\nX\nc\n", "a\nY\nc\n"));
+        assertEquals("<<<<<<< HEAD\nx\n=======\ny\n>>>>>>>\n!",
+                     merge3("", "x\n", "y\n"));
+    }
+
+    /** Matches form a longest common subsequence. */
+    @Test
+    public void diffTest() {
+        int[] a = { 1, 2, 3, 4, 1, 2 };
+        int[] b = { 2, 4, 1, 3, 2 };
+        int[] match = Diff.match(a, b);
+        int length = 0, last = -1;
+        for (int i = 0; i < a.length; i += 1) {
+            if (match[i] >= 0) {
+                assertTrue(match[i] > last);
+                assertEquals(a[i], b[match[i]]);
+                last = match[i];
+                length += 1;
+            }
+        }
+        assertEquals(4, length);
+    }
+
+    /** Writes in a transaction appear only when it commits, and a
+     *  committed record whose files may not have been replaced is applied
+     *  again by recover. */
+    @Test
+    public void journalTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        File file = Utils.join(dir, "head");
+        File log = Utils.join(dir, "journal");
+        Journal journal = new Journal(dir);
+        journal.begin();
+        journal.write(file, "one".getBytes());
+        assertFalse(file.exists());
+        journal.write(file, "two".getBytes());
+        journal.commit();
+        assertEquals("two", Utils.readContentsAsString(file));
+        byte[] record = Utils.readContents(log);
+        Utils.writeContents(log, Arrays.copyOf(record, record.length - 1));
+        Utils.writeContents(file, "one");
+        new Journal(dir).recover();
+        assertEquals("two", Utils.readContentsAsString(file));
+        assertEquals(0, log.length());
+        file.delete();
+        log.delete();
+        dir.delete();
+    }
+
+    /** Appends and deletions in a transaction happen only when it
+     *  commits, and recover replays an append without repeating it. */
+    @Test
+    public void journalAppendTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        File file = Utils.join(dir, "graph");
+        File ref = Utils.join(dir, "ref");
+        File log = Utils.join(dir, "journal");
+        Utils.writeContents(file, "ab");
+        Utils.writeContents(ref, "x");
+        Journal journal = new Journal(dir);
+        journal.begin();
+        journal.append(file, "cd".getBytes());
+        journal.append(file, "ef".getBytes());
+        journal.delete(ref);
+        assertEquals("ab", Utils.readContentsAsString(file));
+        assertTrue(ref.exists());
+        journal.commit();
+        assertEquals("abcdef", Utils.readContentsAsString(file));
+        assertFalse(ref.exists());
+        byte[] record = Utils.readContents(log);
+        Utils.writeContents(log, Arrays.copyOf(record, record.length - 1));
+        new Journal(dir).recover();
+        assertEquals("abcdef", Utils.readContentsAsString(file));
+        Utils.writeContents(log, Arrays.copyOf(record, record.length - 1));
+        Utils.writeContents(file, "abcd");
+        Utils.writeContents(ref, "x");
+        new Journal(dir).recover();
+        assertEquals("abcdef", Utils.readContentsAsString(file));
+        assertFalse(ref.exists());
+        assertEquals(0, log.length());
+        file.delete();
+        log.delete();
+        dir.delete();
+    }
+
+    /** Write to OBJECTS a commit with no files, message MESSAGE and
+     *  parents PARENT and PARENT2, either possibly null, returning its
+     *  id. */
+    private static String commit(ObjectStore objects, String message,
+                                 String parent, String parent2) {
+        Commit commit =
+            new Commit(message, parent, parent2, new LinkedHashMap<>());
+        objects.write(ObjectStore.COMMIT, commit.getCommitId(),
+                      Codec.encode(commit));
+        return commit.getCommitId();
+    }
+
+    /** Return the ids IDS in increasing order. */
+    private static List<String> sorted(String... ids) {
+        List<String> result = new ArrayList<>(Arrays.asList(ids));
+        result.sort(null);
+        return result;
+    }
+
+    /** A message index is built from the commits when its file is
+     *  missing, appends the commits added to it, and is built again when
+     *  its file is damaged. */
+    @Test
+    public void messageIndexTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore objects = new ObjectStore(dir);
+        Journal journal = new Journal(dir);
+        File file = Utils.join(dir, "messages");
+        String c1 = commit(objects, "a", null, null);
+        String c2 = commit(objects, "b", c1, null);
+        String c3 = commit(objects, "a", c2, null);
+        MessageIndex index = new MessageIndex(file, objects);
+        assertEquals(sorted(c1, c3), index.find("a"));
+        assertEquals(sorted(c2), index.find("b"));
+        assertTrue(index.find("c").isEmpty());
+        index.save(journal);
+        long length = file.length();
+        String c4 = commit(objects, "b", c3, null);
+        index.add(c4, "b");
+        index.add(c4, "b");
+        index.save(journal);
+        assertTrue(file.length() > length);
+        index = new MessageIndex(file, objects);
+        assertEquals(sorted(c2, c4), index.find("b"));
+        assertEquals(sorted(c1, c3), index.find("a"));
+        byte[] bytes = Utils.readContents(file);
+        Utils.writeContents(file, (Object) Arrays.copyOf(bytes, 25));
+        index = new MessageIndex(file, objects);
+        assertEquals(sorted(c1, c3), index.find("a"));
+        assertEquals(sorted(c2, c4), index.find("b"));
+        index.save(journal);
+        assertEquals(bytes.length, file.length());
+        index = new MessageIndex(file, objects);
+        assertEquals(sorted(c2, c4), index.find("b"));
+    }
+
+    /** Return the ids of ID and all its ancestors, given the ids of the
+     *  parents of each commit in PARENTS. */
+    private static Set<String> ancestors(Map<String, List<String>> parents,
+                                         String id) {
+        Set<String> result = new TreeSet<>();
+        ArrayDeque<String> stack = new ArrayDeque<>(List.of(id));
+        while (!stack.isEmpty()) {
+            String top = stack.pop();
+            if (result.add(top)) {
+                stack.addAll(parents.get(top));
+            }
+        }
+        return result;
+    }
+
+    /** Ancestry and best common ancestors in a history with criss-cross
+     *  merges and branches of different lengths agree with a brute-force
+     *  walk, and survive saving, appending to and damaging the graph's
+     *  file. */
+    @Test
+    public void commitGraphTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore objects = new ObjectStore(dir);
+        Journal journal = new Journal(dir);
+        LinkedHashMap<String, List<String>> parents = new LinkedHashMap<>();
+        String[][] history = {
+            {"r"}, {"x", "r"}, {"y", "r"}, {"m1", "x", "y"}, {"m2", "y", "x"},
+            {"c", "m1"}, {"d", "m2"}, {"e1", "d"}, {"e2", "e1"},
+            {"e3", "e2"}, {"f", "c", "e3"}, {"g", "r"}, {"h", "g", "y"},
+        };
+        HashMap<String, String> ids = new HashMap<>();
+        for (String[] commit : history) {
+            String p1 = commit.length > 1 ? ids.get(commit[1]) : null;
+            String p2 = commit.length > 2 ? ids.get(commit[2]) : null;
+            String id = commit(objects, commit[0], p1, p2);
+            ids.put(commit[0], id);
+            List<String> ps = new ArrayList<>();
+            for (String p : new String[] {p1, p2}) {
+                if (p != null) {
+                    ps.add(p);
+                }
+            }
+            parents.put(id, ps);
+        }
+        File file = Utils.join(dir, "commit-graph");
+        CommitGraph graph = new CommitGraph(file, objects);
+        graph.index(ids.get("f"));
+        graph.index(ids.get("h"));
+        assertEquals(history.length, graph.size());
+        for (String a : parents.keySet()) {
+            for (String b : parents.keySet()) {
+                Set<String> common = ancestors(parents, a);
+                assertEquals(common.contains(b), graph.isAncestor(b, a));
+                common.retainAll(ancestors(parents, b));
+                String base = graph.mergeBase(a, b);
+                assertTrue(common.contains(base));
+                for (String other : common) {
+                    assertTrue(other.equals(base)
+                               || !ancestors(parents, other).contains(base));
+                }
+            }
+        }
+        String base = graph.mergeBase(ids.get("c"), ids.get("d"));
+        assertTrue(base.equals(ids.get("x")) || base.equals(ids.get("y")));
+        assertEquals(ids.get("y"),
+                     graph.mergeBase(ids.get("h"), ids.get("f")));
+
+        graph.save(journal);
+        assertEquals(history.length * CommitGraph.RECORD, file.length());
+        String extra = commit(objects, "extra", ids.get("f"), ids.get("h"));
+        graph.index(extra);
+        graph.save(journal);
+        assertEquals((history.length + 1) * CommitGraph.RECORD,
+                     file.length());
+        CommitGraph copy = new CommitGraph(file, objects);
+        assertEquals(graph.size(), copy.size());
+        for (int k = 0; k < graph.size(); k += 1) {
+            assertEquals(graph.id(k), copy.id(k));
+            assertEquals(graph.parent(k), copy.parent(k));
+            assertEquals(graph.parent2(k), copy.parent2(k));
+            assertEquals(graph.generation(k), copy.generation(k));
+        }
+        assertTrue(copy.isAncestor(ids.get("g"), extra));
+
+        byte[] bytes = Utils.readContents(file);
+        Utils.writeContents(file, (Object) Arrays.copyOf(bytes,
+                                                         bytes.length - 5));
+        CommitGraph torn = new CommitGraph(file, objects);
+        assertEquals(history.length, torn.size());
+        assertNull(torn.find(extra));
+        assertTrue(torn.isAncestor(ids.get("g"), extra));
+        torn.save(journal);
+        assertArrayEquals(bytes, Utils.readContents(file));
+
+        byte[] damaged = bytes.clone();
+        ByteBuffer.wrap(damaged).putInt(3 * CommitGraph.RECORD
+                                        + PackFile.ID_BYTES, 7);
+        Utils.writeContents(file, (Object) damaged);
+        CommitGraph broken = new CommitGraph(file, objects);
+        assertEquals(3, broken.size());
+        assertEquals(ids.get("m1"),
+                     broken.mergeBase(ids.get("f"), ids.get("m1")));
+        broken.index(extra);
+        broken.save(journal);
+        assertEquals(bytes.length, file.length());
+        assertEquals(graph.size(), new CommitGraph(file, objects).size());
+    }
+
+    /** Imported commits build on each other and on the head commit, and
+     *  identical contents are stored once. */
+    @Test
+    public void fastImportTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore objects = new ObjectStore(dir);
+        Commit initial = new Commit("initial commit", null, null,
+                                    new LinkedHashMap<>());
+        objects.write(ObjectStore.COMMIT, initial.getCommitId(),
+                      Codec.encode(initial));
+        String stream = "commit master\ndata 3\none\n"
+            + "M 5 a.txt\nhello\nM 5 b.txt\nhello\n\n"
+            + "commit master\ndate 0\ndata 3\ntwo\nD a.txt\n";
+        LinkedHashMap<String, String> tips = new LinkedHashMap<>();
+        FastImport importer =
+            new FastImport(objects, tips, initial.getCommitId());
+        List<Commit> commits = importer.run(
+            new ByteArrayInputStream(stream.getBytes()));
+        assertEquals(2, commits.size());
+        assertEquals(1, importer.blobs());
+        Commit two = Codec.readCommit(objects, tips.get("master"));
+        assertEquals("two", two.getMessage());
+        assertEquals(commits.get(0).getCommitId(), two.getParent());
+        assertEquals(initial.getCommitId(), commits.get(0).getParent());
+        Map<String, String> files =
+            Tree.files(Tree.in(objects), two.getTree());
+        assertEquals("[b.txt]", files.keySet().toString());
+        assertEquals("hello", new String(objects.read(ObjectStore.BLOB,
+            files.get("b.txt"))));
+    }
+
+    /** A blob longer than PackFile.STREAM_MIN is packed and exported as a
+     *  stream and comes back unchanged. */
+    @Test
+    public void packStreamTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore loose = new ObjectStore(dir);
+        byte[] contents = new byte[(int) PackFile.STREAM_MIN + 1000];
+        for (int i = 0; i < contents.length; i += 1) {
+            contents[i] = (byte) (i % 251 + i / 4096);
+        }
+        String id = Utils.sha1(contents);
+        loose.write(ObjectStore.BLOB, id, contents);
+        File packed = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore objects = new ObjectStore(packed);
+        PackFile.Writer writer = objects.newPack();
+        writer.add(id, ObjectStore.BLOB, loose);
+        objects.addPack(writer);
+        objects.reload();
+        assertEquals(contents.length, objects.length(ObjectStore.BLOB, id));
+        File out = Utils.join(packed, "out");
+        objects.export(ObjectStore.BLOB, id, out);
+        assertArrayEquals(contents, Utils.readContents(out));
+        assertArrayEquals(contents, objects.read(ObjectStore.BLOB, id));
+    }
+
+    /** Return the ids in IDS that start with PREFIX, in increasing
+     *  order. */
+    private static List<String> matching(List<String> ids, String prefix) {
+        List<String> result = new ArrayList<>();
+        for (String id : ids) {
+            if (id.startsWith(prefix)) {
+                result.add(id);
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    /** Prefixes of ids name the loose, packed and flat objects that start
+     *  with them, up to a limit, and malformed prefixes name nothing. */
+    @Test
+    public void resolveTest() throws IOException {
+        ObjectStore source =
+            new ObjectStore(Files.createTempDirectory("gitlet").toFile());
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore objects = new ObjectStore(dir);
+        List<String> packed = new ArrayList<>(), loose = new ArrayList<>();
+        PackFile.Writer writer = objects.newPack();
+        for (int i = 0; i < 40; i += 1) {
+            String contents = "blob " + i;
+            String id = Utils.sha1(contents);
+            if (i % 2 == 0) {
+                source.write(ObjectStore.BLOB, id, contents.getBytes());
+                writer.add(id, ObjectStore.BLOB, source);
+                packed.add(id);
+            } else {
+                objects.write(ObjectStore.BLOB, id, contents.getBytes());
+                loose.add(id);
+            }
+        }
+        objects.addPack(writer);
+        String flat = Utils.sha1("flat");
+        Utils.writeContents(Utils.join(dir, "blobs", flat), "flat");
+        loose.add(flat);
+        objects.reload();
+        List<String> all = new ArrayList<>(packed);
+        all.addAll(loose);
+        boolean mixed = false;
+        for (String id : all) {
+            for (int n = 1; n <= 3; n += 1) {
+                String prefix = id.substring(0, n);
+                List<String> expected = matching(all, prefix);
+                assertEquals(prefix, expected,
+                             objects.resolve(ObjectStore.BLOB, prefix, 100));
+                assertEquals(prefix, expected.subList(0, 1),
+                             objects.resolve(ObjectStore.BLOB, prefix, 1));
+                mixed |= !matching(packed, prefix).isEmpty()
+                    && !matching(loose, prefix).isEmpty();
+            }
+            assertEquals(List.of(id),
+                         objects.resolve(ObjectStore.BLOB, id, 2));
+            assertEquals(List.of(id), objects.resolve(
+                ObjectStore.BLOB, id.substring(0, 8).toUpperCase(), 2));
+        }
+        assertTrue(mixed);
+        assertEquals(List.of(flat),
+                     objects.resolve(ObjectStore.BLOB, flat, 2));
+        String absent = "0000000";
+        assertTrue(matching(all, absent).isEmpty());
+        assertTrue(objects.resolve(ObjectStore.BLOB, absent, 2).isEmpty());
+        assertTrue(objects.resolve(ObjectStore.BLOB, "", 2).isEmpty());
+        assertTrue(objects.resolve(ObjectStore.BLOB, "xyz", 2).isEmpty());
+        assertTrue(objects.resolve(ObjectStore.BLOB, all.get(0) + "0", 2)
+                   .isEmpty());
+        assertTrue(objects.resolve(ObjectStore.COMMIT, all.get(0), 2)
+                   .isEmpty());
+    }
+
+    /** Commands name commits by unique prefixes of their ids, and report
+     *  prefixes that name several commits or none. */
+    @Test
+    public void commitIdTest() throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        File gitlet = Utils.join(dir, ".gitlet");
+        gitlet(dir, "init");
+        ObjectStore objects = new ObjectStore(gitlet);
+        String initial = Utils.readContentsAsString(Utils.join(gitlet, "head"));
+        List<String> ids = new ArrayList<>(List.of(initial));
+        String shared = null;
+        for (int i = 0; shared == null; i += 1) {
+            String id = commit(objects, "c" + i, initial, null);
+            for (String other : ids) {
+                if (other.charAt(0) == id.charAt(0)) {
+                    shared = id.substring(0, 1);
+                }
+            }
+            ids.add(id);
+        }
+        assertEquals("Ambiguous commit id.\n",
+                     gitlet(dir, "checkout", shared, "--", "a.txt"));
+        assertEquals("Ambiguous commit id.\n", gitlet(dir, "reset", shared));
+        String last = ids.get(ids.size() - 1);
+        String unique = last.substring(0, 7);
+        assertEquals(1, matching(ids, unique).size());
+        assertEquals("File does not exist in that commit.\n",
+                     gitlet(dir, "checkout", unique, "--", "a.txt"));
+        assertEquals("", gitlet(dir, "reset", unique.toUpperCase()));
+        assertEquals(last,
+                     Utils.readContentsAsString(Utils.join(gitlet, "head")));
+        String absent = "0000000";
+        assertTrue(matching(ids, absent).isEmpty());
+        assertEquals("No commit with that id exists.\n",
+                     gitlet(dir, "reset", absent));
+        assertEquals("No commit with that id exists.\n",
+                     gitlet(dir, "checkout", "xyz", "--", "a.txt"));
+    }
+
+    @Test
+    public void treeTest() {
+        HashMap<String, byte[]> nodes = new HashMap<>();
+        Tree.Store store = new Tree.Store() {
+            @Override
+            public byte[] read(String id) {
+                return nodes.get(id);
+            }
 
+            @Override
+            public void write(String id, byte[] data) {
+                nodes.put(id, data);
+            }
+        };
+        TreeMap<String, String> files = new TreeMap<>();
+        for (int i = 0; i < 500; i += 1) {
+            files.put("f" + i + ".txt", Utils.sha1("blob " + i));
+        }
+        String root = Tree.write(store, files);
+        assertFalse(Tree.read(store, root).isLeaf());
+        assertEquals(files, new TreeMap<>(Tree.files(store, root)));
+        assertEquals(files.get("f7.txt"), Tree.get(store, root, "f7.txt"));
+        assertNull(Tree.get(store, root, "g.txt"));
 
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("f7.txt", Utils.sha1("changed"));
+        changes.put("f8.txt", null);
+        changes.put("g.txt", Utils.sha1("new"));
+        String changed = Tree.update(store, root, changes);
+        files.put("f7.txt", Utils.sha1("changed"));
+        files.remove("f8.txt");
+        files.put("g.txt", Utils.sha1("new"));
+        assertEquals(Tree.write(store, files), changed);
+        TreeSet<String> diff = new TreeSet<>();
+        Tree.diff(store, root, changed, diff);
+        assertEquals("[f7.txt, f8.txt, g.txt]", diff.toString());
+
+        HashMap<String, String> removals = new HashMap<>();
+        for (String name : files.keySet()) {
+            if (!name.equals("g.txt")) {
+                removals.put(name, null);
+            }
+        }
+        String small = Tree.update(store, changed, removals);
+        assertTrue(Tree.read(store, small).isLeaf());
+        assertEquals("{g.txt=" + Utils.sha1("new") + "}",
+                     Tree.files(store, small).toString());
+    }
+
+    /** Run gitlet command ARGS in a new JVM in folder DIR, and return
+     *  its output once it finishes. */
+    private static String gitlet(File dir, String... args)
+        throws IOException, InterruptedException {
+        Process process = gitletCommand(dir, args).start();
+        String out = new String(process.getInputStream().readAllBytes(),
+                                "UTF-8");
+        process.waitFor();
+        return out;
+    }
+
+    /** Return a new JVM running gitlet command ARGS in folder DIR, its
+     *  output discarded. */
+    private static Process gitletProcess(File dir, String... args)
+        throws IOException {
+        return gitletCommand(dir, args)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+    }
+
+    /** Return a builder of JVMs running gitlet command ARGS in folder
+     *  DIR. */
+    private static ProcessBuilder gitletCommand(File dir, String... args) {
+        ArrayList<String> command = new ArrayList<>(Arrays.asList(
+            "java", "-cp", System.getProperty("java.class.path"),
+            "gitlet.Main"));
+        command.addAll(Arrays.asList(args));
+        return new ProcessBuilder(command).directory(dir)
+            .redirectError(ProcessBuilder.Redirect.INHERIT);
+    }
+
+    /** Return the output of the daemon listening on SOCKET for the
+     *  request ARGS. */
+    private static String request(File socket, String... args)
+        throws IOException {
+        try (SocketChannel channel = Client.connect(socket)) {
+            assertNotNull(channel);
+            DataOutputStream out =
+                new DataOutputStream(Channels.newOutputStream(channel));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            return new String(Channels.newInputStream(channel)
+                              .readAllBytes(), "UTF-8");
+        }
+    }
+
+    /** Return the names and contents of the plain files in DIR. */
+    private static Map<String, String> workingFiles(File dir) {
+        TreeMap<String, String> result = new TreeMap<>();
+        for (String name : Utils.plainFilenamesIn(dir)) {
+            result.put(name, Utils.readContentsAsString(new File(dir, name)));
+        }
+        return result;
+    }
+
+    /** Checking out a branch creates, overwrites and deletes working files
+     *  as its commit differs from the current one, leaves alone files
+     *  that already match, and changes nothing if an untracked file is in
+     *  the way. */
+    @Test
+    public void checkoutTest() throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        gitlet(dir, "init");
+        Utils.writeContents(Utils.join(dir, "same.txt"), "same");
+        Utils.writeContents(Utils.join(dir, "a.txt"), "a1");
+        Utils.writeContents(Utils.join(dir, "b.txt"), "b1");
+        for (String name : new String[] {"same.txt", "a.txt", "b.txt"}) {
+            gitlet(dir, "add", name);
+        }
+        gitlet(dir, "commit", "one");
+        gitlet(dir, "branch", "two");
+        gitlet(dir, "checkout", "two");
+        gitlet(dir, "rm", "b.txt");
+        Utils.writeContents(Utils.join(dir, "a.txt"), "a2");
+        Utils.writeContents(Utils.join(dir, "c.txt"), "c");
+        gitlet(dir, "add", "a.txt");
+        gitlet(dir, "add", "c.txt");
+        gitlet(dir, "commit", "two");
+        Map<String, String> two = workingFiles(dir);
+        assertEquals("{a.txt=a2, c.txt=c, same.txt=same}", two.toString());
+
+        File same = Utils.join(dir, "same.txt");
+        assertTrue(same.setLastModified(946684800000L));
+        assertEquals("", gitlet(dir, "checkout", "master"));
+        Map<String, String> one = workingFiles(dir);
+        assertEquals("{a.txt=a1, b.txt=b1, same.txt=same}", one.toString());
+        assertEquals(946684800000L, same.lastModified());
+
+        Utils.writeContents(Utils.join(dir, "c.txt"), "mine");
+        assertEquals("There is an untracked file in the way; delete it, or "
+                     + "add and commit it first.\n",
+                     gitlet(dir, "checkout", "two"));
+        one.put("c.txt", "mine");
+        assertEquals(one, workingFiles(dir));
+        assertEquals("master", Utils.readContentsAsString(
+            Utils.join(dir, ".gitlet", "branches", "curr_branch")));
+
+        Utils.join(dir, "c.txt").delete();
+        Utils.writeContents(same, "changed");
+        assertEquals("", gitlet(dir, "checkout", "two"));
+        assertEquals(two, workingFiles(dir));
+        assertEquals("", gitlet(dir, "checkout", "master"));
+        one.remove("c.txt");
+        assertEquals(one, workingFiles(dir));
+    }
+
+    /** Return the type and id of every object of OBJECTS. */
+    private static Set<String> objectSet(ObjectStore objects) {
+        TreeSet<String> result = new TreeSet<>();
+        for (int type : new int[] {ObjectStore.COMMIT, ObjectStore.TREE,
+                                   ObjectStore.BLOB}) {
+            for (String id : objects.list(type)) {
+                result.add(type + " " + id);
+            }
+        }
+        return result;
+    }
+
+    /** Return the type and id of every object of OBJECTS reachable from
+     *  commit TIP. */
+    private static Set<String> reachable(ObjectStore objects, String tip) {
+        TreeSet<String> result = new TreeSet<>();
+        ArrayDeque<String> stack = new ArrayDeque<>(List.of(tip));
+        while (!stack.isEmpty()) {
+            String id = stack.pop();
+            if (!result.add(ObjectStore.COMMIT + " " + id)) {
+                continue;
+            }
+            Commit commit = Codec.decodeCommit(
+                objects.read(ObjectStore.COMMIT, id), objects);
+            if (commit.getTree() != null) {
+                Tree.walk(Tree.in(objects), commit.getTree(),
+                    node -> result.add(ObjectStore.TREE + " " + node),
+                    (name, blob) -> result.add(ObjectStore.BLOB + " " + blob));
+            } else {
+                commit.getBlobs().values().forEach(
+                    blob -> result.add(ObjectStore.BLOB + " " + blob));
+            }
+            if (commit.getParent() != null) {
+                stack.push(commit.getParent());
+            }
+        }
+        return result;
+    }
+
+    /** Return the type and id of every object of the packs in DIR whose
+     *  names are not in OLD. */
+    private static Set<String> newPacked(File dir, List<String> old) {
+        TreeSet<String> result = new TreeSet<>();
+        for (String name : Utils.plainFilenamesIn(dir)) {
+            if (name.endsWith(".pack") && !old.contains(name)) {
+                PackFile pack = new PackFile(Utils.join(dir, name));
+                for (int k = 0; k < pack.size(); k += 1) {
+                    assertTrue(result.add(pack.type(k) + " " + pack.id(k)));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Fetch the branch master of the remote origin into the repository
+     *  in LOCAL, and check that exactly the objects of REMOTE reachable
+     *  from that branch that LOCAL lacked were sent, in at most one new
+     *  pack. */
+    private static void checkFetch(File local, File remote)
+        throws IOException, InterruptedException {
+        File gitlet = Utils.join(local, ".gitlet");
+        File packs = Utils.join(gitlet, "packs");
+        List<String> old = packs.exists()
+            ? Utils.plainFilenamesIn(packs) : new ArrayList<>();
+        Set<String> had = objectSet(new ObjectStore(gitlet));
+        String tip = Utils.readContentsAsString(
+            Utils.join(remote, ".gitlet", "branches", "master"));
+        Set<String> missing = reachable(
+            new ObjectStore(Utils.join(remote, ".gitlet")), tip);
+        missing.removeAll(had);
+        assertEquals("", gitlet(local, "fetch", "origin", "master"));
+        assertEquals(missing, newPacked(packs, old));
+        assertTrue(Utils.plainFilenamesIn(packs).size()
+                   <= old.size() + (missing.isEmpty() ? 0 : 2));
+        had.addAll(missing);
+        assertEquals(had, objectSet(new ObjectStore(gitlet)));
+    }
+
+    /** Fetching sends exactly the commits, tree nodes and blobs the
+     *  receiver lacks, and nothing once it has them. */
+    @Test
+    public void transferTest() throws IOException, InterruptedException {
+        File remote = Files.createTempDirectory("gitlet").toFile();
+        File local = Files.createTempDirectory("gitlet").toFile();
+        gitlet(remote, "init");
+        gitlet(local, "init");
+        gitlet(local, "add-remote", "origin",
+               Utils.join(remote, ".gitlet").getPath());
+        String[][] history = {
+            {"a.txt", "a1", "b.txt", "b1"}, {"a.txt", "a2"},
+            {"c.txt", "c1", "b.txt", "b2"}, {"a.txt", "a1"},
+        };
+        for (int i = 0; i < history.length; i += 1) {
+            for (int k = 0; k < history[i].length; k += 2) {
+                Utils.writeContents(Utils.join(remote, history[i][k]),
+                                    history[i][k + 1]);
+                gitlet(remote, "add", history[i][k]);
+            }
+            gitlet(remote, "commit", "commit " + i);
+            if (i != 1) {
+                checkFetch(local, remote);
+            }
+        }
+        checkFetch(local, remote);
+
+        File packs = Utils.join(local, ".gitlet", "packs");
+        List<String> names = Utils.plainFilenamesIn(packs);
+        checkFetch(local, remote);
+        assertEquals(names, Utils.plainFilenamesIn(packs));
+
+        ObjectStore from = new ObjectStore(Utils.join(remote, ".gitlet"));
+        ObjectStore to = new ObjectStore(Utils.join(local, ".gitlet"));
+        String tip = Utils.readContentsAsString(
+            Utils.join(remote, ".gitlet", "branches", "master"));
+        Transfer transfer = new Transfer(
+            from, new CommitGraph(Utils.join(remote, ".gitlet",
+                                             "commit-graph"), from), to);
+        assertEquals(List.of(), transfer.missing(tip));
+        assertEquals(List.of(), transfer.send(tip));
+        assertEquals(names, Utils.plainFilenamesIn(packs));
+    }
+
+    /** An Index returns the hash it cached for a file until the size,
+     *  modification time or file key of the file change, and does not
+     *  cache files modified within its racy window. */
+    @Test
+    public void indexTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        File file = Utils.join(dir, "a.txt");
+        String name = file.getPath();
+        long old = System.currentTimeMillis() - 10 * Index.RACY_WINDOW;
+        Index index = new Index();
+        Utils.writeContents(file, "one");
+        assertTrue(file.setLastModified(old));
+        assertEquals(Utils.sha1File(file), index.hash(name));
+        String one = index.hash(name);
+
+        Utils.writeContents(file, "two");
+        assertTrue(file.setLastModified(old));
+        assertEquals("stat data unchanged", one, index.hash(name));
+        index = Utils.deserialize(Utils.serialize(index), Index.class);
+        assertEquals("after a save", one, index.hash(name));
+
+        assertTrue(file.setLastModified(old + 1000));
+        String two = index.hash(name);
+        assertEquals(Utils.sha1File(file), two);
+        assertFalse(one.equals(two));
+
+        Utils.writeContents(file, "three");
+        assertTrue(file.setLastModified(old + 1000));
+        assertEquals("size changed", Utils.sha1File(file), index.hash(name));
+
+        Utils.writeContents(file, "four!");
+        long now = System.currentTimeMillis();
+        assertTrue(file.setLastModified(now));
+        String four = index.hash(name);
+        assertEquals(Utils.sha1File(file), four);
+        Utils.writeContents(file, "five!");
+        assertTrue(file.setLastModified(now));
+        assertEquals("racy entry", Utils.sha1File(file), index.hash(name));
+        assertFalse(four.equals(index.hash(name)));
+
+        Utils.writeContents(file, "six");
+        assertTrue(file.setLastModified(old));
+        String six = index.hash(name);
+        index.retain(List.of(name));
+        Utils.writeContents(file, "sex");
+        assertTrue(file.setLastModified(old));
+        assertEquals("retained", six, index.hash(name));
+        index.retain(List.of());
+        assertEquals("forgotten", Utils.sha1File(file), index.hash(name));
+        file.delete();
+        dir.delete();
+    }
+
+    /** A CommitCache evicts its least recently used commits to stay
+     *  within its capacity, and counts its hits and misses. */
+    @Test
+    public void commitCacheTest() {
+        Commit[] commits = new Commit[5];
+        for (int i = 0; i < commits.length; i += 1) {
+            commits[i] = new Commit("commit " + i, null, null,
+                                    new LinkedHashMap<>());
+        }
+        CommitCache cache = new CommitCache(100);
+        cache.put(commits[0], 40);
+        cache.put(commits[1], 30);
+        cache.put(commits[2], 30);
+        assertEquals(3, cache.size());
+        assertEquals(100, cache.bytes());
+        assertSame(commits[0], cache.get(commits[0].getCommitId()));
+
+        cache.put(commits[3], 20);
+        assertEquals(3, cache.size());
+        assertEquals(90, cache.bytes());
+        assertNull(cache.get(commits[1].getCommitId()));
+        cache.put(commits[4], 101);
+        assertNull(cache.get(commits[4].getCommitId()));
+        assertEquals(90, cache.bytes());
+
+        cache.put(commits[2], 50);
+        assertEquals(2, cache.size());
+        assertEquals(70, cache.bytes());
+        assertNull(cache.get(commits[0].getCommitId()));
+        assertSame(commits[2], cache.get(commits[2].getCommitId()));
+        assertSame(commits[3], cache.get(commits[3].getCommitId()));
+        assertEquals(3, cache.hits());
+        assertEquals(3, cache.misses());
+    }
+
+    /** Return a copy of DATA with a few ranges replaced, inserted or
+     *  removed, chosen by RANDOM. */
+    private static byte[] edit(byte[] data, Random random) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int at = 0;
+        for (int i = 0; i < 3 && at < data.length; i += 1) {
+            int next = at + random.nextInt(data.length - at);
+            out.write(data, at, next - at);
+            byte[] inserted = new byte[random.nextInt(40)];
+            random.nextBytes(inserted);
+            out.write(inserted, 0, inserted.length);
+            at = Math.min(data.length, next + random.nextInt(40));
+        }
+        out.write(data, at, data.length - at);
+        return out.toByteArray();
+    }
+
+    /** Deltas rebuild their targets from their bases, alone and in
+     *  chains, and are small for similar versions. */
+    @Test
+    public void deltaTest() {
+        Random random = new Random(4);
+        byte[] empty = new byte[0];
+        byte[] data = new byte[5000];
+        random.nextBytes(data);
+        byte[] shortData = Arrays.copyOf(data, Delta.BLOCK - 1);
+        byte[][] pairs = {
+            empty, empty, empty, data, data, empty, data, data,
+            shortData, data, data, shortData, shortData, shortData,
+            data, Arrays.copyOfRange(data, 1000, 3000),
+        };
+        for (int i = 0; i < pairs.length; i += 2) {
+            assertArrayEquals(pairs[i + 1], Delta.apply(
+                pairs[i], Delta.create(pairs[i], pairs[i + 1])));
+        }
+        assertTrue(Delta.create(data, data).length < 10);
+
+        byte[][] versions = new byte[20][];
+        versions[0] = data;
+        for (int i = 1; i < versions.length; i += 1) {
+            versions[i] = edit(versions[i - 1], random);
+            byte[] delta = Delta.create(versions[i - 1], versions[i]);
+            assertTrue(delta.length < versions[i].length / 10);
+            assertArrayEquals(versions[i],
+                              Delta.apply(versions[i - 1], delta));
+        }
+        byte[] rebuilt = data;
+        for (int i = 1; i < versions.length; i += 1) {
+            rebuilt = Delta.apply(rebuilt,
+                                  Delta.create(versions[i - 1], versions[i]));
+        }
+        assertArrayEquals(versions[versions.length - 1], rebuilt);
+    }
+
+    /** Repacking moves loose objects and older packs into one pack,
+     *  storing similar blobs as deltas, and every object reads back as it
+     *  was written. */
+    @Test
+    public void repackTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore objects = new ObjectStore(dir);
+        Random random = new Random(6);
+        TreeMap<String, byte[]> blobs = new TreeMap<>();
+        List<String> versions = new ArrayList<>();
+        byte[] data = new byte[4000];
+        random.nextBytes(data);
+        for (int i = 0; i < 3 * ObjectStore.MAX_DELTA_DEPTH; i += 1) {
+            data = edit(data, random);
+            String id = Utils.sha1(data);
+            blobs.put(id, data);
+            versions.add(0, id);
+        }
+        for (int i = 0; i < 5; i += 1) {
+            byte[] other = new byte[100 * i];
+            random.nextBytes(other);
+            blobs.put(Utils.sha1(other), other);
+        }
+        PackFile.Writer writer = objects.newPack();
+        int k = 0;
+        for (Map.Entry<String, byte[]> blob : blobs.entrySet()) {
+            if (k++ % 3 == 0) {
+                writer.add(blob.getKey(), ObjectStore.BLOB, blob.getValue());
+            }
+        }
+        objects.addPack(writer);
+        for (Map.Entry<String, byte[]> blob : blobs.entrySet()) {
+            objects.write(ObjectStore.BLOB, blob.getKey(), blob.getValue());
+        }
+        LinkedHashMap<String, String> files = new LinkedHashMap<>();
+        files.put("a.txt", versions.get(0));
+        String tree = Tree.write(Tree.in(objects), files);
+        String first = commit(objects, "first", null, null);
+        String second = commit(objects, "second", first, null);
+        TreeMap<String, byte[]> stored = new TreeMap<>();
+        stored.put(ObjectStore.TREE + tree,
+                   objects.read(ObjectStore.TREE, tree));
+        for (String id : List.of(first, second)) {
+            stored.put(ObjectStore.COMMIT + id,
+                       objects.read(ObjectStore.COMMIT, id));
+        }
+        long whole = 0;
+        for (Map.Entry<String, byte[]> blob : blobs.entrySet()) {
+            stored.put(ObjectStore.BLOB + blob.getKey(), blob.getValue());
+            whole += blob.getValue().length;
+        }
+
+        objects.repack(List.of(versions), bytes -> bytes);
+        List<String> packs = Utils.plainFilenamesIn(
+            Utils.join(dir, "packs"));
+        assertEquals(2, packs.size());
+        for (String name : new String[] {"blobs", "commits", "trees"}) {
+            String[] left = Utils.join(dir, name).list();
+            assertTrue(left == null || left.length == 0);
+        }
+        assertTrue(Utils.join(dir, "packs", packs.get(0)).length()
+                   + Utils.join(dir, "packs", packs.get(1)).length()
+                   < whole / 4);
+        for (ObjectStore store
+                 : new ObjectStore[] {objects, new ObjectStore(dir)}) {
+            for (Map.Entry<String, byte[]> object : stored.entrySet()) {
+                int type = object.getKey().charAt(0) - '0';
+                String id = object.getKey().substring(1);
+                assertArrayEquals(object.getValue(), store.read(type, id));
+                assertEquals(object.getValue().length,
+                             store.length(type, id));
+            }
+            assertEquals(sorted(first, second),
+                         store.list(ObjectStore.COMMIT));
+            assertEquals(new ArrayList<>(blobs.keySet()),
+                         store.list(ObjectStore.BLOB));
+        }
+    }
+
+    /** Commands served by a daemon write their changes to the repository
+     *  as each finishes, while the daemon is still running. */
+    @Test
+    public void daemonTest() throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        File gitlet = Utils.join(dir, ".gitlet");
+        gitlet(dir, "init");
+        Utils.writeContents(Utils.join(dir, "a.txt"), "hello");
+        File socket = Utils.join(gitlet, Daemon.SOCKET);
+        Process daemon = gitletProcess(dir, "daemon");
+        try {
+            for (int i = 0; i < 200 && !socket.exists(); i += 1) {
+                Thread.sleep(50);
+            }
+            assertEquals("", request(socket, "add", "a.txt"));
+            assertEquals("", request(socket, "commit", "c1"));
+            assertEquals("", request(socket, "branch", "foo"));
+            String head = Utils.readContentsAsString(
+                Utils.join(gitlet, "head"));
+            assertEquals(head, Utils.readContentsAsString(
+                Utils.join(gitlet, "branches", "master")));
+            assertEquals(head, Utils.readContentsAsString(
+                Utils.join(gitlet, "branches", "foo")));
+            ObjectStore objects = new ObjectStore(gitlet);
+            Commit commit = Codec.readCommit(objects, head);
+            assertEquals("c1", commit.getMessage());
+            assertEquals("{a.txt=" + Utils.sha1("hello") + "}",
+                         Tree.files(Tree.in(objects), commit.getTree())
+                         .toString());
+            assertTrue(Codec.readStagingArea(
+                Utils.join(gitlet, "stages", "stage"), null)
+                       .getAdded().isEmpty());
+        } finally {
+            request(socket, Daemon.STOP);
+            daemon.waitFor();
+        }
+    }
+
+    @Test
+    public void bitmapTest() {
+        Bitmap evens = new Bitmap();
+        Bitmap low = new Bitmap();
+        for (int i = 0; i < 200000; i += 2) {
+            evens.add(i);
+        }
+        for (int i = 0; i < 5000; i += 1) {
+            low.add(i);
+        }
+        low.add(150001);
+        assertEquals(100000, evens.cardinality());
+        assertTrue(evens.contains(70000));
+        assertFalse(evens.contains(70001));
+        assertEquals(2500, evens.andCardinality(low));
+        assertEquals(4998, evens.lastCommon(low));
+        Bitmap copy = Bitmap.decode(ByteBuffer.wrap(low.encode()));
+        assertEquals(5001, copy.cardinality());
+        assertTrue(copy.contains(150001));
+        copy.or(evens);
+        assertEquals(102501, copy.cardinality());
+        assertFalse(low.contains(5000));
+        assertEquals(-1, new Bitmap().lastCommon(evens));
+    }
+}
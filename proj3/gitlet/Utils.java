@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -9,13 +10,15 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -43,11 +46,7 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            return toHex(md.digest());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
@@ -59,6 +58,64 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Size in bytes of the chunks read by sha1File. */
+    static final int HASH_CHUNK_SIZE = 1 << 16;
+
+    /** Returns the SHA-1 hash of the contents of FILE, which must be a
+     *  normal file.  The file is read through a channel in chunks of
+     *  HASH_CHUNK_SIZE bytes, so memory use does not depend on the size
+     *  of FILE.  Gives the same result as sha1(readContents(FILE)).
+     *  Throws IllegalArgumentException in case of problems. */
+    static String sha1File(File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                                                    StandardOpenOption.READ)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_CHUNK_SIZE);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+            return toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Hexadecimal digits. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Returns DIGEST as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] digest) {
+        char[] result = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Returns the bytes denoted by the hexadecimal numeral HEX, which must
+     *  have an even number of digits.  Throws IllegalArgumentException if
+     *  HEX is not a hexadecimal numeral. */
+    static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("not hexadecimal: " + hex);
+            }
+            result[i] = (byte) (hi << 4 | lo);
+        }
+        return result;
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -148,6 +205,23 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
         writeContents(file, serialize(obj));
@@ -218,6 +292,32 @@ class Utils {
 
 
 
+    /* VARIABLE-LENGTH INTEGERS */
+
+    /** Append the non-negative VALUE to OUT as an unsigned LEB128 varint:
+     *  seven bits per byte, low bits first, with the high bit of each
+     *  byte set if more bytes follow. */
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Return the varint written by writeVarint that starts at the current
+     *  position of BUF, advancing the position past it. */
+    static long readVarint(ByteBuffer buf) {
+        long result = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = buf.get();
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+
     /* MESSAGES AND ERROR REPORTING */
 
     /** Return a GitletException whose message is composed from MSG and ARGS as